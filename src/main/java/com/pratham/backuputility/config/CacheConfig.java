@@ -0,0 +1,53 @@
+package com.pratham.backuputility.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pratham.backuputility.model.LatestSnapshots;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class for the in-memory snapshot metadata cache
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    // Latest snapshot metadata (LatestSnapshots.Entry, or null for none) by relative path
+    public static final String LATEST_SNAPSHOTS = "latestSnapshots";
+
+    // Rough heap cost of an entry besides its path: entry object, hash string, cache node
+    private static final int ENTRY_OVERHEAD_BYTES = 320;
+
+    @Value("${app.cache.snapshot-metadata.max-entries:500000}")
+    private long maxEntries;
+
+    @Value("${app.cache.snapshot-metadata.max-memory-mb:128}")
+    private long maxMemoryMb;
+
+    @Bean
+    public CacheManager cacheManager() {
+        long maxBytes = Math.max(1, maxMemoryMb) * 1024 * 1024;
+        // Caffeine bounds either count or weight; weighing every entry at least maxBytes / maxEntries
+        // keeps both limits with one: neither more entries nor more estimated bytes than configured
+        int minWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / Math.max(1, maxEntries)));
+
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(LATEST_SNAPSHOTS);
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Object key, Object value) -> Math.max(minWeight, estimateBytes(key, value)))
+            .recordStats());
+        // Puts and evictions made inside a transaction only apply once it commits
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+
+    private static int estimateBytes(Object key, Object value) {
+        int pathBytes = key instanceof String path ? 40 + path.length() : 0;
+        // The entry holds its own reference to the same path string
+        return pathBytes + (value instanceof LatestSnapshots.Entry ? ENTRY_OVERHEAD_BYTES : 16);
+    }
+}
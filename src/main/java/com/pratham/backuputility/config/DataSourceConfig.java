@@ -0,0 +1,87 @@
+package com.pratham.backuputility.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Configuration class for the SQLite connection pools.
+ *
+ * SQLite allows one writer at a time, so all writes share a single connection
+ * (see DatabaseWriterService), while read-only transactions are served by a
+ * separate pool of read-only connections. The database runs in WAL mode, where
+ * readers neither block the writer nor wait for it.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${app.db.read-pool-size:4}")
+    private int readPoolSize;
+
+    @Value("${app.db.busy-timeout-ms:5000}")
+    private int busyTimeoutMs;
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource writerDataSource() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        // In WAL mode NORMAL only syncs at checkpoints; a commit survives an application crash
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.setBusyTimeout(busyTimeoutMs);
+
+        HikariConfig pool = poolConfig("sqlite-writer", config, 1);
+        // Checkpoints are run, and timed, by the writer thread instead of inside whichever commit crosses the limit
+        pool.setConnectionInitSql("PRAGMA wal_autocheckpoint=0");
+        return new HikariDataSource(pool);
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource readerDataSource() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(busyTimeoutMs);
+
+        HikariConfig pool = poolConfig("sqlite-reader", config, Math.max(1, readPoolSize));
+        pool.setReadOnly(true);
+        pool.setMinimumIdle(0);
+        // The database file may not exist until the writer has created the schema
+        pool.setInitializationFailTimeout(-1);
+        return new HikariDataSource(pool);
+    }
+
+    /**
+     * The DataSource used by JPA and JdbcTemplate: connections of read-only transactions
+     * come from the reader pool, everything else from the single writer connection
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writerDataSource") DataSource writer,
+                                 @Qualifier("readerDataSource") DataSource readers) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(writer);
+        dataSource.setReadOnlyDataSource(readers);
+        return dataSource;
+    }
+
+    private HikariConfig poolConfig(String name, SQLiteConfig config, int size) {
+        SQLiteDataSource sqlite = new SQLiteDataSource(config);
+        sqlite.setUrl(url);
+
+        HikariConfig pool = new HikariConfig();
+        pool.setPoolName(name);
+        pool.setDataSource(sqlite);
+        pool.setMaximumPoolSize(size);
+        return pool;
+    }
+}
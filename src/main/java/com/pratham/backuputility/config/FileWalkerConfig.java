@@ -0,0 +1,22 @@
+package com.pratham.backuputility.config;
+
+import com.pratham.backuputility.util.FileSystemUtil;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class applying the directory walker settings
+ */
+@Configuration
+public class FileWalkerConfig {
+
+    // Concurrent directory listings per mount; directory reads are latency bound, not CPU bound
+    @Value("${app.scan.threads-per-mount:8}")
+    private int threadsPerMount;
+
+    @PostConstruct
+    public void configureWalker() {
+        FileSystemUtil.setWalkerParallelism(threadsPerMount);
+    }
+}
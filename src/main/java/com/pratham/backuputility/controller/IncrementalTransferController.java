@@ -1,13 +1,20 @@
 package com.pratham.backuputility.controller;
 
+import com.pratham.backuputility.entity.TransferJob;
+import com.pratham.backuputility.entity.TransferJobResult;
+import com.pratham.backuputility.service.TransferJobService;
 import com.pratham.backuputility.service.TransferService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Controller
 @RequestMapping("/api/incremental")
@@ -16,8 +23,11 @@ public class IncrementalTransferController {
     @Autowired
     private TransferService transferService;
 
+    @Autowired
+    private TransferJobService transferJobService;
+
     /**
-     * Perform incremental transfer
+     * Start an incremental transfer as a background job and return the job immediately
      */
     @PostMapping("/transfer")
     @ResponseBody
@@ -25,18 +35,63 @@ public class IncrementalTransferController {
             @RequestParam String direction,
             @RequestParam(required = false) String mode) {
         try {
-            if (transferService.isTransferInProgress()) {
-                return ResponseEntity.badRequest().body("Transfer already in progress");
-            }
-
-            List<String> results = transferService.performTransfer(direction, mode);
-            return ResponseEntity.ok(results);
+            TransferJob job = transferJobService.submit(direction, mode);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
 
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body("Transfer failed: " + e.getMessage());
         }
     }
 
+    /**
+     * Get recent transfer jobs, newest first
+     */
+    @GetMapping("/jobs")
+    @ResponseBody
+    public ResponseEntity<List<TransferJob>> getRecentJobs(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(transferJobService.getRecentJobs(Math.max(1, Math.min(limit, 100))));
+    }
+
+    /**
+     * Get status and counters of a transfer job
+     */
+    @GetMapping("/jobs/{jobId}")
+    @ResponseBody
+    public ResponseEntity<TransferJob> getJob(@PathVariable Long jobId) {
+        return transferJobService.getJob(jobId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Get one page of a transfer job's result lines
+     */
+    @GetMapping("/jobs/{jobId}/results")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getJobResults(
+            @PathVariable Long jobId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size) {
+        if (transferJobService.getJob(jobId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Page<TransferJobResult> results = transferJobService.getResults(jobId, Math.max(0, page), Math.max(1, Math.min(size, 1000)));
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("jobId", jobId);
+        body.put("page", results.getNumber());
+        body.put("size", results.getSize());
+        body.put("totalElements", results.getTotalElements());
+        body.put("totalPages", results.getTotalPages());
+        body.put("results", results.getContent().stream()
+            .map(TransferJobResult::getMessage)
+            .collect(Collectors.toList()));
+        return ResponseEntity.ok(body);
+    }
+
     /**
      * Get incremental sync status
      */
@@ -2,15 +2,32 @@ package com.pratham.backuputility.controller;
 
 import com.pratham.backuputility.entity.FileSnapshotEntity;
 import com.pratham.backuputility.entity.TransferLog;
+import com.pratham.backuputility.model.CursorPage;
+import com.pratham.backuputility.model.MerkleTree;
+import com.pratham.backuputility.service.ChangeJournalService;
+import com.pratham.backuputility.service.DatabaseWriterService;
 import com.pratham.backuputility.service.SQLiteSnapshotService;
+import com.pratham.backuputility.service.ScanIndexService;
+import com.pratham.backuputility.service.SyncIndexService;
 import com.pratham.backuputility.service.TransferLogService;
+import com.pratham.backuputility.service.TransferPipelineService;
+import com.pratham.backuputility.service.TransferService;
+import com.pratham.backuputility.util.FileSystemUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -26,6 +43,27 @@ public class MonitoringController {
     @Autowired
     private TransferLogService transferLogService;
 
+    @Autowired
+    private TransferPipelineService transferPipelineService;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private ScanIndexService scanIndexService;
+
+    @Autowired
+    private SyncIndexService syncIndexService;
+
+    @Autowired
+    private ChangeJournalService changeJournalService;
+
+    @Autowired
+    private DatabaseWriterService databaseWriter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * Get snapshot statistics
      */
@@ -35,6 +73,22 @@ public class MonitoringController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Get hit, miss and eviction counters of the snapshot metadata cache
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<SQLiteSnapshotService.CacheStatistics> getCacheStatistics() {
+        return ResponseEntity.ok(snapshotService.getCacheStatistics());
+    }
+
+    /**
+     * Get batch size, commit latency and checkpoint counters of the database writer
+     */
+    @GetMapping("/database")
+    public ResponseEntity<Map<String, Object>> getDatabaseStatistics() {
+        return ResponseEntity.ok(databaseWriter.getStatistics());
+    }
+
     /**
      * Get transfer statistics
      */
@@ -44,6 +98,113 @@ public class MonitoringController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Get transfer counters per hour or day, status and operation type; the last 7 days by default
+     */
+    @GetMapping("/transfers/statistics/timeline")
+    public ResponseEntity<List<TransferLogService.StatisticsBucket>> getTransferStatisticsTimeline(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(defaultValue = "HOUR") TransferLogService.Granularity granularity) {
+        LocalDateTime from = since != null ? since : LocalDateTime.now().minusDays(7);
+        return ResponseEntity.ok(transferLogService.getStatisticsTimeline(from, granularity));
+    }
+
+    /**
+     * Get buffered, flushed and dropped counts of the transfer log write-behind buffer
+     */
+    @GetMapping("/transfers/write-behind")
+    public ResponseEntity<Map<String, Object>> getTransferLogWriteBehindStatistics() {
+        return ResponseEntity.ok(transferLogService.getWriteBehindStatistics());
+    }
+
+    /**
+     * Get per-stage queue depth and utilisation of the current or last transfer pipeline
+     */
+    @GetMapping("/pipeline")
+    public ResponseEntity<List<TransferPipelineService.StageStatistics>> getPipelineStatistics() {
+        return ResponseEntity.ok(transferPipelineService.getStageStatistics());
+    }
+
+    /**
+     * Get cumulative directory walker and scan index counters
+     */
+    @GetMapping("/scan")
+    public ResponseEntity<Map<String, Object>> getScanStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("walker", FileSystemUtil.getWalkStatistics());
+        statistics.put("index", scanIndexService.getStatistics());
+        return ResponseEntity.ok(statistics);
+    }
+
+    /**
+     * Get the age, size and root hashes of the DC/DR sync index
+     */
+    @GetMapping("/sync-index")
+    public ResponseEntity<Map<String, Object>> getSyncIndexStatistics() {
+        return ResponseEntity.ok(syncIndexService.getStatistics());
+    }
+
+    /**
+     * Get change journal backlog and watcher counters
+     */
+    @GetMapping("/journal")
+    public ResponseEntity<Map<String, Object>> getJournalStatistics() {
+        return ResponseEntity.ok(changeJournalService.getStatistics());
+    }
+
+    /**
+     * Compare two snapshots of a file through their Merkle trees
+     */
+    @GetMapping("/snapshots/diff")
+    public ResponseEntity<SQLiteSnapshotService.SnapshotDiff> diffSnapshots(@RequestParam long from, @RequestParam long to) {
+        return ResponseEntity.ok(snapshotService.diffSnapshots(from, to));
+    }
+
+    /**
+     * Compare the DC or DR copy of a file with its latest snapshot
+     */
+    @GetMapping("/snapshots/verify")
+    public ResponseEntity<SQLiteSnapshotService.SnapshotDiff> verifyCopy(@RequestParam String path,
+                                                                         @RequestParam(defaultValue = "dr") String side) {
+        return ResponseEntity.ok(transferService.verifyCopy(path, side));
+    }
+
+    /**
+     * Get nodes of one level of a snapshot's Merkle tree, so another copy can compare
+     * top down and fetch only the children of nodes that differ; level 0 is the block hashes
+     */
+    @GetMapping("/snapshots/tree")
+    public ResponseEntity<Map<String, Object>> getMerkleTreeNodes(
+            @RequestParam long snapshotId,
+            @RequestParam(required = false) Integer level,
+            @RequestParam(defaultValue = "0") int from,
+            @RequestParam(defaultValue = "256") int count) {
+        Optional<MerkleTree> found = snapshotService.getMerkleTree(snapshotId);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        MerkleTree tree = found.get();
+        int levelIndex = level != null ? level : tree.getLevelCount() - 1;
+        if (levelIndex < 0 || levelIndex >= tree.getLevelCount()) {
+            throw new IllegalArgumentException("Tree has levels 0 to " + (tree.getLevelCount() - 1));
+        }
+        int to = Math.min(tree.getLevelSize(levelIndex), from + Math.max(0, Math.min(count, 4096)));
+        List<String> nodes = new ArrayList<>();
+        for (int i = Math.max(0, from); i < to; i++) {
+            nodes.add(tree.getNodeHex(levelIndex, i));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("leafCount", tree.getLeafCount());
+        result.put("levelCount", tree.getLevelCount());
+        result.put("fanout", MerkleTree.FANOUT);
+        result.put("level", levelIndex);
+        result.put("levelSize", tree.getLevelSize(levelIndex));
+        result.put("from", Math.max(0, from));
+        result.put("nodes", nodes);
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * Get recent snapshots for a file
      */
@@ -72,41 +233,87 @@ public class MonitoringController {
     }
 
     /**
-     * Get transfer logs by status
+     * Get a page of transfer logs, newest first; pass nextCursor back for the next page
+     */
+    @GetMapping("/transfers")
+    public ResponseEntity<CursorPage<TransferLog>> getTransferLogs(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size) {
+        return ResponseEntity.ok(transferLogService.getLogs(cursor, size));
+    }
+
+    /**
+     * Get a page of transfer logs by status
      */
     @GetMapping("/transfers/status/{status}")
-    public ResponseEntity<List<TransferLog>> getTransferLogsByStatus(@PathVariable String status) {
-        List<TransferLog> logs = transferLogService.getLogsByStatus(status);
-        return ResponseEntity.ok(logs);
+    public ResponseEntity<CursorPage<TransferLog>> getTransferLogsByStatus(
+            @PathVariable String status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size) {
+        return ResponseEntity.ok(transferLogService.getLogsByStatus(status, cursor, size));
     }
 
     /**
-     * Get transfer logs by operation type
+     * Get a page of transfer logs by operation type
      */
     @GetMapping("/transfers/operation/{operationType}")
-    public ResponseEntity<List<TransferLog>> getTransferLogsByOperationType(@PathVariable String operationType) {
-        List<TransferLog> logs = transferLogService.getLogsByOperationType(operationType);
-        return ResponseEntity.ok(logs);
+    public ResponseEntity<CursorPage<TransferLog>> getTransferLogsByOperationType(
+            @PathVariable String operationType,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size) {
+        return ResponseEntity.ok(transferLogService.getLogsByOperationType(operationType, cursor, size));
     }
 
     /**
-     * Get transfer logs within a time range
+     * Get a page of transfer logs within a time range
      */
     @GetMapping("/transfers/range")
-    public ResponseEntity<List<TransferLog>> getTransferLogsByTimeRange(
+    public ResponseEntity<CursorPage<TransferLog>> getTransferLogsByTimeRange(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
-        List<TransferLog> logs = transferLogService.getLogsByTimeRange(startTime, endTime);
-        return ResponseEntity.ok(logs);
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size) {
+        return ResponseEntity.ok(transferLogService.getLogsByTimeRange(startTime, endTime, cursor, size));
     }
 
     /**
-     * Search transfer logs by file name pattern
+     * Search transfer logs by file name pattern, a page at a time
      */
     @GetMapping("/transfers/search")
-    public ResponseEntity<List<TransferLog>> searchTransferLogs(@RequestParam String fileNamePattern) {
-        List<TransferLog> logs = transferLogService.searchLogsByFileName(fileNamePattern);
-        return ResponseEntity.ok(logs);
+    public ResponseEntity<CursorPage<TransferLog>> searchTransferLogs(
+            @RequestParam String fileNamePattern,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size) {
+        return ResponseEntity.ok(transferLogService.searchLogsByFileName(fileNamePattern, cursor, size));
+    }
+
+    /**
+     * Stream transfer logs as newline-delimited JSON, newest first, for bulk export.
+     * Both bounds are optional; logs are read a page at a time as the response is written.
+     */
+    @GetMapping("/transfers/export")
+    public ResponseEntity<StreamingResponseBody> exportTransferLogs(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
+        LocalDateTime from = startTime != null ? startTime : LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime to = endTime != null ? endTime : LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+        StreamingResponseBody body = out -> transferLogService.exportLogsByTimeRange(from, to, log -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(log));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+
+    /**
+     * Reject malformed cursors and other bad arguments with 400 instead of 500
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
     }
 
     /**
@@ -0,0 +1,53 @@
+package com.pratham.backuputility.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * Entity for one pending change in the DC change journal.
+ * There is at most one entry per path; repeated events update it in place.
+ */
+@Entity
+@Table(name = "change_journal",
+    indexes = @Index(name = "idx_change_journal_last_seen", columnList = "lastSeenAt"))
+public class ChangeJournalEntry {
+    // Path relative to the DC root; "" is the root itself.
+    // The path is the key so the native upsert can use ON CONFLICT: the SQLite dialect
+    // does not generate unique constraints.
+    @Id
+    @Column(name = "relativePath", length = 1000, nullable = false)
+    private String relativePath;
+
+    @Column(name = "eventType", length = 20, nullable = false)
+    private String eventType; // CREATE, MODIFY, DELETE, RESCAN
+
+    // Epoch millis, so the native upsert and JPQL queries compare the same values
+    @Column(name = "firstSeenAt", nullable = false)
+    private long firstSeenAt;
+
+    @Column(name = "lastSeenAt", nullable = false)
+    private long lastSeenAt;
+
+    @Column(name = "eventCount", nullable = false)
+    private int eventCount;
+
+    // Constructors
+    public ChangeJournalEntry() {}
+
+    // Getters and setters
+    public String getRelativePath() { return relativePath; }
+    public void setRelativePath(String relativePath) { this.relativePath = relativePath; }
+
+    public String getEventType() { return eventType; }
+    public void setEventType(String eventType) { this.eventType = eventType; }
+
+    public long getFirstSeenAt() { return firstSeenAt; }
+    public void setFirstSeenAt(long firstSeenAt) { this.firstSeenAt = firstSeenAt; }
+
+    public long getLastSeenAt() { return lastSeenAt; }
+    public void setLastSeenAt(long lastSeenAt) { this.lastSeenAt = lastSeenAt; }
+
+    public int getEventCount() { return eventCount; }
+    public void setEventCount(int eventCount) { this.eventCount = eventCount; }
+
+    public boolean isRescan() { return "RESCAN".equals(eventType); }
+}
@@ -32,6 +32,18 @@ public class FileSnapshotEntity {
     @Column(name = "file_hash", length = 64, nullable = false)
     private String fileHash;
     
+    // Algorithm of the block hashes; null for snapshots written before it was recorded (SHA-256)
+    @Column(name = "block_hash_algorithm", length = 16)
+    private String blockHashAlgorithm;
+    
+    // Bytes per block, chosen per file; null for chunked snapshots and ones written before it was recorded
+    @Column(name = "block_size")
+    private Integer blockSize;
+    
+    // Root of the Merkle tree over the block hashes; null for snapshots written before trees were kept
+    @Column(name = "merkle_root", length = 64)
+    private String merkleRoot;
+    
     @Column(name = "snapshot_time", nullable = false)
     private LocalDateTime snapshotTime;
     
@@ -65,6 +77,15 @@ public class FileSnapshotEntity {
     public String getFileHash() { return fileHash; }
     public void setFileHash(String fileHash) { this.fileHash = fileHash; }
     
+    public String getBlockHashAlgorithm() { return blockHashAlgorithm; }
+    public void setBlockHashAlgorithm(String blockHashAlgorithm) { this.blockHashAlgorithm = blockHashAlgorithm; }
+    
+    public Integer getBlockSize() { return blockSize; }
+    public void setBlockSize(Integer blockSize) { this.blockSize = blockSize; }
+    
+    public String getMerkleRoot() { return merkleRoot; }
+    public void setMerkleRoot(String merkleRoot) { this.merkleRoot = merkleRoot; }
+    
     public LocalDateTime getSnapshotTime() { return snapshotTime; }
     public void setSnapshotTime(LocalDateTime snapshotTime) { this.snapshotTime = snapshotTime; }
     
@@ -0,0 +1,79 @@
+package com.pratham.backuputility.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * Entity to store all block hashes of a file snapshot as one packed BLOB.
+ * Kept apart from FileSnapshotEntity so snapshot metadata queries never load it.
+ */
+@Entity
+@Table(name = "snapshot_block_hashes")
+public class PackedBlockHashesEntity {
+
+    // Same id as the FileSnapshotEntity the hashes belong to
+    @Id
+    @Column(name = "file_snapshot_id")
+    private Long fileSnapshotId;
+
+    // Bytes per hash, as given by the snapshot's block hash algorithm
+    @Column(name = "hash_length", nullable = false)
+    private int hashLength;
+
+    @Column(name = "block_count", nullable = false)
+    private int blockCount;
+
+    // blockCount hashes of hashLength bytes each, in block order
+    @Column(name = "data", nullable = false)
+    private byte[] data;
+
+    // Weak rolling checksum of every block, 4 bytes each in block order; null unless kept
+    @Column(name = "weak_sums")
+    private byte[] weakSums;
+
+    // Length of every content-defined chunk, 4 bytes each; null for fixed-size blocks
+    @Column(name = "chunk_lengths")
+    private byte[] chunkLengths;
+
+    // Interior levels of the Merkle tree over the hashes, bottom up; null for snapshots saved before
+    @Column(name = "merkle_nodes")
+    private byte[] merkleNodes;
+
+    // Constructors
+    public PackedBlockHashesEntity() {}
+
+    public PackedBlockHashesEntity(Long fileSnapshotId, int hashLength, int blockCount, byte[] data) {
+        this.fileSnapshotId = fileSnapshotId;
+        this.hashLength = hashLength;
+        this.blockCount = blockCount;
+        this.data = data;
+    }
+
+    public PackedBlockHashesEntity(Long fileSnapshotId, int hashLength, int blockCount, byte[] data,
+                                   byte[] weakSums, byte[] chunkLengths) {
+        this(fileSnapshotId, hashLength, blockCount, data);
+        this.weakSums = weakSums;
+        this.chunkLengths = chunkLengths;
+    }
+
+    // Getters and setters
+    public Long getFileSnapshotId() { return fileSnapshotId; }
+    public void setFileSnapshotId(Long fileSnapshotId) { this.fileSnapshotId = fileSnapshotId; }
+
+    public int getHashLength() { return hashLength; }
+    public void setHashLength(int hashLength) { this.hashLength = hashLength; }
+
+    public int getBlockCount() { return blockCount; }
+    public void setBlockCount(int blockCount) { this.blockCount = blockCount; }
+
+    public byte[] getData() { return data; }
+    public void setData(byte[] data) { this.data = data; }
+
+    public byte[] getWeakSums() { return weakSums; }
+    public void setWeakSums(byte[] weakSums) { this.weakSums = weakSums; }
+
+    public byte[] getChunkLengths() { return chunkLengths; }
+    public void setChunkLengths(byte[] chunkLengths) { this.chunkLengths = chunkLengths; }
+
+    public byte[] getMerkleNodes() { return merkleNodes; }
+    public void setMerkleNodes(byte[] merkleNodes) { this.merkleNodes = merkleNodes; }
+}
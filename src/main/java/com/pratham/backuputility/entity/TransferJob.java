@@ -0,0 +1,147 @@
+package com.pratham.backuputility.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entity for an asynchronous transfer job and its result counters
+ */
+@Entity
+@Table(name = "transfer_jobs", indexes = {
+    @Index(name = "idx_job_created_at", columnList = "createdAt"),
+    @Index(name = "idx_job_status", columnList = "status")
+})
+public class TransferJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "direction", length = 20, nullable = false)
+    private String direction;
+
+    @Column(name = "mode", length = 20)
+    private String mode;
+
+    @Column(name = "status", length = 20, nullable = false)
+    private String status; // QUEUED, RUNNING, COMPLETED, FAILED
+
+    @Column(name = "createdAt", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "startedAt")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finishedAt")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "totalFiles", nullable = false)
+    private int totalFiles;
+
+    @Column(name = "processedFiles", nullable = false)
+    private int processedFiles;
+
+    @Column(name = "transferredFiles", nullable = false)
+    private int transferredFiles;
+
+    @Column(name = "unchangedFiles", nullable = false)
+    private int unchangedFiles;
+
+    @Column(name = "deletedFiles", nullable = false)
+    private int deletedFiles;
+
+    @Column(name = "failedFiles", nullable = false)
+    private int failedFiles;
+
+    // Number of result lines produced; only the first app.jobs.max-results-per-job are stored
+    @Column(name = "resultCount", nullable = false)
+    private long resultCount;
+
+    @Column(name = "resultsTruncated", nullable = false)
+    private boolean resultsTruncated;
+
+    @Column(name = "errorMessage", length = 1000)
+    private String errorMessage;
+
+    // Constructors
+    public TransferJob() {}
+
+    public TransferJob(String direction, String mode) {
+        this.direction = direction;
+        this.mode = mode;
+        this.status = "QUEUED";
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getDirection() { return direction; }
+    public void setDirection(String direction) { this.direction = direction; }
+
+    public String getMode() { return mode; }
+    public void setMode(String mode) { this.mode = mode; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public void setStartedAt(LocalDateTime startedAt) { this.startedAt = startedAt; }
+
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
+
+    public int getTotalFiles() { return totalFiles; }
+    public void setTotalFiles(int totalFiles) { this.totalFiles = totalFiles; }
+
+    public int getProcessedFiles() { return processedFiles; }
+    public void setProcessedFiles(int processedFiles) { this.processedFiles = processedFiles; }
+
+    public int getTransferredFiles() { return transferredFiles; }
+    public void setTransferredFiles(int transferredFiles) { this.transferredFiles = transferredFiles; }
+
+    public int getUnchangedFiles() { return unchangedFiles; }
+    public void setUnchangedFiles(int unchangedFiles) { this.unchangedFiles = unchangedFiles; }
+
+    public int getDeletedFiles() { return deletedFiles; }
+    public void setDeletedFiles(int deletedFiles) { this.deletedFiles = deletedFiles; }
+
+    public int getFailedFiles() { return failedFiles; }
+    public void setFailedFiles(int failedFiles) { this.failedFiles = failedFiles; }
+
+    public long getResultCount() { return resultCount; }
+    public void setResultCount(long resultCount) { this.resultCount = resultCount; }
+
+    public boolean isResultsTruncated() { return resultsTruncated; }
+    public void setResultsTruncated(boolean resultsTruncated) { this.resultsTruncated = resultsTruncated; }
+
+    public String getErrorMessage() { return errorMessage; }
+    public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+
+    /**
+     * Detached copy of every column, to write while this instance keeps changing
+     */
+    public TransferJob copy() {
+        TransferJob copy = new TransferJob(direction, mode);
+        copy.id = id;
+        copy.status = status;
+        copy.createdAt = createdAt;
+        copy.startedAt = startedAt;
+        copy.finishedAt = finishedAt;
+        copy.totalFiles = totalFiles;
+        copy.processedFiles = processedFiles;
+        copy.transferredFiles = transferredFiles;
+        copy.unchangedFiles = unchangedFiles;
+        copy.deletedFiles = deletedFiles;
+        copy.failedFiles = failedFiles;
+        copy.resultCount = resultCount;
+        copy.resultsTruncated = resultsTruncated;
+        copy.errorMessage = errorMessage;
+        return copy;
+    }
+
+    public boolean isFinished() { return "COMPLETED".equals(status) || "FAILED".equals(status); }
+}
@@ -0,0 +1,48 @@
+package com.pratham.backuputility.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * Entity for one result line of a transfer job
+ */
+@Entity
+@Table(name = "transfer_job_results", indexes = {
+    @Index(name = "idx_job_result_seq", columnList = "jobId, seq")
+})
+public class TransferJobResult {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "jobId", nullable = false)
+    private Long jobId;
+
+    // Position of the line within its job, starting at 0
+    @Column(name = "seq", nullable = false)
+    private long seq;
+
+    @Column(name = "message", length = 2000, nullable = false)
+    private String message;
+
+    // Constructors
+    public TransferJobResult() {}
+
+    public TransferJobResult(Long jobId, long seq, String message) {
+        this.jobId = jobId;
+        this.seq = seq;
+        this.message = message;
+    }
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getJobId() { return jobId; }
+    public void setJobId(Long jobId) { this.jobId = jobId; }
+
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+}
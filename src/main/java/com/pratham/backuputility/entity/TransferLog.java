@@ -7,8 +7,9 @@ import java.time.LocalDateTime;
 @Table(name = "transfer_logs", indexes = {
     @Index(name = "idx_transferred_at", columnList = "transferredAt"),
     @Index(name = "idx_file_name", columnList = "fileName"),
-    @Index(name = "idx_status", columnList = "status"),
-    @Index(name = "idx_operation_type", columnList = "operationType")
+    // Equality filter plus keyset order, so filtered pages are index range scans
+    @Index(name = "idx_status_transferred_at", columnList = "status, transferredAt"),
+    @Index(name = "idx_operation_type_transferred_at", columnList = "operationType, transferredAt")
 })
 public class TransferLog {
     @Id
@@ -0,0 +1,71 @@
+package com.pratham.backuputility.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * Entity for pre-aggregated transfer log counters: one row per hour, status and operation type.
+ * Updated in the same transaction as the logs it counts, so statistics read these
+ * rows instead of scanning transfer_logs.
+ */
+@Entity
+@Table(name = "transfer_stats_rollups",
+    indexes = @Index(name = "idx_transfer_stats_bucket_start", columnList = "bucket_start"))
+public class TransferStatsRollup {
+
+    // bucketStart:status:operationType. A single-column key so the native upsert can use
+    // ON CONFLICT: the SQLite dialect does not generate unique constraints.
+    @Id
+    @Column(name = "bucket_key", length = 80, nullable = false)
+    private String bucketKey;
+
+    // Start of the hour, as epoch millis in the system time zone like TransferLog.transferredAt
+    @Column(name = "bucket_start", nullable = false)
+    private long bucketStart;
+
+    @Column(name = "status", length = 20, nullable = false)
+    private String status;
+
+    @Column(name = "operation_type", length = 30, nullable = false)
+    private String operationType;
+
+    @Column(name = "transfer_count", nullable = false)
+    private long transferCount;
+
+    @Column(name = "bytes_transferred", nullable = false)
+    private long bytesTransferred;
+
+    // Logs with a duration, and the sum of those durations
+    @Column(name = "duration_count", nullable = false)
+    private long durationCount;
+
+    @Column(name = "duration_sum_ms", nullable = false)
+    private long durationSumMs;
+
+    // Constructors
+    public TransferStatsRollup() {}
+
+    // Getters and setters
+    public String getBucketKey() { return bucketKey; }
+    public void setBucketKey(String bucketKey) { this.bucketKey = bucketKey; }
+
+    public long getBucketStart() { return bucketStart; }
+    public void setBucketStart(long bucketStart) { this.bucketStart = bucketStart; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getOperationType() { return operationType; }
+    public void setOperationType(String operationType) { this.operationType = operationType; }
+
+    public long getTransferCount() { return transferCount; }
+    public void setTransferCount(long transferCount) { this.transferCount = transferCount; }
+
+    public long getBytesTransferred() { return bytesTransferred; }
+    public void setBytesTransferred(long bytesTransferred) { this.bytesTransferred = bytesTransferred; }
+
+    public long getDurationCount() { return durationCount; }
+    public void setDurationCount(long durationCount) { this.durationCount = durationCount; }
+
+    public long getDurationSumMs() { return durationSumMs; }
+    public void setDurationSumMs(long durationSumMs) { this.durationSumMs = durationSumMs; }
+}
@@ -1,28 +1,81 @@
 package com.pratham.backuputility.model;
 
 /**
- * Represents a single block change in a file for incremental transfers.
+ * Represents a single change in a file for incremental transfers.
+ *
+ * A BLOCK change overwrites the block at blockIndex in place, at targetOffset
+ * (blockIndex times the block size of the file's snapshot). The rolling and
+ * content-defined deltas instead describe the whole new file as a sequence of
+ * instructions in target order: COPY takes length bytes of the old file from
+ * sourceOffset, LITERAL carries new bytes in data.
  */
 public class BlockDelta {
+    public enum Type { BLOCK, COPY, LITERAL }
+
+    private Type type = Type.BLOCK;
     private long blockIndex;
     private byte[] data;
-    private String hash;
+    private long targetOffset;
+    private long sourceOffset;
+    private long length;
 
     public BlockDelta() {}
 
-    public BlockDelta(long blockIndex, byte[] data, String hash) {
+    public BlockDelta(long blockIndex, byte[] data) {
         this.blockIndex = blockIndex;
         this.data = data;
-        this.hash = hash;
+    }
+
+    /**
+     * Replace block blockIndex of a file with blocks of blockSize bytes
+     */
+    public static BlockDelta block(long blockIndex, int blockSize, byte[] data) {
+        BlockDelta delta = new BlockDelta(blockIndex, data);
+        delta.targetOffset = blockIndex * blockSize;
+        delta.length = data.length;
+        return delta;
+    }
+
+    /**
+     * Copy length bytes of the old file at sourceOffset to targetOffset of the new one
+     */
+    public static BlockDelta copy(long targetOffset, long sourceOffset, long length) {
+        BlockDelta delta = new BlockDelta();
+        delta.type = Type.COPY;
+        delta.targetOffset = targetOffset;
+        delta.sourceOffset = sourceOffset;
+        delta.length = length;
+        return delta;
+    }
+
+    /**
+     * Write new bytes at targetOffset of the new file
+     */
+    public static BlockDelta literal(long targetOffset, byte[] data) {
+        BlockDelta delta = new BlockDelta();
+        delta.type = Type.LITERAL;
+        delta.targetOffset = targetOffset;
+        delta.data = data;
+        delta.length = data.length;
+        return delta;
     }
 
     // Getters and setters
+    public Type getType() { return type; }
+    public void setType(Type type) { this.type = type; }
+
     public long getBlockIndex() { return blockIndex; }
     public void setBlockIndex(long blockIndex) { this.blockIndex = blockIndex; }
 
     public byte[] getData() { return data; }
     public void setData(byte[] data) { this.data = data; }
 
-    public String getHash() { return hash; }
-    public void setHash(String hash) { this.hash = hash; }
+    public long getTargetOffset() { return targetOffset; }
+    public void setTargetOffset(long targetOffset) { this.targetOffset = targetOffset; }
+
+    public long getSourceOffset() { return sourceOffset; }
+    public void setSourceOffset(long sourceOffset) { this.sourceOffset = sourceOffset; }
+
+    public long getLength() { return length; }
+    public void setLength(long length) { this.length = length; }
 }
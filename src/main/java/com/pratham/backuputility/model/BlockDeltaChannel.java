@@ -0,0 +1,95 @@
+package com.pratham.backuputility.model;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded hand-off of one file's changed blocks from the thread reading the
+ * source to the thread writing the target.
+ *
+ * The reader blocks once the buffer is full, so at most capacity blocks of a
+ * file are ever held in memory no matter how large the file is. The reader ends
+ * the stream with either complete (carrying the finished FileDelta) or fail;
+ * the writer gives up with cancel, which releases a blocked reader.
+ */
+public class BlockDeltaChannel {
+    private static final BlockDelta END = new BlockDelta();
+
+    private final BlockingQueue<BlockDelta> queue;
+    private volatile boolean cancelled;
+    private FileDelta delta;       // published by the END marker
+    private Exception failure;     // published by the END marker
+
+    public BlockDeltaChannel(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Hand a block to the writer, waiting while the buffer is full
+     */
+    public void send(BlockDelta block) throws InterruptedException {
+        while (!queue.offer(block, 100, TimeUnit.MILLISECONDS)) {
+            if (cancelled) {
+                throw new CancellationException("Writer stopped reading");
+            }
+        }
+    }
+
+    /**
+     * End the stream successfully
+     */
+    public void complete(FileDelta delta) throws InterruptedException {
+        this.delta = delta;
+        send(END);
+    }
+
+    /**
+     * End the stream with the reader's error; the writer sees it from receive
+     */
+    public void fail(Exception failure) {
+        this.failure = failure;
+        try {
+            send(END);
+        } catch (InterruptedException | CancellationException e) {
+            // Nobody is left to tell
+        }
+    }
+
+    /**
+     * Stop reading; the reader's next send fails instead of blocking forever
+     */
+    public void cancel() {
+        cancelled = true;
+        queue.clear();
+    }
+
+    /**
+     * Next changed block, or null once the stream is complete
+     */
+    public BlockDelta receive() throws Exception {
+        BlockDelta block = queue.take();
+        if (block != END) {
+            return block;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    /**
+     * The reader's error, once receive has thrown it
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * The finished delta; available once receive has returned null
+     */
+    public FileDelta getDelta() {
+        return delta;
+    }
+}
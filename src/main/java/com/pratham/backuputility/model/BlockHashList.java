@@ -0,0 +1,311 @@
+package com.pratham.backuputility.model;
+
+import com.pratham.backuputility.util.BlockHashAlgorithm;
+import com.pratham.backuputility.util.HashUtil;
+import com.pratham.backuputility.util.RollingChecksum;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Block hashes of one file in block order, packed into a primitive array.
+ *
+ * Hashes of up to 8 bytes (xxHash64, CRC32C) take one long per block, longer ones
+ * (SHA-256) hashLength bytes per block, instead of a String object per block.
+ * Blocks are compared by index, so the delta loop walks one flat array.
+ *
+ * A list can also keep each block's weak rolling checksum, which the rolling delta
+ * uses to find old blocks at any offset of the new file. A chunked list holds
+ * variable-length content-defined chunks instead of fixed blocks and keeps the
+ * length of each; chunk offsets follow from the lengths.
+ */
+public final class BlockHashList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final BlockHashAlgorithm algorithm;
+    private final int hashLength;
+    private long[] words;   // when the algorithm fits in a long
+    private byte[] bytes;   // otherwise, hashLength bytes per block
+    private int[] weakSums; // rolling checksum per block, when kept
+    private int[] lengths;  // length per chunk, when chunked
+    private int size;
+
+    public BlockHashList(BlockHashAlgorithm algorithm) {
+        this(algorithm, DEFAULT_CAPACITY);
+    }
+
+    public BlockHashList(BlockHashAlgorithm algorithm, int expectedBlocks) {
+        this(algorithm, expectedBlocks, false);
+    }
+
+    public BlockHashList(BlockHashAlgorithm algorithm, int expectedBlocks, boolean withWeakSums) {
+        this(algorithm, expectedBlocks, withWeakSums, false);
+    }
+
+    public BlockHashList(BlockHashAlgorithm algorithm, int expectedBlocks, boolean withWeakSums, boolean chunked) {
+        this.algorithm = algorithm;
+        this.hashLength = algorithm.getHashLength();
+        int capacity = Math.max(1, expectedBlocks);
+        if (algorithm.fitsInLong()) {
+            words = new long[capacity];
+        } else {
+            bytes = new byte[capacity * hashLength];
+        }
+        if (withWeakSums) {
+            weakSums = new int[capacity];
+        }
+        if (chunked) {
+            lengths = new int[capacity];
+        }
+    }
+
+    /**
+     * Capacity for the blocks of a file of the given size
+     */
+    public static int expectedBlocks(long fileSize, int blockSize) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, (fileSize + blockSize - 1) / blockSize);
+    }
+
+    /**
+     * Wrap hashes stored by toPacked
+     */
+    public static BlockHashList fromPacked(BlockHashAlgorithm algorithm, byte[] packed) {
+        int hashLength = algorithm.getHashLength();
+        if (packed.length % hashLength != 0) {
+            throw new IllegalArgumentException(
+                "Packed block hashes of " + packed.length + " bytes are not a multiple of " + hashLength);
+        }
+
+        BlockHashList list = new BlockHashList(algorithm, 0);
+        list.size = packed.length / hashLength;
+        if (algorithm.fitsInLong()) {
+            list.words = new long[list.size];
+            for (int i = 0; i < list.size; i++) {
+                list.words[i] = HashUtil.getLong(packed, i * hashLength, hashLength);
+            }
+        } else {
+            list.bytes = packed;
+        }
+        return list;
+    }
+
+    /**
+     * Wrap hashes stored by toPacked together with weak sums stored by toPackedWeakSums
+     * and chunk lengths stored by toPackedLengths; either may be null
+     */
+    public static BlockHashList fromPacked(BlockHashAlgorithm algorithm, byte[] packed, byte[] packedWeakSums,
+                                           byte[] packedLengths) {
+        BlockHashList list = fromPacked(algorithm, packed);
+        list.weakSums = unpackInts(packedWeakSums, list.size, "weak sums");
+        list.lengths = unpackInts(packedLengths, list.size, "chunk lengths");
+        return list;
+    }
+
+    private static int[] unpackInts(byte[] packed, int count, String what) {
+        if (packed == null) {
+            return null;
+        }
+        if (packed.length != count * Integer.BYTES) {
+            throw new IllegalArgumentException(
+                "Packed " + what + " of " + packed.length + " bytes do not match " + count + " blocks");
+        }
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (int) HashUtil.getLong(packed, i * Integer.BYTES, Integer.BYTES);
+        }
+        return values;
+    }
+
+    private static byte[] packInts(int[] values, int count) {
+        if (values == null) {
+            return null;
+        }
+        byte[] packed = new byte[count * Integer.BYTES];
+        for (int i = 0; i < count; i++) {
+            HashUtil.putLong(values[i] & 0xFFFFFFFFL, packed, i * Integer.BYTES, Integer.BYTES);
+        }
+        return packed;
+    }
+
+    /**
+     * Hash a block and append it; returns its index
+     */
+    public int add(byte[] data, int length) {
+        ensureCapacity();
+        if (words != null) {
+            words[size] = algorithm.hashToLong(data, length);
+        } else {
+            algorithm.hash(data, length, bytes, size * hashLength);
+        }
+        if (weakSums != null) {
+            weakSums[size] = RollingChecksum.of(data, 0, length);
+        }
+        if (lengths != null) {
+            lengths[size] = length;
+        }
+        return size++;
+    }
+
+    /**
+     * Hash the remaining bytes of a block and append it; returns its index
+     */
+    public int add(ByteBuffer block) {
+        ensureCapacity();
+        if (words != null) {
+            words[size] = algorithm.hashToLong(block);
+        } else {
+            algorithm.hash(block, bytes, size * hashLength);
+        }
+        if (weakSums != null) {
+            weakSums[size] = RollingChecksum.of(block);
+        }
+        if (lengths != null) {
+            lengths[size] = block.remaining();
+        }
+        return size++;
+    }
+
+    /**
+     * Whether block index has the same hash here as block otherIndex of another list
+     * made with the same algorithm
+     */
+    public boolean sameHash(int index, BlockHashList other, int otherIndex) {
+        if (other.algorithm != algorithm) {
+            throw new IllegalArgumentException("Cannot compare " + algorithm + " hashes with " + other.algorithm);
+        }
+        if (words != null) {
+            return words[index] == other.words[otherIndex];
+        }
+        int from = index * hashLength;
+        int otherFrom = otherIndex * hashLength;
+        return Arrays.equals(bytes, from, from + hashLength, other.bytes, otherFrom, otherFrom + hashLength);
+    }
+
+    /**
+     * Whether block index matches the first length bytes of data, hashed with this list's algorithm.
+     * For comparing against hashes of a different algorithm than the one currently configured.
+     */
+    public boolean matches(int index, byte[] data, int length) {
+        if (words != null) {
+            return words[index] == algorithm.hashToLong(data, length);
+        }
+        byte[] hash = new byte[hashLength];
+        algorithm.hash(data, length, hash, 0);
+        int from = index * hashLength;
+        return Arrays.equals(bytes, from, from + hashLength, hash, 0, hashLength);
+    }
+
+    /**
+     * Whether block index matches the remaining bytes of block, hashed with this list's algorithm
+     */
+    public boolean matches(int index, ByteBuffer block) {
+        if (words != null) {
+            return words[index] == algorithm.hashToLong(block);
+        }
+        byte[] hash = new byte[hashLength];
+        algorithm.hash(block, hash, 0);
+        int from = index * hashLength;
+        return Arrays.equals(bytes, from, from + hashLength, hash, 0, hashLength);
+    }
+
+    public boolean hasWeakSums() {
+        return weakSums != null;
+    }
+
+    /**
+     * Rolling checksum of block index; only when hasWeakSums
+     */
+    public int getWeakSum(int index) {
+        return weakSums[index];
+    }
+
+    /**
+     * Whether this list holds content-defined chunks rather than fixed-size blocks
+     */
+    public boolean isChunked() {
+        return lengths != null;
+    }
+
+    /**
+     * Length of chunk index; only when isChunked
+     */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * The first 8 bytes of the hash of block index, for hash table lookups
+     */
+    public long hashKey(int index) {
+        if (words != null) {
+            return words[index];
+        }
+        return HashUtil.getLong(bytes, index * hashLength, Long.BYTES);
+    }
+
+    /**
+     * Hash of block index as lower-case hex, for logs and display
+     */
+    public String getHex(int index) {
+        if (words != null) {
+            return HashUtil.toHex(words[index], hashLength * 2);
+        }
+        return HashUtil.bytesToHex(bytes, index * hashLength, hashLength);
+    }
+
+    /**
+     * All hashes concatenated in block order, hashLength bytes each, for storage
+     */
+    public byte[] toPacked() {
+        byte[] packed = new byte[size * hashLength];
+        if (words != null) {
+            for (int i = 0; i < size; i++) {
+                HashUtil.putLong(words[i], packed, i * hashLength, hashLength);
+            }
+        } else {
+            System.arraycopy(bytes, 0, packed, 0, packed.length);
+        }
+        return packed;
+    }
+
+    /**
+     * All weak sums in block order, 4 bytes each, for storage; null when not kept
+     */
+    public byte[] toPackedWeakSums() {
+        return packInts(weakSums, size);
+    }
+
+    /**
+     * All chunk lengths in chunk order, 4 bytes each, for storage; null unless chunked
+     */
+    public byte[] toPackedLengths() {
+        return packInts(lengths, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public BlockHashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    private void ensureCapacity() {
+        int capacity = words != null ? words.length : bytes.length / hashLength;
+        if (size < capacity) {
+            return;
+        }
+        int newCapacity = Math.max(DEFAULT_CAPACITY, capacity + (capacity >> 1));
+        if (words != null) {
+            words = Arrays.copyOf(words, newCapacity);
+        } else {
+            bytes = Arrays.copyOf(bytes, newCapacity * hashLength);
+        }
+        if (weakSums != null) {
+            weakSums = Arrays.copyOf(weakSums, newCapacity);
+        }
+        if (lengths != null) {
+            lengths = Arrays.copyOf(lengths, newCapacity);
+        }
+    }
+}
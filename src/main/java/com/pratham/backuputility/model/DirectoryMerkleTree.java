@@ -0,0 +1,322 @@
+package com.pratham.backuputility.model;
+
+import com.pratham.backuputility.util.HashUtil;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Merkle tree over the DC and DR directory trees, kept in memory so the sync
+ * state of the two can be read without walking either of them.
+ *
+ * Every file has a 64-bit key per side, 0 where it is missing; equal keys mean
+ * the two copies were last known to be identical. Each directory holds, per
+ * side, a hash over the names and keys of its files and the hashes of its
+ * subdirectories, recomputed lazily after something below it changed. A
+ * directory whose two hashes are equal is in sync all the way down, so a
+ * comparison only descends into directories whose hashes differ: its cost
+ * follows the number of differences, not the size of the trees.
+ *
+ * Directories are kept as sorted arrays of their entries, like the scan index.
+ */
+public class DirectoryMerkleTree {
+    public enum Side { DC, DR }
+    public enum Status { MISSING_IN_DR, MISSING_IN_DC, MISMATCH }
+
+    private static final Pattern SEPARATOR = Pattern.compile(Pattern.quote(File.separator));
+    private static final long EMPTY_HASH = HashUtil.xxHash64(new byte[0], 0, 0);
+
+    private final Directory root = new Directory();
+
+    /**
+     * Set both keys of a file, creating its directories as needed; two zero keys remove it
+     */
+    public synchronized void put(String relativePath, long dcKey, long drKey) {
+        update(relativePath, dcKey, drKey, true, true);
+    }
+
+    /**
+     * Set the key of a file on one side. A zero key removes the file from that side,
+     * or every file below it if the path is a directory.
+     */
+    public synchronized void setKey(Side side, String relativePath, long key) {
+        update(relativePath, key, key, side == Side.DC, side == Side.DR);
+    }
+
+    private void update(String relativePath, long dcKey, long drKey, boolean setDc, boolean setDr) {
+        String[] names = SEPARATOR.split(relativePath);
+        Directory[] trail = new Directory[names.length];
+        Directory directory = root;
+        boolean create = dcKey != 0 || drKey != 0;
+        for (int i = 0; i < names.length - 1; i++) {
+            trail[i] = directory;
+            if (create && directory.holdsFile(names[i])) {
+                // A file replaced by a directory of the same name: one file fewer from here up
+                for (int j = 0; j <= i; j++) {
+                    trail[j].fileCount--;
+                }
+            }
+            Directory child = directory.directory(names[i], create);
+            if (child == null) {
+                return; // Removing something that is not there
+            }
+            directory = child;
+        }
+        trail[names.length - 1] = directory;
+
+        long delta = directory.set(names[names.length - 1], dcKey, drKey, setDc, setDr);
+        for (Directory parent : trail) {
+            parent.fileCount += delta;
+            parent.dirty = true;
+        }
+    }
+
+    /**
+     * Number of files on either side
+     */
+    public synchronized long getFileCount() {
+        return root.fileCount;
+    }
+
+    /**
+     * Root hash of one side as hex, for comparing with another copy of the index
+     */
+    public synchronized String getRootHash(Side side) {
+        return HashUtil.toHex(root.hash(side), 16);
+    }
+
+    /**
+     * Compare DC and DR from the root, listing up to maxListed of the files that differ
+     */
+    public synchronized Comparison compare(int maxListed) {
+        Comparison comparison = new Comparison(root.fileCount, maxListed);
+        walk(root, null, comparison);
+        return comparison;
+    }
+
+    private void walk(Directory directory, String path, Comparison comparison) {
+        if (directory.hash(Side.DC) == directory.hash(Side.DR)) {
+            comparison.subtreesSkipped++;
+            return;
+        }
+        comparison.directoriesVisited++;
+        for (int i = 0; i < directory.size; i++) {
+            Directory child = directory.children[i];
+            if (child != null) {
+                walk(child, join(path, directory.names[i]), comparison);
+            } else if (directory.dcKeys[i] != directory.drKeys[i]) {
+                Status status = directory.dcKeys[i] == 0 ? Status.MISSING_IN_DC
+                    : directory.drKeys[i] == 0 ? Status.MISSING_IN_DR : Status.MISMATCH;
+                comparison.add(join(path, directory.names[i]), status);
+            }
+        }
+    }
+
+    private static String join(String path, String name) {
+        return path == null ? name : path + File.separator + name;
+    }
+
+    /**
+     * One directory: its entries sorted by name, a subdirectory where children[i] is set
+     */
+    private static final class Directory {
+        private String[] names = new String[0];
+        private long[] dcKeys = new long[0];
+        private long[] drKeys = new long[0];
+        private Directory[] children = new Directory[0];
+        private int size;
+        private long fileCount;   // files below, on either side
+        private boolean dirty;
+        private long dcHash = EMPTY_HASH;
+        private long drHash = EMPTY_HASH;
+
+        boolean holdsFile(String name) {
+            int i = Arrays.binarySearch(names, 0, size, name);
+            return i >= 0 && children[i] == null;
+        }
+
+        /**
+         * The subdirectory of that name, created if asked, replacing a file of the same
+         * name; the caller accounts for the replaced file in the file counts
+         */
+        Directory directory(String name, boolean create) {
+            int i = Arrays.binarySearch(names, 0, size, name);
+            if (i >= 0) {
+                if (children[i] == null && create) {
+                    dcKeys[i] = drKeys[i] = 0;
+                    children[i] = new Directory();
+                }
+                return children[i];
+            }
+            if (!create) {
+                return null;
+            }
+            Directory child = new Directory();
+            insert(-i - 1, name, 0, 0, child);
+            return child;
+        }
+
+        /**
+         * Set the keys of an entry; returns the change in the number of files below
+         */
+        long set(String name, long dcKey, long drKey, boolean setDc, boolean setDr) {
+            int i = Arrays.binarySearch(names, 0, size, name);
+            if (i < 0) {
+                long dc = setDc ? dcKey : 0;
+                long dr = setDr ? drKey : 0;
+                if (dc == 0 && dr == 0) {
+                    return 0;
+                }
+                insert(-i - 1, name, dc, dr, null);
+                return 1;
+            }
+            Directory child = children[i];
+            if (child != null) {
+                if (dcKey != 0 || drKey != 0) {
+                    // A directory replaced by a file of the same name
+                    long removed = child.fileCount;
+                    children[i] = null;
+                    dcKeys[i] = setDc ? dcKey : 0;
+                    drKeys[i] = setDr ? drKey : 0;
+                    return 1 - removed;
+                }
+                long delta = child.clear(setDc, setDr);
+                if (child.size == 0) {
+                    remove(i);
+                }
+                return delta;
+            }
+            if (setDc) {
+                dcKeys[i] = dcKey;
+            }
+            if (setDr) {
+                drKeys[i] = drKey;
+            }
+            if (dcKeys[i] == 0 && drKeys[i] == 0) {
+                remove(i);
+                return -1;
+            }
+            return 0;
+        }
+
+        /**
+         * Remove every file below from the given sides; returns the change in the number of files
+         */
+        long clear(boolean clearDc, boolean clearDr) {
+            long delta = 0;
+            for (int i = size - 1; i >= 0; i--) {
+                delta += set(names[i], 0, 0, clearDc, clearDr);
+            }
+            fileCount += delta;
+            dirty = true;
+            return delta;
+        }
+
+        private void insert(int at, String name, long dcKey, long drKey, Directory child) {
+            if (size == names.length) {
+                int capacity = Math.max(4, size * 2);
+                names = Arrays.copyOf(names, capacity);
+                dcKeys = Arrays.copyOf(dcKeys, capacity);
+                drKeys = Arrays.copyOf(drKeys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(names, at, names, at + 1, size - at);
+            System.arraycopy(dcKeys, at, dcKeys, at + 1, size - at);
+            System.arraycopy(drKeys, at, drKeys, at + 1, size - at);
+            System.arraycopy(children, at, children, at + 1, size - at);
+            names[at] = name;
+            dcKeys[at] = dcKey;
+            drKeys[at] = drKey;
+            children[at] = child;
+            size++;
+        }
+
+        private void remove(int at) {
+            size--;
+            System.arraycopy(names, at + 1, names, at, size - at);
+            System.arraycopy(dcKeys, at + 1, dcKeys, at, size - at);
+            System.arraycopy(drKeys, at + 1, drKeys, at, size - at);
+            System.arraycopy(children, at + 1, children, at, size - at);
+            names[size] = null;
+            children[size] = null;
+        }
+
+        long hash(Side side) {
+            if (dirty) {
+                dcHash = hashEntries(Side.DC);
+                drHash = hashEntries(Side.DR);
+                dirty = false;
+            }
+            return side == Side.DC ? dcHash : drHash;
+        }
+
+        /**
+         * Hash of the names and keys of the entries present on one side, in name order;
+         * a subdirectory is present if it has any file on that side
+         */
+        private long hashEntries(Side side) {
+            byte[] buffer = new byte[256];
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                long value = children[i] != null ? children[i].hash(side) : side == Side.DC ? dcKeys[i] : drKeys[i];
+                if (children[i] != null ? value == EMPTY_HASH : value == 0) {
+                    continue;
+                }
+                byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+                if (length + name.length + 9 > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + name.length + 9));
+                }
+                System.arraycopy(name, 0, buffer, length, name.length);
+                length += name.length;
+                buffer[length++] = (byte) (children[i] != null ? '/' : 0);
+                HashUtil.putLong(value, buffer, length, Long.BYTES);
+                length += Long.BYTES;
+            }
+            return length == 0 ? EMPTY_HASH : HashUtil.xxHash64(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Result of comparing DC and DR: counts by status and the first differing files
+     */
+    public static class Comparison {
+        private final long totalFiles;
+        private final int maxListed;
+        private final Map<String, Status> files = new LinkedHashMap<>();
+        private long missingInDr;
+        private long missingInDc;
+        private long mismatched;
+        private long directoriesVisited;
+        private long subtreesSkipped;
+
+        Comparison(long totalFiles, int maxListed) {
+            this.totalFiles = totalFiles;
+            this.maxListed = maxListed;
+        }
+
+        private void add(String path, Status status) {
+            switch (status) {
+                case MISSING_IN_DR -> missingInDr++;
+                case MISSING_IN_DC -> missingInDc++;
+                default -> mismatched++;
+            }
+            if (files.size() < maxListed) {
+                files.put(path, status);
+            }
+        }
+
+        public long getTotalFiles() { return totalFiles; }
+        public long getMissingInDr() { return missingInDr; }
+        public long getMissingInDc() { return missingInDc; }
+        public long getMismatched() { return mismatched; }
+        public long getOutOfSync() { return missingInDr + missingInDc + mismatched; }
+        public long getDirectoriesVisited() { return directoriesVisited; }
+        public long getSubtreesSkipped() { return subtreesSkipped; }
+        // The first differing files in path order, at most maxListed
+        public Map<String, Status> getFiles() { return files; }
+    }
+}
@@ -1,60 +1,67 @@
 package com.pratham.backuputility.model;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.pratham.backuputility.util.DeltaAlgorithm;
 
 /**
  * Represents the delta information for incremental transfer of a file.
- * Contains all the block changes needed to update a target file.
+ * Holds only metadata and counters; the changed blocks themselves are streamed
+ * to the writer through a {@link BlockDeltaChannel}.
  */
 public class FileDelta {
     private String filePath;
-    private List<BlockDelta> blockDeltas;
     private long totalBlocks;
     private long changedBlocks;
+    private int blockSize;          // size of the blocks counted in changedBlocks; 0 for instructions
     private long sourceFileSize;
     private long sourceLastModified;
+    private DeltaAlgorithm algorithm = DeltaAlgorithm.BLOCK;  // all but BLOCK send COPY/LITERAL instructions
+    private long literalBytes;      // instructions only: new bytes sent
+    private long copiedBytes;       // instructions only: bytes reused from the old file
+    private FileSnapshot sourceSnapshot;
 
-    public FileDelta() {
-        this.blockDeltas = new ArrayList<>();
-    }
+    public FileDelta() {}
 
     public FileDelta(String filePath) {
         this.filePath = filePath;
-        this.blockDeltas = new ArrayList<>();
     }
 
     // Getters and setters
     public String getFilePath() { return filePath; }
     public void setFilePath(String filePath) { this.filePath = filePath; }
 
-    public List<BlockDelta> getBlockDeltas() { return blockDeltas; }
-    public void setBlockDeltas(List<BlockDelta> blockDeltas) { this.blockDeltas = blockDeltas; }
-
     public long getTotalBlocks() { return totalBlocks; }
     public void setTotalBlocks(long totalBlocks) { this.totalBlocks = totalBlocks; }
 
     public long getChangedBlocks() { return changedBlocks; }
     public void setChangedBlocks(long changedBlocks) { this.changedBlocks = changedBlocks; }
 
+    public int getBlockSize() { return blockSize; }
+    public void setBlockSize(int blockSize) { this.blockSize = blockSize; }
+
     public long getSourceFileSize() { return sourceFileSize; }
     public void setSourceFileSize(long sourceFileSize) { this.sourceFileSize = sourceFileSize; }
 
     public long getSourceLastModified() { return sourceLastModified; }
     public void setSourceLastModified(long sourceLastModified) { this.sourceLastModified = sourceLastModified; }
 
-    /**
-     * Add a block delta to this file delta
-     */
-    public void addBlockDelta(BlockDelta delta) {
-        blockDeltas.add(delta);
-    }
+    public DeltaAlgorithm getAlgorithm() { return algorithm; }
+    public void setAlgorithm(DeltaAlgorithm algorithm) { this.algorithm = algorithm; }
+
+    public long getLiteralBytes() { return literalBytes; }
+    public void setLiteralBytes(long literalBytes) { this.literalBytes = literalBytes; }
+
+    public long getCopiedBytes() { return copiedBytes; }
+    public void setCopiedBytes(long copiedBytes) { this.copiedBytes = copiedBytes; }
+
+    // Snapshot of exactly the source content this delta was computed from
+    public FileSnapshot getSourceSnapshot() { return sourceSnapshot; }
+    public void setSourceSnapshot(FileSnapshot sourceSnapshot) { this.sourceSnapshot = sourceSnapshot; }
 
     /**
      * Check if this delta has any changes
      */
     public boolean hasChanges() {
-        return !blockDeltas.isEmpty();
+        return changedBlocks > 0;
     }
 
     /**
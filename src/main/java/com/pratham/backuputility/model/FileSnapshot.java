@@ -1,7 +1,8 @@
 package com.pratham.backuputility.model;
 
+import com.pratham.backuputility.util.BlockHashAlgorithm;
+
 import java.time.LocalDateTime;
-import java.util.List;
 
 /**
  * Represents a snapshot of a file with metadata and block-level hashes
@@ -12,13 +13,14 @@ public class FileSnapshot {
     private long size;
     private LocalDateTime lastModified;
     private String fileHash;
-    private List<String> blockHashes;
+    private BlockHashList blockHashes;
+    private int blockSize;          // bytes per block; 0 for chunked or unrecorded snapshots
     private LocalDateTime snapshotTime;
 
     public FileSnapshot() {}
 
     public FileSnapshot(String filePath, long size, LocalDateTime lastModified,
-                       String fileHash, List<String> blockHashes) {
+                       String fileHash, BlockHashList blockHashes) {
         this.filePath = filePath;
         this.size = size;
         this.lastModified = lastModified;
@@ -40,8 +42,18 @@ public class FileSnapshot {
     public String getFileHash() { return fileHash; }
     public void setFileHash(String fileHash) { this.fileHash = fileHash; }
 
-    public List<String> getBlockHashes() { return blockHashes; }
-    public void setBlockHashes(List<String> blockHashes) { this.blockHashes = blockHashes; }
+    public BlockHashList getBlockHashes() { return blockHashes; }
+    public void setBlockHashes(BlockHashList blockHashes) { this.blockHashes = blockHashes; }
+
+    public int getBlockSize() { return blockSize; }
+    public void setBlockSize(int blockSize) { this.blockSize = blockSize; }
+
+    /**
+     * Algorithm the block hashes were made with
+     */
+    public BlockHashAlgorithm getBlockHashAlgorithm() {
+        return blockHashes != null ? blockHashes.getAlgorithm() : BlockHashAlgorithm.SHA256;
+    }
 
     public LocalDateTime getSnapshotTime() { return snapshotTime; }
     public void setSnapshotTime(LocalDateTime snapshotTime) { this.snapshotTime = snapshotTime; }
@@ -0,0 +1,124 @@
+package com.pratham.backuputility.model;
+
+import com.pratham.backuputility.util.BlockHashAlgorithm;
+import com.pratham.backuputility.util.HashUtil;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Run-scoped view of the latest snapshot of every file, keyed by relative path.
+ *
+ * Holds only what the scan stage needs to decide whether a file changed: snapshot
+ * id, size, modification time, file hash, block hash algorithm and block size, in parallel
+ * primitive arrays. Block hashes are not loaded; they are fetched by snapshot id
+ * for the files that turn out to have changed. The view is not updated while the
+ * run saves new snapshots, which is fine since a run visits each path once.
+ */
+public class LatestSnapshots {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final BlockHashAlgorithm[] ALGORITHMS = BlockHashAlgorithm.values();
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private long[] snapshotIds = new long[DEFAULT_CAPACITY];
+    private long[] sizes = new long[DEFAULT_CAPACITY];
+    private long[] lastModified = new long[DEFAULT_CAPACITY];       // LocalDateTime as nanos, see encode
+    private byte[] fileHashes = new byte[DEFAULT_CAPACITY * HashUtil.SHA256_LENGTH];
+    private byte[] algorithms = new byte[DEFAULT_CAPACITY];
+    private int[] blockSizes = new int[DEFAULT_CAPACITY];
+    private int size;
+
+    /**
+     * Record the snapshot of a path, replacing any earlier one for the same path
+     */
+    public void put(long snapshotId, String filePath, long fileSize, LocalDateTime modified,
+                    String fileHash, BlockHashAlgorithm algorithm, int blockSize) {
+        Integer existing = slots.get(filePath);
+        int slot = existing != null ? existing : size++;
+        if (existing == null) {
+            ensureCapacity();
+            slots.put(filePath, slot);
+        }
+        snapshotIds[slot] = snapshotId;
+        sizes[slot] = fileSize;
+        lastModified[slot] = encode(modified);
+        HashUtil.hexToBytes(fileHash, fileHashes, slot * HashUtil.SHA256_LENGTH);
+        algorithms[slot] = (byte) algorithm.ordinal();
+        blockSizes[slot] = blockSize;
+    }
+
+    /**
+     * The latest snapshot of a path, or null if it has none
+     */
+    public Entry get(String filePath) {
+        Integer slot = slots.get(filePath);
+        if (slot == null) {
+            return null;
+        }
+        return new Entry(snapshotIds[slot], filePath, sizes[slot], decode(lastModified[slot]),
+            HashUtil.bytesToHex(fileHashes, slot * HashUtil.SHA256_LENGTH, HashUtil.SHA256_LENGTH),
+            ALGORITHMS[algorithms[slot]], blockSizes[slot]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity() {
+        if (size <= snapshotIds.length) {
+            return;
+        }
+        int capacity = snapshotIds.length + (snapshotIds.length >> 1);
+        snapshotIds = Arrays.copyOf(snapshotIds, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        lastModified = Arrays.copyOf(lastModified, capacity);
+        fileHashes = Arrays.copyOf(fileHashes, capacity * HashUtil.SHA256_LENGTH);
+        algorithms = Arrays.copyOf(algorithms, capacity);
+        blockSizes = Arrays.copyOf(blockSizes, capacity);
+    }
+
+    // Lossless for any LocalDateTime before the year 2262; the offset only fixes an encoding
+    private static long encode(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+    }
+
+    private static LocalDateTime decode(long nanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+            (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+    }
+
+    /**
+     * Metadata of one snapshot, without its block hashes
+     */
+    public static class Entry {
+        private final long snapshotId;
+        private final String filePath;
+        private final long size;
+        private final LocalDateTime lastModified;
+        private final String fileHash;
+        private final BlockHashAlgorithm blockHashAlgorithm;
+        private final int blockSize;    // 0 when not recorded
+
+        public Entry(long snapshotId, String filePath, long size, LocalDateTime lastModified,
+                     String fileHash, BlockHashAlgorithm blockHashAlgorithm, int blockSize) {
+            this.snapshotId = snapshotId;
+            this.filePath = filePath;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileHash = fileHash;
+            this.blockHashAlgorithm = blockHashAlgorithm;
+            this.blockSize = blockSize;
+        }
+
+        public long getSnapshotId() { return snapshotId; }
+        public String getFilePath() { return filePath; }
+        public long getSize() { return size; }
+        public LocalDateTime getLastModified() { return lastModified; }
+        public String getFileHash() { return fileHash; }
+        public BlockHashAlgorithm getBlockHashAlgorithm() { return blockHashAlgorithm; }
+        public int getBlockSize() { return blockSize; }
+    }
+}
@@ -0,0 +1,123 @@
+package com.pratham.backuputility.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persisted result of the last scan of a source/target tree pair.
+ *
+ * For every directory on each side it keeps the directory's own stat identity
+ * and the sorted names and stat identity (size, mtime, inode, ctime) of its
+ * children. A directory whose identity is unchanged still has the same entries,
+ * so its listing can be reused instead of read again; its files still have to
+ * be statted, since editing a file in place does not touch the directory.
+ */
+public class ScanIndex {
+    public enum Side { SOURCE, TARGET }
+
+    // Timestamps this close to the scan start may still change without the stat changing
+    private static final long RACY_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final long scanStartNanos;
+    private final Map<String, DirectoryRecord> sourceDirectories = new ConcurrentHashMap<>();
+    private final Map<String, DirectoryRecord> targetDirectories = new ConcurrentHashMap<>();
+
+    public ScanIndex(long scanStartNanos) {
+        this.scanStartNanos = scanStartNanos;
+    }
+
+    public long getScanStartNanos() { return scanStartNanos; }
+
+    public Map<String, DirectoryRecord> getDirectories(Side side) {
+        return side == Side.SOURCE ? sourceDirectories : targetDirectories;
+    }
+
+    public DirectoryRecord getDirectory(Side side, String relativeDir) {
+        return getDirectories(side).get(relativeDir);
+    }
+
+    public void putDirectory(Side side, String relativeDir, DirectoryRecord record) {
+        getDirectories(side).put(relativeDir, record);
+    }
+
+    /**
+     * Whether a timestamp is old enough at scan time that an unchanged stat can be trusted.
+     * Anything modified within the timestamp granularity of the scan could change again
+     * without its mtime moving.
+     */
+    public boolean isSettled(long timestampNanos) {
+        return timestampNanos < scanStartNanos - RACY_WINDOW_NANOS;
+    }
+
+    /**
+     * One directory: its own identity and the identities of its children, sorted by name
+     */
+    public static class DirectoryRecord {
+        private static final byte DIRECTORY = 1;
+        private static final byte IN_SYNC = 2;
+
+        private final long mtime;
+        private final long inode;
+        private final long ctime;
+        private final String[] names;
+        private final byte[] flags;
+        private final long[] sizes;
+        private final long[] mtimes;
+        private final long[] inodes;
+        private final long[] ctimes;
+
+        public DirectoryRecord(long mtime, long inode, long ctime, int childCount) {
+            this.mtime = mtime;
+            this.inode = inode;
+            this.ctime = ctime;
+            this.names = new String[childCount];
+            this.flags = new byte[childCount];
+            this.sizes = new long[childCount];
+            this.mtimes = new long[childCount];
+            this.inodes = new long[childCount];
+            this.ctimes = new long[childCount];
+        }
+
+        /**
+         * Fill in child i; children must be set in name order
+         */
+        public void setChild(int i, String name, boolean directory, boolean inSync,
+                             long size, long mtime, long inode, long ctime) {
+            names[i] = name;
+            flags[i] = (byte) ((directory ? DIRECTORY : 0) | (inSync ? IN_SYNC : 0));
+            sizes[i] = size;
+            mtimes[i] = mtime;
+            inodes[i] = inode;
+            ctimes[i] = ctime;
+        }
+
+        public long getMtime() { return mtime; }
+        public long getInode() { return inode; }
+        public long getCtime() { return ctime; }
+        public int getChildCount() { return names.length; }
+        public String getName(int i) { return names[i]; }
+        public boolean isDirectory(int i) { return (flags[i] & DIRECTORY) != 0; }
+        public boolean isInSync(int i) { return (flags[i] & IN_SYNC) != 0; }
+        public long getSize(int i) { return sizes[i]; }
+        public long getMtime(int i) { return mtimes[i]; }
+        public long getInode(int i) { return inodes[i]; }
+        public long getCtime(int i) { return ctimes[i]; }
+
+        /**
+         * Position of a child by name, or a negative value if absent
+         */
+        public int indexOf(String name) {
+            return Arrays.binarySearch(names, name);
+        }
+
+        public boolean hasIdentity(long mtime, long inode, long ctime) {
+            return this.mtime == mtime && this.inode == inode && this.ctime == ctime;
+        }
+
+        public boolean childHasIdentity(int i, long size, long mtime, long inode, long ctime) {
+            return sizes[i] == size && mtimes[i] == mtime && inodes[i] == inode && ctimes[i] == ctime;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.pratham.backuputility.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collected result of a single source/target tree diff, in sorted path order
+ */
+public class TreeDiff {
+    private final List<TreeDiffEntry> added = new ArrayList<>();
+    private final List<TreeDiffEntry> modifiedCandidates = new ArrayList<>();
+    private final List<TreeDiffEntry> deleted = new ArrayList<>();
+
+    // Persists the scan index once the entries' in-sync verdicts are known
+    private Runnable scanIndexCommit;
+
+    public void add(TreeDiffEntry entry) {
+        switch (entry.getType()) {
+            case ADDED -> added.add(entry);
+            case MODIFIED_CANDIDATE -> modifiedCandidates.add(entry);
+            case DELETED -> deleted.add(entry);
+        }
+    }
+
+    public List<TreeDiffEntry> getAdded() { return added; }
+    public List<TreeDiffEntry> getModifiedCandidates() { return modifiedCandidates; }
+    public List<TreeDiffEntry> getDeleted() { return deleted; }
+
+    public void setScanIndexCommit(Runnable scanIndexCommit) {
+        this.scanIndexCommit = scanIndexCommit;
+    }
+
+    /**
+     * Save the scan index of this diff. Call after the modified candidates have been
+     * checked, so the files found identical are remembered for the next scan.
+     */
+    public void commitScanIndex() {
+        Runnable commit = scanIndexCommit;
+        scanIndexCommit = null;
+        if (commit != null) {
+            commit.run();
+        }
+    }
+
+    /**
+     * Number of distinct relative paths across both trees
+     */
+    public int getTotalFiles() {
+        return added.size() + modifiedCandidates.size() + deleted.size();
+    }
+
+    public int getSourceFileCount() {
+        return added.size() + modifiedCandidates.size();
+    }
+
+    public int getTargetFileCount() {
+        return modifiedCandidates.size() + deleted.size();
+    }
+}
@@ -0,0 +1,60 @@
+package com.pratham.backuputility.model;
+
+import java.nio.file.Path;
+
+/**
+ * One file produced by a source/target tree diff.
+ * Sizes and modification times come from the directory walk, so consumers
+ * can make cheap decisions without statting the files again.
+ */
+public class TreeDiffEntry {
+    public enum Type {
+        ADDED,              // only in the source tree
+        MODIFIED_CANDIDATE, // in both trees; contents still need comparing
+        DELETED             // only in the target tree
+    }
+
+    private final Type type;
+    private final String relativePath;
+    private final Path sourceFile;
+    private final Path targetFile;
+    private final long sourceSize;
+    private final long sourceLastModified;
+    private final long targetSize;
+    private final long targetLastModified;
+
+    // Set once source and target are known to hold the same content
+    private volatile boolean inSync;
+
+    public TreeDiffEntry(Type type, String relativePath, Path sourceFile, Path targetFile,
+                         long sourceSize, long sourceLastModified, long targetSize, long targetLastModified) {
+        this.type = type;
+        this.relativePath = relativePath;
+        this.sourceFile = sourceFile;
+        this.targetFile = targetFile;
+        this.sourceSize = sourceSize;
+        this.sourceLastModified = sourceLastModified;
+        this.targetSize = targetSize;
+        this.targetLastModified = targetLastModified;
+    }
+
+    public Type getType() { return type; }
+    public String getRelativePath() { return relativePath; }
+    public Path getSourceFile() { return sourceFile; }
+    public Path getTargetFile() { return targetFile; }
+    public long getSourceSize() { return sourceSize; }
+    public long getSourceLastModified() { return sourceLastModified; }
+    public long getTargetSize() { return targetSize; }
+    public long getTargetLastModified() { return targetLastModified; }
+
+    public boolean isInSync() { return inSync; }
+    public void setInSync(boolean inSync) { this.inSync = inSync; }
+
+    public boolean existsInSource() { return type != Type.DELETED; }
+    public boolean existsInTarget() { return type != Type.ADDED; }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s", type, relativePath);
+    }
+}
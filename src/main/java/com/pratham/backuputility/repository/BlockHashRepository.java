@@ -1,14 +1,18 @@
 package com.pratham.backuputility.repository;
 
 import com.pratham.backuputility.entity.BlockHashEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
 /**
- * Repository for managing block hashes in SQLite
+ * Repository for managing block hashes in SQLite.
+ * One row per block is the legacy format; snapshots are now written packed
+ * (see PackedBlockHashesRepository) and these rows are migrated away.
  */
 public interface BlockHashRepository extends JpaRepository<BlockHashEntity, Long> {
     
@@ -37,4 +41,23 @@ public interface BlockHashRepository extends JpaRepository<BlockHashEntity, Long
      */
     @Query("SELECT bh FROM BlockHashEntity bh WHERE bh.hash = :hash")
     List<BlockHashEntity> findByHash(@Param("hash") String hash);
+
+    /**
+     * Hash strings of a snapshot in block order, without materialising entities
+     */
+    @Query("SELECT bh.hash FROM BlockHashEntity bh WHERE bh.fileSnapshot.id = :fileSnapshotId ORDER BY bh.blockIndex")
+    List<String> findHashesByFileSnapshotId(@Param("fileSnapshotId") Long fileSnapshotId);
+
+    /**
+     * Snapshots that still have hashes in the legacy one-row-per-block format
+     */
+    @Query("SELECT DISTINCT bh.fileSnapshot.id FROM BlockHashEntity bh")
+    List<Long> findLegacySnapshotIds(Pageable pageable);
+
+    /**
+     * Delete the legacy rows of a snapshot in one statement
+     */
+    @Modifying
+    @Query("DELETE FROM BlockHashEntity bh WHERE bh.fileSnapshot.id = :fileSnapshotId")
+    int deleteAllByFileSnapshotId(@Param("fileSnapshotId") Long fileSnapshotId);
 }
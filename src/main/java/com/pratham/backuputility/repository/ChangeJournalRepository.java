@@ -0,0 +1,46 @@
+package com.pratham.backuputility.repository;
+
+import com.pratham.backuputility.entity.ChangeJournalEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for the deduplicated DC change journal
+ */
+public interface ChangeJournalRepository extends JpaRepository<ChangeJournalEntry, String> {
+
+    /**
+     * Record an event, merging it into the existing entry for the same path.
+     * A pending RESCAN is never downgraded to a single-file event.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO change_journal (relative_path, event_type, first_seen_at, last_seen_at, event_count) " +
+                   "VALUES (:relativePath, :eventType, :seenAt, :seenAt, 1) " +
+                   "ON CONFLICT(relative_path) DO UPDATE SET " +
+                   "event_type = CASE WHEN event_type = 'RESCAN' THEN 'RESCAN' ELSE excluded.event_type END, " +
+                   "last_seen_at = excluded.last_seen_at, event_count = event_count + 1",
+           nativeQuery = true)
+    void upsert(@Param("relativePath") String relativePath, @Param("eventType") String eventType, @Param("seenAt") long seenAt);
+
+    /**
+     * Oldest entries that have been quiet since the cutoff
+     */
+    @Query("SELECT e FROM ChangeJournalEntry e WHERE e.lastSeenAt <= :quietSince ORDER BY e.firstSeenAt")
+    List<ChangeJournalEntry> findQuietEntries(@Param("quietSince") long quietSince, Pageable pageable);
+
+    /**
+     * Remove drained entries, keeping any that saw new events after the drain started
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChangeJournalEntry e WHERE e.relativePath IN :paths AND e.lastSeenAt <= :drainStartedAt")
+    int deleteDrained(@Param("paths") Collection<String> paths, @Param("drainStartedAt") long drainStartedAt);
+}
@@ -1,13 +1,17 @@
 package com.pratham.backuputility.repository;
 
 import com.pratham.backuputility.entity.FileSnapshotEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository for managing file snapshots in SQLite
@@ -52,4 +56,15 @@ public interface FileSnapshotRepository extends JpaRepository<FileSnapshotEntity
      */
     @Query("SELECT DISTINCT fs.filePath FROM FileSnapshotEntity fs")
     List<String> findDistinctFilePaths();
+
+    /**
+     * Stream id, path, size, last modified, file hash, block hash algorithm and block size of the latest
+     * snapshot of every file, as scalars so no entities pile up in the persistence context.
+     * Must be consumed inside a transaction and closed.
+     */
+    @Query("SELECT fs.id, fs.filePath, fs.size, fs.lastModified, fs.fileHash, fs.blockHashAlgorithm, fs.blockSize " +
+           "FROM FileSnapshotEntity fs WHERE fs.snapshotTime = " +
+           "(SELECT MAX(f.snapshotTime) FROM FileSnapshotEntity f WHERE f.filePath = fs.filePath) ORDER BY fs.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<Object[]> streamLatestSnapshots();
 }
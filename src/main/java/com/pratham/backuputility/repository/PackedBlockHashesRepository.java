@@ -0,0 +1,39 @@
+package com.pratham.backuputility.repository;
+
+import com.pratham.backuputility.entity.PackedBlockHashesEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Repository for packed per-snapshot block hashes
+ */
+public interface PackedBlockHashesRepository extends JpaRepository<PackedBlockHashesEntity, Long> {
+
+    /**
+     * The packed hashes, weak sums and chunk lengths (both possibly null) of a snapshot,
+     * as {data, weakSums, chunkLengths}; empty if the snapshot has none
+     */
+    @Query("SELECT p.data, p.weakSums, p.chunkLengths FROM PackedBlockHashesEntity p WHERE p.fileSnapshotId = :fileSnapshotId")
+    List<Object[]> findDataByFileSnapshotId(@Param("fileSnapshotId") Long fileSnapshotId);
+
+    /**
+     * The packed Merkle tree nodes of a snapshot, as a single element that is null for
+     * snapshots saved before trees were kept; empty if the snapshot has no packed row
+     */
+    @Query("SELECT p.merkleNodes FROM PackedBlockHashesEntity p WHERE p.fileSnapshotId = :fileSnapshotId")
+    List<byte[]> findMerkleNodesByFileSnapshotId(@Param("fileSnapshotId") Long fileSnapshotId);
+
+    /**
+     * Total number of block hashes stored in packed form
+     */
+    @Query("SELECT COALESCE(SUM(p.blockCount), 0) FROM PackedBlockHashesEntity p")
+    long sumBlockCounts();
+
+    @Modifying
+    @Query("DELETE FROM PackedBlockHashesEntity p WHERE p.fileSnapshotId = :fileSnapshotId")
+    void deleteByFileSnapshotId(@Param("fileSnapshotId") Long fileSnapshotId);
+}
@@ -0,0 +1,39 @@
+package com.pratham.backuputility.repository;
+
+import com.pratham.backuputility.entity.TransferJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for asynchronous transfer jobs
+ */
+public interface TransferJobRepository extends JpaRepository<TransferJob, Long> {
+
+    /**
+     * Most recently created jobs first
+     */
+    @Query("SELECT j FROM TransferJob j ORDER BY j.createdAt DESC")
+    List<TransferJob> findRecentJobs(Pageable pageable);
+
+    /**
+     * Jobs in any of the given states
+     */
+    List<TransferJob> findByStatusIn(Collection<String> statuses);
+
+    /**
+     * Ids of finished jobs older than the cutoff, for retention cleanup
+     */
+    @Query("SELECT j.id FROM TransferJob j WHERE j.createdAt < :cutoffTime AND j.status IN ('COMPLETED', 'FAILED')")
+    List<Long> findFinishedJobIdsOlderThan(@Param("cutoffTime") LocalDateTime cutoffTime);
+
+    @Modifying
+    @Query("DELETE FROM TransferJob j WHERE j.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,26 @@
+package com.pratham.backuputility.repository;
+
+import com.pratham.backuputility.entity.TransferJobResult;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+
+/**
+ * Repository for the stored result lines of transfer jobs
+ */
+public interface TransferJobResultRepository extends JpaRepository<TransferJobResult, Long> {
+
+    /**
+     * One page of a job's results in the order they were produced
+     */
+    Page<TransferJobResult> findByJobIdOrderBySeqAsc(Long jobId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM TransferJobResult r WHERE r.jobId IN :jobIds")
+    int deleteByJobIds(@Param("jobIds") Collection<Long> jobIds);
+}
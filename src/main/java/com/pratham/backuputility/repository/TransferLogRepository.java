@@ -4,12 +4,14 @@ import com.pratham.backuputility.entity.TransferLog;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface TransferLogRepository extends JpaRepository<TransferLog, Long> {
     
@@ -25,15 +27,6 @@ public interface TransferLogRepository extends JpaRepository<TransferLog, Long>
     
     // Additional queries for enhanced functionality
     
-    @Query("SELECT t FROM TransferLog t WHERE t.status = :status ORDER BY t.transferredAt DESC")
-    List<TransferLog> findByStatus(@Param("status") String status);
-    
-    @Query("SELECT t FROM TransferLog t WHERE t.operationType = :operationType ORDER BY t.transferredAt DESC")
-    List<TransferLog> findByOperationType(@Param("operationType") String operationType);
-    
-    @Query("SELECT t FROM TransferLog t WHERE t.transferredAt >= :startTime AND t.transferredAt <= :endTime ORDER BY t.transferredAt DESC")
-    List<TransferLog> findByTimeRange(@Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime);
-    
     @Query("SELECT COUNT(t) FROM TransferLog t WHERE t.status = :status")
     long countByStatus(@Param("status") String status);
     
@@ -43,10 +36,59 @@ public interface TransferLogRepository extends JpaRepository<TransferLog, Long>
     @Query("SELECT AVG(t.transferDurationMs) FROM TransferLog t WHERE t.status = 'SUCCESS' AND t.transferDurationMs IS NOT NULL")
     Double getAverageTransferDuration();
     
-    @Query("SELECT t FROM TransferLog t WHERE t.fileName LIKE %:fileNamePattern% ORDER BY t.transferredAt DESC")
-    List<TransferLog> findByFileNamePattern(@Param("fileNamePattern") String fileNamePattern);
-    
+    // Keyset pages, newest first. Each returns the logs strictly after the cursor
+    // (afterTime, afterId) in (transferredAt DESC, id DESC) order; the first
+    // conjunct bounds the index range so no OFFSET rows are ever read.
+
+    @Query("SELECT t FROM TransferLog t WHERE t.transferredAt <= :afterTime " +
+           "AND (t.transferredAt < :afterTime OR t.id < :afterId) " +
+           "ORDER BY t.transferredAt DESC, t.id DESC")
+    List<TransferLog> findPage(@Param("afterTime") LocalDateTime afterTime, @Param("afterId") long afterId,
+                               Pageable pageable);
+
+    @Query("SELECT t FROM TransferLog t WHERE t.status = :status AND t.transferredAt <= :afterTime " +
+           "AND (t.transferredAt < :afterTime OR t.id < :afterId) " +
+           "ORDER BY t.transferredAt DESC, t.id DESC")
+    List<TransferLog> findPageByStatus(@Param("status") String status, @Param("afterTime") LocalDateTime afterTime,
+                                       @Param("afterId") long afterId, Pageable pageable);
+
+    @Query("SELECT t FROM TransferLog t WHERE t.operationType = :operationType AND t.transferredAt <= :afterTime " +
+           "AND (t.transferredAt < :afterTime OR t.id < :afterId) " +
+           "ORDER BY t.transferredAt DESC, t.id DESC")
+    List<TransferLog> findPageByOperationType(@Param("operationType") String operationType,
+                                              @Param("afterTime") LocalDateTime afterTime,
+                                              @Param("afterId") long afterId, Pageable pageable);
+
+    @Query("SELECT t FROM TransferLog t WHERE t.transferredAt >= :startTime AND t.transferredAt <= :endTime " +
+           "AND t.transferredAt <= :afterTime AND (t.transferredAt < :afterTime OR t.id < :afterId) " +
+           "ORDER BY t.transferredAt DESC, t.id DESC")
+    List<TransferLog> findPageByTimeRange(@Param("startTime") LocalDateTime startTime,
+                                          @Param("endTime") LocalDateTime endTime,
+                                          @Param("afterTime") LocalDateTime afterTime,
+                                          @Param("afterId") long afterId, Pageable pageable);
+
+    @Query("SELECT t FROM TransferLog t WHERE t.fileName LIKE %:fileNamePattern% AND t.transferredAt <= :afterTime " +
+           "AND (t.transferredAt < :afterTime OR t.id < :afterId) " +
+           "ORDER BY t.transferredAt DESC, t.id DESC")
+    List<TransferLog> findPageByFileNamePattern(@Param("fileNamePattern") String fileNamePattern,
+                                                @Param("afterTime") LocalDateTime afterTime,
+                                                @Param("afterId") long afterId, Pageable pageable);
+
+    /**
+     * Bytes sent and file size of the latest successful transfers of a file, newest first
+     */
+    @Query("SELECT t.bytesTransferred, t.fileSize FROM TransferLog t " +
+           "WHERE t.fileName = :fileName AND t.status = 'SUCCESS' ORDER BY t.transferredAt DESC")
+    List<Object[]> findRecentTransferSizes(@Param("fileName") String fileName, Pageable pageable);
+
+    /**
+     * The columns rollups are built from, for every log
+     */
+    @Query("SELECT t.transferredAt, t.status, t.operationType, t.bytesTransferred, t.transferDurationMs FROM TransferLog t")
+    Stream<Object[]> streamRollupColumns();
+
     // Clean up old logs
+    @Modifying
     @Query("DELETE FROM TransferLog t WHERE t.transferredAt < :cutoffTime")
-    void deleteOldLogs(@Param("cutoffTime") LocalDateTime cutoffTime);
+    int deleteOldLogs(@Param("cutoffTime") LocalDateTime cutoffTime);
 }
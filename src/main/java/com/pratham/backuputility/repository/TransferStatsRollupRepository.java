@@ -0,0 +1,48 @@
+package com.pratham.backuputility.repository;
+
+import com.pratham.backuputility.entity.TransferStatsRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Repository for hourly transfer log rollups
+ */
+public interface TransferStatsRollupRepository extends JpaRepository<TransferStatsRollup, String> {
+
+    /**
+     * Add counters to a bucket, creating it if needed
+     */
+    @Modifying
+    @Query(value = "INSERT INTO transfer_stats_rollups (bucket_key, bucket_start, status, operation_type, " +
+                   "transfer_count, bytes_transferred, duration_count, duration_sum_ms) " +
+                   "VALUES (:bucketKey, :bucketStart, :status, :operationType, " +
+                   ":transferCount, :bytesTransferred, :durationCount, :durationSumMs) " +
+                   "ON CONFLICT(bucket_key) DO UPDATE SET " +
+                   "transfer_count = transfer_count + excluded.transfer_count, " +
+                   "bytes_transferred = bytes_transferred + excluded.bytes_transferred, " +
+                   "duration_count = duration_count + excluded.duration_count, " +
+                   "duration_sum_ms = duration_sum_ms + excluded.duration_sum_ms",
+           nativeQuery = true)
+    void add(@Param("bucketKey") String bucketKey, @Param("bucketStart") long bucketStart,
+             @Param("status") String status, @Param("operationType") String operationType,
+             @Param("transferCount") long transferCount, @Param("bytesTransferred") long bytesTransferred,
+             @Param("durationCount") long durationCount, @Param("durationSumMs") long durationSumMs);
+
+    /**
+     * Counters per status over all buckets: status, transfers, bytes, durations, duration sum
+     */
+    @Query("SELECT r.status, SUM(r.transferCount), SUM(r.bytesTransferred), SUM(r.durationCount), SUM(r.durationSumMs) " +
+           "FROM TransferStatsRollup r GROUP BY r.status")
+    List<Object[]> sumByStatus();
+
+    @Query("SELECT r FROM TransferStatsRollup r WHERE r.bucketStart >= :since ORDER BY r.bucketStart")
+    List<TransferStatsRollup> findSince(@Param("since") long since);
+
+    @Modifying
+    @Query("DELETE FROM TransferStatsRollup r WHERE r.bucketStart < :cutoff")
+    int deleteOlderThan(@Param("cutoff") long cutoff);
+}
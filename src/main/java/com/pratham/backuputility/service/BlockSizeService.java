@@ -0,0 +1,109 @@
+package com.pratham.backuputility.service;
+
+import com.pratham.backuputility.repository.TransferLogRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chooses the block size of each file's snapshot.
+ *
+ * Small blocks find small changes but cost one hash, and stored hash bytes, per
+ * block; a 200 GB image in 4 KB blocks has 50M of them. Like rsync, the block
+ * size grows with the square root of the file size, so block count and block
+ * size grow together: app.block-size doubled while it stays at or below
+ * sqrt(size), up to a maximum. Sizes are always app.block-size times a power of
+ * two. Optionally the recent transfers of the file shift this one step: files
+ * whose changes are tiny get smaller blocks, files that are mostly rewritten
+ * anyway get larger ones.
+ *
+ * The chosen size is recorded with every snapshot, so a file whose size class
+ * changes is still compared against its old snapshot with the old block size.
+ */
+@Service
+public class BlockSizeService {
+
+    // Recent transfers considered, and how many are needed before history counts
+    private static final int HISTORY_SIZE = 5;
+    private static final int MIN_HISTORY = 3;
+    // Median share of the file sent per transfer below or above which the size moves a step
+    private static final double SPARSE_CHANGE_RATIO = 0.01;
+    private static final double DENSE_CHANGE_RATIO = 0.5;
+
+    @Value("${app.block-size:4096}")
+    private int blockSize;
+
+    @Value("${app.adaptive-block-size.enabled:true}")
+    private boolean adaptive;
+
+    @Value("${app.adaptive-block-size.max:1048576}")
+    private int maxBlockSize;
+
+    @Value("${app.adaptive-block-size.history-enabled:false}")
+    private boolean historyEnabled;
+
+    @Autowired
+    private TransferLogRepository transferLogRepository;
+
+    /**
+     * Block size for a new snapshot of a file of the given size
+     */
+    @Transactional(readOnly = true)
+    public int select(String relativePath, long fileSize) {
+        if (!adaptive) {
+            return blockSize;
+        }
+        int size = bySize(fileSize, blockSize, maxBlockSize);
+        if (historyEnabled) {
+            double ratio = medianChangeRatio(relativePath);
+            if (ratio >= 0 && ratio < SPARSE_CHANGE_RATIO && size > blockSize) {
+                size /= 2;
+            } else if (ratio > DENSE_CHANGE_RATIO && size * 2L <= maxBlockSize) {
+                size *= 2;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Block size of a snapshot that did not record one: the configured size at the time
+     */
+    public int getDefaultBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * minBlockSize doubled while it stays at or below sqrt(fileSize), capped at maxBlockSize
+     */
+    public static int bySize(long fileSize, int minBlockSize, int maxBlockSize) {
+        double target = Math.sqrt((double) fileSize);
+        int size = minBlockSize;
+        while (size * 2L <= target && size * 2L <= maxBlockSize) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    /**
+     * Median of bytes sent over file size across the file's recent transfers, or -1 with too few
+     */
+    private double medianChangeRatio(String relativePath) {
+        List<Object[]> recent = transferLogRepository.findRecentTransferSizes(relativePath, PageRequest.of(0, HISTORY_SIZE));
+        if (recent.size() < MIN_HISTORY) {
+            return -1;
+        }
+        double[] ratios = new double[recent.size()];
+        for (int i = 0; i < ratios.length; i++) {
+            Long sent = (Long) recent.get(i)[0];
+            long size = (Long) recent.get(i)[1];
+            ratios[i] = size == 0 || sent == null ? 1.0 : Math.min(1.0, (double) sent / size);
+        }
+        Arrays.sort(ratios);
+        return ratios[ratios.length / 2];
+    }
+}
@@ -0,0 +1,334 @@
+package com.pratham.backuputility.service;
+
+import com.pratham.backuputility.entity.ChangeJournalEntry;
+import com.pratham.backuputility.model.DirectoryMerkleTree;
+import com.pratham.backuputility.repository.ChangeJournalRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Continuous backup mode.
+ *
+ * Watches every directory under app.dc-path and records each event in a durable
+ * change journal, deduplicated by path. The journal is drained in batches
+ * through the transfer pipeline once its entries have been quiet for a moment.
+ * An OVERFLOW, or a newly created directory, journals a RESCAN of just that
+ * directory's subtree. An entry leaves the journal only once its files have
+ * transferred; entries with a failed file are retried on a later drain. Journal
+ * writes go through the database writer.
+ */
+@Service
+public class ChangeJournalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeJournalService.class);
+
+    private static final String RESCAN = "RESCAN";
+
+    @Value("${app.dc-path}")
+    private String dcPath;
+
+    @Value("${app.dr-path}")
+    private String drPath;
+
+    @Value("${app.watch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.watch.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.watch.quiet-period-ms:2000}")
+    private long quietPeriodMs;
+
+    // How long watcher events are buffered before being written to the journal
+    @Value("${app.watch.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Autowired
+    private ChangeJournalRepository journalRepository;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private FileDetectionService fileDetectionService;
+
+    @Autowired
+    private SyncIndexService syncIndexService;
+
+    @Autowired
+    private DatabaseWriterService databaseWriter;
+
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final AtomicLong eventsRecorded = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong filesDrained = new AtomicLong();
+    private final AtomicLong filesFailed = new AtomicLong();
+
+    private volatile WatchService watchService;
+    private volatile Thread watcherThread;
+    private Path dcBase;
+
+    /**
+     * Start watching once the application is up. Changes made while it was
+     * down are picked up by an initial rescan of the whole tree.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            dcBase = Paths.get(dcPath).toAbsolutePath().normalize();
+            watchService = dcBase.getFileSystem().newWatchService();
+            registerTree(dcBase);
+            long now = System.currentTimeMillis();
+            databaseWriter.execute(() -> {
+                journalRepository.upsert("", RESCAN, now);
+                return null;
+            });
+
+            watcherThread = new Thread(this::watchLoop, "change-watcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+            logger.info("Continuous backup enabled: watching {} directories under {}", watchedDirectories.size(), dcBase);
+        } catch (Exception e) {
+            logger.error("Failed to start watching {}; continuous backup disabled", dcPath, e);
+            stop();
+            watchService = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread thread = watcherThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Failed to close watch service", e);
+        }
+    }
+
+    /**
+     * Drain one batch of quiet journal entries through the transfer pipeline
+     */
+    @Scheduled(fixedDelayString = "${app.watch.drain-interval-ms:5000}")
+    public void drainJournal() {
+        if (!enabled || watchService == null || transferService.isTransferInProgress()) {
+            return;
+        }
+
+        long drainStartedAt = System.currentTimeMillis();
+        List<ChangeJournalEntry> batch = journalRepository.findQuietEntries(
+            drainStartedAt - quietPeriodMs, PageRequest.of(0, Math.max(1, batchSize)));
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Path drBase = Paths.get(drPath).toAbsolutePath().normalize();
+        Set<Path> files = new LinkedHashSet<>();
+        for (ChangeJournalEntry entry : batch) {
+            Path source = entry.getRelativePath().isEmpty() ? dcBase : dcBase.resolve(entry.getRelativePath());
+            if (entry.isRescan()) {
+                Path target = entry.getRelativePath().isEmpty() ? drBase : drBase.resolve(entry.getRelativePath());
+                files.addAll(entry.getRelativePath().isEmpty()
+                    ? fileDetectionService.detectChangedFiles(source, target)
+                    // Scoped rescan: diff only this subtree, outside the scan index of the whole tree
+                    : fileDetectionService.detectChangedFilesInSubtree(source, target));
+            } else if (Files.isRegularFile(source, LinkOption.NOFOLLOW_LINKS)) {
+                files.add(source);
+            }
+            // Deleted paths are left alone on DR, as in an incremental transfer
+        }
+
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        Set<Path> failedFiles = ConcurrentHashMap.newKeySet();
+        boolean ran = transferService.performFileTransfer(new ArrayList<>(files), result -> {
+            if (result.startsWith("✗")) {
+                failures.add(result);
+            }
+        }, failedFiles::add);
+        if (!ran) {
+            return;
+        }
+
+        // Entries whose files failed stay journaled, RESCANs included, and are retried on a later drain
+        List<String> drained = new ArrayList<>();
+        int retained = 0;
+        for (ChangeJournalEntry entry : batch) {
+            Path source = entry.getRelativePath().isEmpty() ? dcBase : dcBase.resolve(entry.getRelativePath());
+            boolean failed = entry.isRescan()
+                ? failedFiles.stream().anyMatch(file -> file.startsWith(source))
+                : failedFiles.contains(source);
+            if (failed) {
+                retained++;
+            } else {
+                drained.add(entry.getRelativePath());
+            }
+        }
+        if (!drained.isEmpty()) {
+            databaseWriter.execute(() -> journalRepository.deleteDrained(drained, drainStartedAt));
+        }
+        filesDrained.addAndGet(files.size() - failedFiles.size());
+        filesFailed.addAndGet(failedFiles.size());
+
+        logger.info("Drained {} journal entries ({} files, {} failed, {} entries kept for retry)",
+            drained.size(), files.size(), failedFiles.size(), retained);
+        for (String failure : failures) {
+            logger.warn("Journal transfer failed: {}", failure);
+        }
+    }
+
+    /**
+     * Journal backlog and watcher counters
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", enabled);
+        statistics.put("watchedDirectories", watchedDirectories.size());
+        statistics.put("pendingEntries", enabled ? journalRepository.count() : 0);
+        statistics.put("eventsRecorded", eventsRecorded.get());
+        statistics.put("overflows", overflows.get());
+        statistics.put("filesDrained", filesDrained.get());
+        statistics.put("filesFailed", filesFailed.get());
+        return statistics;
+    }
+
+    private void watchLoop() {
+        // Events are buffered briefly and written in one go; later events for a path replace earlier ones
+        Map<String, String> pending = new LinkedHashMap<>();
+        long lastFlush = System.currentTimeMillis();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                WatchKey key = watchService.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handleEvents(key, pending);
+                }
+                if (!pending.isEmpty() && System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+                    flush(pending);
+                    lastFlush = System.currentTimeMillis();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (Exception e) {
+                logger.error("Change watcher error", e);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            flush(pending);
+        }
+    }
+
+    private void handleEvents(WatchKey key, Map<String, String> pending) {
+        Path directory = watchedDirectories.get(key);
+        if (directory == null) {
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Events were lost; rescan just the directory they belonged to
+                overflows.incrementAndGet();
+                pending.put(relativize(directory), RESCAN);
+                syncIndexService.invalidate();
+                continue;
+            }
+
+            Path child = directory.resolve((Path) event.context());
+            String relativePath = relativize(child);
+
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                // Files may have landed in it before it was registered
+                registerTree(child);
+                pending.put(relativePath, RESCAN);
+            } else if (!RESCAN.equals(pending.get(relativePath))) {
+                pending.put(relativePath, eventType(event.kind()));
+            }
+
+            // DR no longer matches until the drain has transferred the change
+            if (event.kind() == ENTRY_DELETE) {
+                syncIndexService.recordDeleted(DirectoryMerkleTree.Side.DC, relativePath);
+            } else if (!Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                syncIndexService.recordChanged(DirectoryMerkleTree.Side.DC, relativePath);
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private void flush(Map<String, String> pending) {
+        long seenAt = System.currentTimeMillis();
+        try {
+            // One write, so the whole buffer lands in a single commit
+            databaseWriter.execute(() -> {
+                for (Map.Entry<String, String> event : pending.entrySet()) {
+                    journalRepository.upsert(event.getKey(), event.getValue(), seenAt);
+                }
+                return null;
+            });
+            eventsRecorded.addAndGet(pending.size());
+            pending.clear();
+        } catch (Exception e) {
+            // Keep the events buffered and retry on the next flush
+            logger.error("Failed to write {} change journal entries", pending.size(), e);
+        }
+    }
+
+    private void registerTree(Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    watchedDirectories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Failed to watch {}: {}", root, e.getMessage());
+        }
+    }
+
+    private String relativize(Path path) {
+        return dcBase.relativize(path).toString();
+    }
+
+    private static String eventType(WatchEvent.Kind<?> kind) {
+        if (kind == ENTRY_CREATE) {
+            return "CREATE";
+        }
+        return kind == ENTRY_DELETE ? "DELETE" : "MODIFY";
+    }
+}
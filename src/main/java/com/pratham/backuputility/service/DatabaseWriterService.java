@@ -0,0 +1,328 @@
+package com.pratham.backuputility.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Single writer for the SQLite database.
+ *
+ * Writes are queued and applied by one dedicated thread, which commits whatever
+ * has queued up since its last commit as one transaction (group commit), so a
+ * burst of small writes costs one commit instead of one each. If a batch fails,
+ * its writes are retried one by one so a single bad write only fails itself.
+ * The same thread runs the WAL checkpoints, and times them.
+ *
+ * Work submitted here runs inside the batch transaction and must not start its
+ * own REQUIRES_NEW transactions. Callers must not hold a write transaction of
+ * their own while waiting for the writer, or both would wait for the one write
+ * connection.
+ */
+@Service
+public class DatabaseWriterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseWriterService.class);
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("writerDataSource")
+    private HikariDataSource writerDataSource;
+
+    @Autowired
+    @Qualifier("readerDataSource")
+    private HikariDataSource readerDataSource;
+
+    @Value("${app.db.writer.max-batch-size:256}")
+    private int maxBatchSize;
+
+    @Value("${app.db.writer.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${app.db.checkpoint-interval-ms:10000}")
+    private long checkpointIntervalMs;
+
+    private BlockingQueue<WriteRequest<?>> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+    private long lastCheckpointMs = System.currentTimeMillis();
+
+    private final WriterStatistics statistics = new WriterStatistics();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        running = true;
+        writerThread = new Thread(this::run, "db-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue a write; the future completes once the batch containing it has committed.
+     * Blocks while the queue is full, so producers cannot outrun the database.
+     * Called from the writer thread itself, the write runs at once in the current batch.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> write) {
+        if (isWriterThread()) {
+            try {
+                return CompletableFuture.completedFuture(write.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        if (!running) {
+            throw new IllegalStateException("Database writer is stopped");
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            throw new IllegalStateException("Cannot wait for the database writer inside a write transaction");
+        }
+
+        WriteRequest<T> request = new WriteRequest<>(write);
+        try {
+            queue.put(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a database write", e);
+        }
+        return request.future;
+    }
+
+    /**
+     * Apply a write and wait until it has committed
+     */
+    public <T> T execute(Supplier<T> write) {
+        try {
+            return submit(write).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a database write", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Whether the caller is the writer thread, i.e. inside a batch being committed
+     */
+    public boolean isWriterThread() {
+        return Thread.currentThread() == writerThread;
+    }
+
+    /**
+     * Commit latency, batch size and checkpoint counters, plus connection pool usage
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("queuedWrites", queue.size());
+        result.put("writer", statistics);
+        result.put("writerPool", poolStatistics(writerDataSource));
+        result.put("readerPool", poolStatistics(readerDataSource));
+        return result;
+    }
+
+    private void run() {
+        List<WriteRequest<?>> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                long untilCheckpoint = Math.max(1, lastCheckpointMs + checkpointIntervalMs - System.currentTimeMillis());
+                WriteRequest<?> first = queue.poll(untilCheckpoint, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    // Everything that queued up while the last batch committed goes into this one
+                    batch.add(first);
+                    queue.drainTo(batch, Math.max(1, maxBatchSize) - 1);
+                    commit(batch);
+                    batch.clear();
+                }
+                if (System.currentTimeMillis() - lastCheckpointMs >= checkpointIntervalMs) {
+                    checkpoint();
+                }
+            } catch (InterruptedException e) {
+                // Stopping: finish what is queued, then exit
+                running = false;
+            } catch (Exception e) {
+                logger.error("Database writer error", e);
+                for (WriteRequest<?> request : batch) {
+                    request.fail(e);
+                }
+                batch.clear();
+            }
+        }
+        checkpoint();
+    }
+
+    private void commit(List<WriteRequest<?>> batch) {
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (WriteRequest<?> request : batch) {
+                    request.apply();
+                }
+            });
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).fail(e);
+                statistics.recordFailure();
+                return;
+            }
+            logger.warn("Batch of {} writes failed, retrying them one by one: {}", batch.size(), e.getMessage());
+            for (WriteRequest<?> request : batch) {
+                commit(List.of(request));
+            }
+            return;
+        }
+
+        statistics.recordCommit(batch.size(), System.nanoTime() - start);
+        for (WriteRequest<?> request : batch) {
+            request.complete();
+        }
+    }
+
+    private void checkpoint() {
+        long start = System.nanoTime();
+        try {
+            // PASSIVE copies what it can without waiting for readers that still use older pages
+            Map<String, Object> result = jdbcTemplate.queryForMap("PRAGMA wal_checkpoint(PASSIVE)");
+            statistics.recordCheckpoint(System.nanoTime() - start,
+                ((Number) result.get("log")).longValue(), ((Number) result.get("checkpointed")).longValue());
+        } catch (Exception e) {
+            logger.warn("WAL checkpoint failed: {}", e.getMessage());
+        } finally {
+            lastCheckpointMs = System.currentTimeMillis();
+        }
+    }
+
+    private static Map<String, Object> poolStatistics(HikariDataSource pool) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", pool.getMaximumPoolSize());
+        if (pool.getHikariPoolMXBean() != null) {
+            result.put("active", pool.getHikariPoolMXBean().getActiveConnections());
+            result.put("idle", pool.getHikariPoolMXBean().getIdleConnections());
+            result.put("waiting", pool.getHikariPoolMXBean().getThreadsAwaitingConnection());
+        }
+        return result;
+    }
+
+    /**
+     * One queued write and the future its caller waits on
+     */
+    private static class WriteRequest<T> {
+        private final Supplier<T> write;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+
+        WriteRequest(Supplier<T> write) {
+            this.write = write;
+        }
+
+        void apply() {
+            result = write.get();
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+
+        void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Cumulative writer counters; updated by the writer thread only
+     */
+    public static class WriterStatistics {
+        private volatile long batches;
+        private volatile long writes;
+        private volatile long failedWrites;
+        private volatile int maxBatchSize;
+        private volatile long totalCommitNanos;
+        private volatile long lastCommitNanos;
+        private volatile long maxCommitNanos;
+        private volatile long checkpoints;
+        private volatile long totalCheckpointNanos;
+        private volatile long lastCheckpointNanos;
+        private volatile long maxCheckpointNanos;
+        private volatile long lastCheckpointWalPages;
+        private volatile long lastCheckpointedPages;
+
+        void recordCommit(int batchSize, long nanos) {
+            batches++;
+            writes += batchSize;
+            maxBatchSize = Math.max(maxBatchSize, batchSize);
+            totalCommitNanos += nanos;
+            lastCommitNanos = nanos;
+            maxCommitNanos = Math.max(maxCommitNanos, nanos);
+        }
+
+        void recordFailure() {
+            failedWrites++;
+        }
+
+        void recordCheckpoint(long nanos, long walPages, long checkpointedPages) {
+            checkpoints++;
+            totalCheckpointNanos += nanos;
+            lastCheckpointNanos = nanos;
+            maxCheckpointNanos = Math.max(maxCheckpointNanos, nanos);
+            lastCheckpointWalPages = walPages;
+            lastCheckpointedPages = checkpointedPages;
+        }
+
+        public long getBatches() { return batches; }
+        public long getWrites() { return writes; }
+        public long getFailedWrites() { return failedWrites; }
+        public int getMaxBatchSize() { return maxBatchSize; }
+        public double getAverageBatchSize() { return batches == 0 ? 0.0 : (double) writes / batches; }
+
+        public double getLastCommitMs() { return lastCommitNanos / 1_000_000.0; }
+        public double getMaxCommitMs() { return maxCommitNanos / 1_000_000.0; }
+        public double getAverageCommitMs() { return batches == 0 ? 0.0 : totalCommitNanos / 1_000_000.0 / batches; }
+
+        public long getCheckpoints() { return checkpoints; }
+        public double getLastCheckpointMs() { return lastCheckpointNanos / 1_000_000.0; }
+        public double getMaxCheckpointMs() { return maxCheckpointNanos / 1_000_000.0; }
+        public double getAverageCheckpointMs() { return checkpoints == 0 ? 0.0 : totalCheckpointNanos / 1_000_000.0 / checkpoints; }
+        public long getLastCheckpointWalPages() { return lastCheckpointWalPages; }
+        public long getLastCheckpointedPages() { return lastCheckpointedPages; }
+    }
+}
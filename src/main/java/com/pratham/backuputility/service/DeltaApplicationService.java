@@ -1,17 +1,20 @@
 package com.pratham.backuputility.service;
 
 import com.pratham.backuputility.model.BlockDelta;
+import com.pratham.backuputility.model.BlockDeltaChannel;
 import com.pratham.backuputility.model.FileDelta;
 import com.pratham.backuputility.util.FileSystemUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.FileOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 
 /**
@@ -23,66 +26,213 @@ public class DeltaApplicationService {
 
     private static final Logger logger = LoggerFactory.getLogger(DeltaApplicationService.class);
 
-    @Value("${app.block-size:4096}")
-    private int blockSize;
-
     /**
-     * Apply delta to target file
+     * Apply a streamed delta to the target file, writing each block as it arrives.
+     * Returns the finished delta once the stream is complete. On failure the
+     * stream is cancelled so the reader stops too.
+     *
+     * The new version is written to a temporary file next to the target, which
+     * replaces it only once complete, so a failure part way through leaves the old
+     * target intact. Block changes are written into a copy of the target. A rolling
+     * delta (COPY/LITERAL instructions) is rebuilt from the current target.
      */
-    public void applyDelta(Path targetFile, FileDelta delta) {
+    public FileDelta applyDelta(Path targetFile, BlockDeltaChannel changedBlocks) {
         try {
             // Ensure target directory exists
             FileSystemUtil.ensureDirectoryExists(targetFile.getParent());
 
-            if (!Files.exists(targetFile)) {
-                createNewFile(targetFile, delta);
-            } else {
-                updateExistingFile(targetFile, delta);
+            BlockDelta first = changedBlocks.receive();
+            if (first != null && first.getType() != BlockDelta.Type.BLOCK) {
+                return rebuild(targetFile, first, changedBlocks);
+            }
+
+            // A missing target is created; every block of a new file arrives in order, so it is written sequentially
+            boolean newFile = !Files.exists(targetFile);
+            Path tempFile = tempFileFor(targetFile);
+            long blocksWritten = 0;
+            try {
+                try (RandomAccessFile raf = new RandomAccessFile(tempFile.toFile(), "rw")) {
+                    raf.setLength(0);
+                    if (!newFile) {
+                        try (FileChannel old = FileChannel.open(targetFile, StandardOpenOption.READ)) {
+                            copyRange(old, 0, old.size(), raf.getChannel());
+                        }
+                    }
+                    for (BlockDelta blockDelta = first; blockDelta != null; blockDelta = changedBlocks.receive()) {
+                        // Blocks carry their offset: block sizes differ from file to file
+                        long position = blockDelta.getTargetOffset();
+                        if (raf.getFilePointer() != position) {
+                            raf.seek(position);
+                        }
+                        raf.write(blockDelta.getData());
+                        blocksWritten++;
+                    }
+
+                    // Always truncate file to match source file size (including 0 for empty files)
+                    raf.setLength(changedBlocks.getDelta().getSourceFileSize());
+                }
+                replaceTarget(tempFile, targetFile);
+            } catch (Exception e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
             }
 
+            FileDelta delta = changedBlocks.getDelta();
+
             // Preserve modification time from source file
             if (delta.getSourceLastModified() > 0) {
                 Files.setLastModifiedTime(targetFile, FileTime.fromMillis(delta.getSourceLastModified()));
             }
 
-            logger.debug("Applied delta to {}: {} block changes",
-                targetFile, delta.getChangedBlocks());
+            logger.debug("Applied delta to {} file {}: {} block changes, {} bytes",
+                newFile ? "new" : "existing", targetFile, blocksWritten, delta.getSourceFileSize());
+            return delta;
 
         } catch (Exception e) {
+            changedBlocks.cancel();
+            if (e instanceof RuntimeException && e == changedBlocks.getFailure()) {
+                // Reading the source failed; that error has already been logged
+                throw (RuntimeException) e;
+            }
             logger.error("Failed to apply delta to file: {}", targetFile, e);
             throw new RuntimeException("Failed to apply file delta", e);
         }
     }
 
-    private void createNewFile(Path targetFile, FileDelta delta) throws Exception {
-        if (delta.getBlockDeltas().isEmpty()) {
-            // Empty file - just create it
-            Files.createFile(targetFile);
-            logger.debug("Created empty file: {}", targetFile);
-        } else {
-            // File with content
-            try (FileOutputStream fos = new FileOutputStream(targetFile.toFile())) {
-                for (BlockDelta blockDelta : delta.getBlockDeltas()) {
-                    fos.write(blockDelta.getData());
+    /**
+     * Write the new version of the target from COPY and LITERAL instructions into a
+     * temporary file, then move it over the target
+     */
+    private FileDelta rebuild(Path targetFile, BlockDelta first, BlockDeltaChannel instructions) throws Exception {
+        Path tempFile = tempFileFor(targetFile);
+        long instructionCount = 0;
+        try {
+            try (FileChannel old = FileChannel.open(targetFile, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (BlockDelta instruction = first; instruction != null; instruction = instructions.receive()) {
+                    if (instruction.getTargetOffset() != out.position()) {
+                        throw new IllegalStateException(String.format("Instruction for offset %d arrived at offset %d",
+                            instruction.getTargetOffset(), out.position()));
+                    }
+                    switch (instruction.getType()) {
+                        case COPY -> copyRange(old, instruction.getSourceOffset(), instruction.getLength(), out);
+                        case LITERAL -> {
+                            ByteBuffer data = ByteBuffer.wrap(instruction.getData());
+                            while (data.hasRemaining()) {
+                                out.write(data);
+                            }
+                        }
+                        default -> throw new IllegalStateException("Block change in a rolling delta");
+                    }
+                    instructionCount++;
+                }
+
+                long expectedSize = instructions.getDelta().getSourceFileSize();
+                if (out.position() != expectedSize) {
+                    throw new IllegalStateException(String.format(
+                        "Rebuilt %d bytes, expected %d", out.position(), expectedSize));
                 }
             }
-            logger.debug("Created new file: {} with {} blocks", targetFile, delta.getBlockDeltas().size());
+            replaceTarget(tempFile, targetFile);
+        } catch (Exception e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        FileDelta delta = instructions.getDelta();
+        if (delta.getSourceLastModified() > 0) {
+            Files.setLastModifiedTime(targetFile, FileTime.fromMillis(delta.getSourceLastModified()));
         }
+
+        logger.debug("Rebuilt {} from {} instructions: {} literal bytes, {} copied bytes",
+            targetFile, instructionCount, delta.getLiteralBytes(), delta.getCopiedBytes());
+        return delta;
     }
 
-    private void updateExistingFile(Path targetFile, FileDelta delta) throws Exception {
-        try (RandomAccessFile raf = new RandomAccessFile(targetFile.toFile(), "rw")) {
-            // Apply block changes
-            for (BlockDelta blockDelta : delta.getBlockDeltas()) {
-                long position = blockDelta.getBlockIndex() * blockSize;
-                raf.seek(position);
-                raf.write(blockDelta.getData());
+    /**
+     * Where the new version of a target is written before it replaces the target
+     */
+    private static Path tempFileFor(Path targetFile) {
+        return targetFile.resolveSibling("." + targetFile.getFileName() + ".delta-tmp");
+    }
+
+    private static void replaceTarget(Path tempFile, Path targetFile) throws Exception {
+        Files.move(tempFile, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Append length bytes of the old target at offset to out, kernel-side
+     */
+    private static void copyRange(FileChannel old, long offset, long length, FileChannel out) throws Exception {
+        long copied = 0;
+        while (copied < length) {
+            long transferred = old.transferTo(offset + copied, length - copied, out);
+            if (transferred <= 0) {
+                throw new IllegalStateException(String.format(
+                    "Target is shorter than its snapshot: no data at offset %d", offset + copied));
+            }
+            copied += transferred;
+        }
+    }
+
+    /**
+     * Copy a whole file kernel-side with FileChannel.transferTo, so the data never
+     * passes through the heap. The channel carries no blocks on this path, only the
+     * finished delta with the hashes the reader computed alongside the copy. The copy
+     * goes to a temporary file that replaces the target once the hashes agree with it.
+     */
+    public FileDelta copyFile(Path sourceFile, Path targetFile, BlockDeltaChannel hashed) {
+        try {
+            FileSystemUtil.ensureDirectoryExists(targetFile.getParent());
+
+            Path tempFile = tempFileFor(targetFile);
+            long copied = 0;
+            FileDelta delta;
+            try {
+                try (FileChannel in = FileChannel.open(sourceFile, StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long size = in.size();
+                    while (copied < size) {
+                        long transferred = in.transferTo(copied, size - copied, out);
+                        if (transferred <= 0) {
+                            break; // Source shrank while being copied
+                        }
+                        copied += transferred;
+                    }
+                }
+
+                while (hashed.receive() != null) {
+                    // Nothing is streamed for a whole-file copy
+                }
+                delta = hashed.getDelta();
+                if (copied != delta.getSourceFileSize()) {
+                    throw new IllegalStateException(String.format(
+                        "Source changed while being copied (%d bytes copied, %d hashed)", copied, delta.getSourceFileSize()));
+                }
+                replaceTarget(tempFile, targetFile);
+            } catch (Exception e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
             }
 
-            // Always truncate file to match source file size (including 0 for empty files)
-            raf.setLength(delta.getSourceFileSize());
+            // Preserve modification time from source file
+            if (delta.getSourceLastModified() > 0) {
+                Files.setLastModifiedTime(targetFile, FileTime.fromMillis(delta.getSourceLastModified()));
+            }
+
+            logger.debug("Copied {} to {}: {} bytes", sourceFile, targetFile, copied);
+            return delta;
+
+        } catch (Exception e) {
+            hashed.cancel();
+            if (e instanceof RuntimeException && e == hashed.getFailure()) {
+                // Hashing the source failed; that error has already been logged
+                throw (RuntimeException) e;
+            }
+            logger.error("Failed to copy {} to {}", sourceFile, targetFile, e);
+            throw new RuntimeException("Failed to copy file", e);
         }
-        logger.debug("Updated existing file: {} (truncated to {} bytes)",
-            targetFile, delta.getSourceFileSize());
     }
 }
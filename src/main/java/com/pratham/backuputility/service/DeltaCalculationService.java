@@ -1,18 +1,34 @@
 package com.pratham.backuputility.service;
 
 import com.pratham.backuputility.model.BlockDelta;
+import com.pratham.backuputility.model.BlockDeltaChannel;
+import com.pratham.backuputility.model.BlockHashList;
 import com.pratham.backuputility.model.FileDelta;
 import com.pratham.backuputility.model.FileSnapshot;
+import com.pratham.backuputility.util.BlockHashAlgorithm;
+import com.pratham.backuputility.util.DeltaAlgorithm;
+import com.pratham.backuputility.util.FastCdc;
 import com.pratham.backuputility.util.HashUtil;
+import com.pratham.backuputility.util.RollingChecksum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.EOFException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Service responsible for calculating file deltas for incremental transfers
@@ -23,46 +39,139 @@ public class DeltaCalculationService {
 
     private static final Logger logger = LoggerFactory.getLogger(DeltaCalculationService.class);
 
-    @Value("${app.block-size:4096}")
-    private int blockSize;
+    // Read window of a file hashed whole; rounded down to whole blocks
+    private static final int READ_WINDOW_BYTES = 4 * 1024 * 1024;
+
+    // Smallest read buffer of the rolling delta; it holds at least three blocks
+    private static final int ROLLING_BUFFER_BYTES = 1024 * 1024;
+
+    // Old blocks with the same weak sum tried per offset, so a file of identical blocks stays linear
+    private static final int MAX_CANDIDATES = 64;
+
+    @Autowired
+    private BlockSizeService blockSizeService;
+
+    @Value("${app.hash.block-algorithm:xxhash64}")
+    private String blockHashAlgorithm;
+
+    @Value("${app.delta.algorithm:block}")
+    private String deltaAlgorithm;
+
+    @Value("${app.cdc.min-chunk-size:2048}")
+    private int minChunkSize;
+
+    @Value("${app.cdc.avg-chunk-size:8192}")
+    private int avgChunkSize;
+
+    @Value("${app.cdc.max-chunk-size:65536}")
+    private int maxChunkSize;
 
     /**
-     * Calculate delta between source file and existing snapshot
+     * Calculate delta between source file and existing snapshot, streaming each
+     * changed block to the writer as soon as it is read.
+     *
+     * The source is read once: the same pass hashes every block for the delta,
+     * collects the block hashes of the new snapshot and feeds the whole-file hash,
+     * so the new snapshot is available from {@link FileDelta#getSourceSnapshot()}
+     * without reading the file again. Only the blocks waiting in the channel are
+     * held in memory. The caller ends the stream.
      */
-    public FileDelta calculateDelta(Path sourceFile, FileSnapshot oldSnapshot, String relativePath) {
+    public FileDelta calculateDelta(Path sourceFile, FileSnapshot oldSnapshot, String relativePath,
+                                    BlockDeltaChannel changedBlocks) {
         try {
             FileDelta delta = new FileDelta(relativePath);
-            long sourceFileSize = Files.size(sourceFile);
-            long sourceLastModified = Files.getLastModifiedTime(sourceFile).toMillis();
+            BasicFileAttributes attrs = Files.readAttributes(sourceFile, BasicFileAttributes.class);
+            long sourceLastModified = attrs.lastModifiedTime().toMillis();
+
+            BlockHashAlgorithm algorithm = BlockHashAlgorithm.fromName(blockHashAlgorithm);
+            DeltaAlgorithm mode = DeltaAlgorithm.fromName(deltaAlgorithm);
+            if (mode.isChunked()) {
+                return calculateChunkedDelta(sourceFile, attrs, oldSnapshot, relativePath, changedBlocks);
+            }
+
+            BlockHashList oldBlockHashes = oldSnapshot != null ? oldSnapshot.getBlockHashes() : null;
+            // Old hashes are only comparable with hashes of their own algorithm; after the setting
+            // changes, each file is hashed both ways once and stored with the new algorithm
+            boolean sameAlgorithm = oldBlockHashes != null && oldBlockHashes.getAlgorithm() == algorithm;
+            // Chunks of a snapshot taken in CDC mode do not line up with blocks; such a file is resent once
+            boolean comparable = oldBlockHashes != null && !oldBlockHashes.isChunked();
+            boolean weakSums = mode.needsWeakSums();
+            int newBlockSize = blockSizeService.select(relativePath, attrs.size());
+            int oldBlockSize = comparable ? blockSizeOf(oldSnapshot) : newBlockSize;
+            // Snapshots saved before rolling mode was enabled have no weak sums; they get them this once
+            if (weakSums && comparable && sameAlgorithm && oldBlockHashes.hasWeakSums()
+                    && oldBlockHashes.size() == BlockHashList.expectedBlocks(oldSnapshot.getSize(), oldBlockSize)) {
+                return calculateRollingDelta(sourceFile, attrs, oldSnapshot, oldBlockSize, newBlockSize,
+                    relativePath, changedBlocks);
+            }
+
+            // Blocks are compared in the old snapshot's size; when the new snapshot gets another
+            // size, its blocks are collected separately and hashed as they fill up
+            int oldBlockCount = comparable ? oldBlockHashes.size() : 0;
+            boolean resized = oldBlockSize != newBlockSize;
+            BlockHashList blockHashes = new BlockHashList(algorithm, BlockHashList.expectedBlocks(attrs.size(), newBlockSize), weakSums);
+            byte[] pending = resized ? new byte[newBlockSize] : null;
+            int pendingLength = 0;
+            MessageDigest fileDigest = HashUtil.createSha256Digest();
+            long bytesReadTotal = 0;
+            long changedBlockCount = 0;
+            int blockIndex = 0;
 
             try (InputStream sourceStream = Files.newInputStream(sourceFile)) {
-                byte[] buffer = new byte[blockSize];
+                byte[] buffer = new byte[oldBlockSize];
                 int bytesRead;
-                long blockIndex = 0;
 
-                while ((bytesRead = sourceStream.read(buffer)) != -1) {
-                    String blockHash = HashUtil.calculateSha256Hash(buffer, bytesRead);
+                while ((bytesRead = sourceStream.readNBytes(buffer, 0, oldBlockSize)) > 0) {
+                    fileDigest.update(buffer, 0, bytesRead);
+                    bytesReadTotal += bytesRead;
+                    if (resized) {
+                        for (int used = 0; used < bytesRead; ) {
+                            int length = Math.min(newBlockSize - pendingLength, bytesRead - used);
+                            System.arraycopy(buffer, used, pending, pendingLength, length);
+                            pendingLength += length;
+                            used += length;
+                            if (pendingLength == newBlockSize) {
+                                blockHashes.add(pending, pendingLength);
+                                pendingLength = 0;
+                            }
+                        }
+                    } else {
+                        blockHashes.add(buffer, bytesRead);
+                    }
 
                     // Check if this block needs to be transferred
                     boolean blockChanged = true;
-                    if (oldSnapshot != null && blockIndex < oldSnapshot.getBlockHashes().size()) {
-                        blockChanged = !blockHash.equals(oldSnapshot.getBlockHashes().get((int) blockIndex));
+                    if (blockIndex < oldBlockCount) {
+                        blockChanged = sameAlgorithm && !resized
+                            ? !oldBlockHashes.sameHash(blockIndex, blockHashes, blockIndex)
+                            : !oldBlockHashes.matches(blockIndex, buffer, bytesRead);
                     }
 
                     if (blockChanged) {
                         byte[] blockData = Arrays.copyOf(buffer, bytesRead);
-                        delta.addBlockDelta(new BlockDelta(blockIndex, blockData, blockHash));
+                        changedBlocks.send(BlockDelta.block(blockIndex, oldBlockSize, blockData));
+                        changedBlockCount++;
                     }
-
                     blockIndex++;
                 }
+                if (pendingLength > 0) {
+                    blockHashes.add(pending, pendingLength);
+                }
 
+                // Size of what was actually read, so a file growing mid-read is not truncated wrongly
                 delta.setTotalBlocks(blockIndex);
-                delta.setChangedBlocks(delta.getBlockDeltas().size());
-                delta.setSourceFileSize(sourceFileSize);
+                delta.setBlockSize(oldBlockSize);
+                delta.setChangedBlocks(changedBlockCount);
+                delta.setSourceFileSize(bytesReadTotal);
                 delta.setSourceLastModified(sourceLastModified);
             }
 
+            LocalDateTime lastModified = LocalDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault());
+            FileSnapshot snapshot = new FileSnapshot(relativePath, bytesReadTotal, lastModified,
+                HashUtil.bytesToHex(fileDigest.digest()), blockHashes);
+            snapshot.setBlockSize(newBlockSize);
+            delta.setSourceSnapshot(snapshot);
+
             logger.debug("Calculated delta for {}: {}/{} blocks changed ({}% efficiency)",
                 relativePath, delta.getChangedBlocks(), delta.getTotalBlocks(),
                 String.format("%.1f", delta.getEfficiencyPercentage()));
@@ -74,4 +183,476 @@ public class DeltaCalculationService {
             throw new RuntimeException("Failed to calculate file delta", e);
         }
     }
+
+    /**
+     * rsync-style delta: find the old snapshot's blocks at any offset of the source and
+     * describe the source as COPY instructions for the blocks found and LITERAL ones for
+     * the bytes in between, in source order.
+     *
+     * A window of one block slides over the source a byte at a time. Its weak rolling
+     * checksum is updated in O(1) per byte and looked up among the old blocks' weak sums;
+     * a hit only counts once the block hash confirms it. After a match the window jumps
+     * a whole block and the next old block is tried first, so an unchanged run costs one
+     * lookup per block. The same read hashes the source's own aligned blocks for the new
+     * snapshot, in its own block size, so the file is still read once.
+     */
+    private FileDelta calculateRollingDelta(Path sourceFile, BasicFileAttributes attrs, FileSnapshot oldSnapshot,
+                                            int blockSize, int newBlockSize, String relativePath,
+                                            BlockDeltaChannel changedBlocks) throws Exception {
+        BlockHashList oldBlockHashes = oldSnapshot.getBlockHashes();
+        BlockHashList blockHashes = new BlockHashList(oldBlockHashes.getAlgorithm(),
+            BlockHashList.expectedBlocks(attrs.size(), newBlockSize), true);
+        MessageDigest fileDigest = HashUtil.createSha256Digest();
+        OldBlockIndex oldBlocks = new OldBlockIndex(oldBlockHashes, (int) (oldSnapshot.getSize() / blockSize));
+        int oldTailLength = (int) (oldSnapshot.getSize() % blockSize);
+        InstructionWriter instructions = new InstructionWriter(changedBlocks, blockSize);
+
+        // Room for a pending literal, the current window and at least one block of new input
+        int unit = Math.max(blockSize, newBlockSize);
+        byte[] buffer = new byte[Math.max(3, ROLLING_BUFFER_BYTES / unit) * unit];
+        long bufferStart = 0;   // source offset of buffer[0]
+        long bufferEnd = 0;     // source offset just past the last byte read
+        long hashedUpTo = 0;    // source offset up to which the new snapshot's blocks are hashed
+        long position = 0;      // source offset of the window
+        long literalStart = 0;  // source offset of the first byte not yet sent
+        int expectedBlock = -1; // old block following the last match
+        boolean endOfFile = false;
+        RollingChecksum window = new RollingChecksum(blockSize);
+        boolean windowValid = false;
+
+        try (InputStream sourceStream = Files.newInputStream(sourceFile)) {
+            while (true) {
+                // The window and the byte that rolls into it next must be in the buffer
+                if (position + blockSize >= bufferEnd && !endOfFile) {
+                    long keepFrom = Math.min(Math.min(literalStart, position), hashedUpTo);
+                    int kept = (int) (bufferEnd - keepFrom);
+                    System.arraycopy(buffer, (int) (keepFrom - bufferStart), buffer, 0, kept);
+                    bufferStart = keepFrom;
+                    int read = sourceStream.readNBytes(buffer, kept, buffer.length - kept);
+                    endOfFile = read < buffer.length - kept;
+                    fileDigest.update(buffer, kept, read);
+                    bufferEnd += read;
+                    hashedUpTo = hashBlocks(blockHashes, newBlockSize, buffer, bufferStart, hashedUpTo, bufferEnd, endOfFile);
+                }
+                if (position + blockSize > bufferEnd) {
+                    break;
+                }
+
+                int offset = (int) (position - bufferStart);
+                if (!windowValid) {
+                    window.reset(buffer, offset, blockSize);
+                    windowValid = true;
+                }
+                int match = oldBlocks.find(window.value(), expectedBlock, buffer, offset, blockSize);
+                if (match >= 0) {
+                    instructions.literal(literalStart, buffer, (int) (literalStart - bufferStart), (int) (position - literalStart));
+                    instructions.copy(position, (long) match * blockSize, blockSize);
+                    position += blockSize;
+                    literalStart = position;
+                    expectedBlock = match + 1;
+                    windowValid = false;
+                    continue;
+                }
+
+                if (position + blockSize == bufferEnd) {
+                    break; // Nothing left to roll in
+                }
+                window.roll(buffer[offset], buffer[offset + blockSize]);
+                position++;
+                if (position - literalStart == blockSize) {
+                    instructions.literal(literalStart, buffer, (int) (literalStart - bufferStart), blockSize);
+                    literalStart = position;
+                }
+            }
+
+            // Less than a block left: its end may still be the old file's partial last block
+            long tailStart = bufferEnd;
+            if (oldTailLength > 0 && bufferEnd - literalStart >= oldTailLength) {
+                int offset = (int) (bufferEnd - oldTailLength - bufferStart);
+                int last = oldBlockHashes.size() - 1;
+                if (oldBlockHashes.getWeakSum(last) == RollingChecksum.of(buffer, offset, oldTailLength)
+                        && oldBlockHashes.matches(last, ByteBuffer.wrap(buffer, offset, oldTailLength))) {
+                    tailStart = bufferEnd - oldTailLength;
+                }
+            }
+            instructions.literal(literalStart, buffer, (int) (literalStart - bufferStart), (int) (tailStart - literalStart));
+            if (tailStart < bufferEnd) {
+                instructions.copy(tailStart, (long) (oldBlockHashes.size() - 1) * blockSize, oldTailLength);
+            }
+            instructions.flush();
+        }
+
+        FileDelta delta = new FileDelta(relativePath);
+        delta.setAlgorithm(DeltaAlgorithm.ROLLING);
+        delta.setBlockSize(blockSize);
+        delta.setTotalBlocks(blockHashes.size());
+        delta.setChangedBlocks((instructions.literalBytes + blockSize - 1) / blockSize);
+        delta.setLiteralBytes(instructions.literalBytes);
+        delta.setCopiedBytes(instructions.copiedBytes);
+        delta.setSourceFileSize(bufferEnd);
+        delta.setSourceLastModified(attrs.lastModifiedTime().toMillis());
+
+        LocalDateTime lastModified = LocalDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault());
+        FileSnapshot snapshot = new FileSnapshot(relativePath, bufferEnd, lastModified,
+            HashUtil.bytesToHex(fileDigest.digest()), blockHashes);
+        snapshot.setBlockSize(newBlockSize);
+        delta.setSourceSnapshot(snapshot);
+
+        logger.debug("Calculated rolling delta for {}: {} literal bytes, {} copied bytes in {} instructions",
+            relativePath, instructions.literalBytes, instructions.copiedBytes, instructions.count);
+        return delta;
+    }
+
+    /**
+     * Content-defined delta: cut the source into FastCDC chunks and look each one up among
+     * the old snapshot's chunks by hash. Known chunks become COPY instructions from their
+     * old offset, new ones LITERAL instructions. An edit only changes the chunks it falls
+     * in, since the cut points around it stay where they were. The chunk hashes and their
+     * lengths form the new snapshot, read in the same pass as the delta.
+     */
+    private FileDelta calculateChunkedDelta(Path sourceFile, BasicFileAttributes attrs, FileSnapshot oldSnapshot,
+                                            String relativePath, BlockDeltaChannel changedBlocks) throws Exception {
+        BlockHashAlgorithm algorithm = BlockHashAlgorithm.fromName(blockHashAlgorithm);
+        BlockHashList oldHashes = oldSnapshot != null ? oldSnapshot.getBlockHashes() : null;
+        // Fixed blocks of a snapshot from another mode are never found again; such a file is resent once
+        OldChunkIndex oldChunks = oldHashes != null && oldHashes.isChunked() ? new OldChunkIndex(oldHashes) : null;
+        BlockHashList chunkHashes = new BlockHashList(algorithm,
+            BlockHashList.expectedBlocks(attrs.size(), avgChunkSize), false, true);
+        MessageDigest fileDigest = HashUtil.createSha256Digest();
+        InstructionWriter instructions = new InstructionWriter(changedBlocks, blockSizeService.getDefaultBlockSize());
+        long[] changedChunks = {0};
+        int[] lastMatch = {-1};
+
+        long size;
+        try (InputStream sourceStream = Files.newInputStream(sourceFile)) {
+            size = newChunker().chunk(sourceStream, (data, offset, length) -> {
+                int index = chunkHashes.add(ByteBuffer.wrap(data, offset, length));
+                fileDigest.update(data, offset, length);
+                long targetOffset = instructions.literalBytes + instructions.copiedBytes;
+                int match = oldChunks != null
+                    ? oldChunks.find(chunkHashes, index, lastMatch[0] + 1, data, offset, length) : -1;
+                if (match >= 0) {
+                    instructions.copy(targetOffset, oldChunks.offset(match), length);
+                    lastMatch[0] = match;
+                } else {
+                    instructions.literal(targetOffset, data, offset, length);
+                    changedChunks[0]++;
+                }
+            });
+            instructions.flush();
+        }
+
+        FileDelta delta = new FileDelta(relativePath);
+        delta.setAlgorithm(DeltaAlgorithm.CDC);
+        delta.setTotalBlocks(chunkHashes.size());
+        delta.setChangedBlocks(changedChunks[0]);
+        delta.setLiteralBytes(instructions.literalBytes);
+        delta.setCopiedBytes(instructions.copiedBytes);
+        delta.setSourceFileSize(size);
+        delta.setSourceLastModified(attrs.lastModifiedTime().toMillis());
+
+        LocalDateTime lastModified = LocalDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault());
+        delta.setSourceSnapshot(new FileSnapshot(relativePath, size, lastModified,
+            HashUtil.bytesToHex(fileDigest.digest()), chunkHashes));
+
+        logger.debug("Calculated chunked delta for {}: {}/{} chunks new, {} literal bytes, {} copied bytes",
+            relativePath, changedChunks[0], chunkHashes.size(), instructions.literalBytes, instructions.copiedBytes);
+        return delta;
+    }
+
+    /**
+     * Block size of a fixed-block snapshot; those saved before sizes were recorded used the configured one
+     */
+    private int blockSizeOf(FileSnapshot snapshot) {
+        return snapshot.getBlockSize() > 0 ? snapshot.getBlockSize() : blockSizeService.getDefaultBlockSize();
+    }
+
+    private FastCdc newChunker() {
+        return new FastCdc(minChunkSize, avgChunkSize, maxChunkSize);
+    }
+
+    /**
+     * Hash the source's aligned blocks that are complete in the buffer, plus the partial
+     * last one at end of file; returns the new hashed-up-to offset
+     */
+    private static long hashBlocks(BlockHashList blockHashes, int blockSize, byte[] buffer, long bufferStart,
+                                   long from, long to, boolean endOfFile) {
+        while (to - from >= blockSize || (endOfFile && from < to)) {
+            int length = (int) Math.min(blockSize, to - from);
+            blockHashes.add(ByteBuffer.wrap(buffer, (int) (from - bufferStart), length));
+            from += length;
+        }
+        return from;
+    }
+
+    /**
+     * The old snapshot's full blocks, looked up by weak sum through a chained hash table
+     */
+    private static final class OldBlockIndex {
+        private final BlockHashList hashes;
+        private final int blockCount;
+        private final HashChains chains;
+
+        OldBlockIndex(BlockHashList hashes, int blockCount) {
+            this.hashes = hashes;
+            this.blockCount = blockCount;
+            this.chains = new HashChains(blockCount, hashes::getWeakSum);
+        }
+
+        /**
+         * Index of an old block with this content, or -1; tries expected first
+         */
+        int find(int weakSum, int expected, byte[] data, int offset, int length) {
+            if (expected >= 0 && expected < blockCount && hashes.getWeakSum(expected) == weakSum
+                    && hashes.matches(expected, ByteBuffer.wrap(data, offset, length))) {
+                return expected;
+            }
+            int candidates = 0;
+            for (int i = chains.first(weakSum); i >= 0 && candidates < MAX_CANDIDATES; i = chains.next(i)) {
+                if (hashes.getWeakSum(i) != weakSum || i == expected) {
+                    continue;
+                }
+                candidates++;
+                if (hashes.matches(i, ByteBuffer.wrap(data, offset, length))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The old snapshot's content-defined chunks, looked up by hash, with their offsets
+     */
+    private static final class OldChunkIndex {
+        private final BlockHashList hashes;
+        private final long[] offsets;
+        private final HashChains chains;
+
+        OldChunkIndex(BlockHashList hashes) {
+            this.hashes = hashes;
+            this.offsets = new long[hashes.size()];
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] = offsets[i - 1] + hashes.getLength(i - 1);
+            }
+            this.chains = new HashChains(hashes.size(), i -> key(hashes.hashKey(i)));
+        }
+
+        /**
+         * Index of an old chunk with the content of chunk index of newHashes, or -1; tries expected
+         * first so runs of duplicate chunks are copied in order. Old chunks of another hash
+         * algorithm are compared by hashing the chunk data with theirs.
+         */
+        int find(BlockHashList newHashes, int index, int expected, byte[] data, int offset, int length) {
+            BlockHashList probe = newHashes;
+            int probeIndex = index;
+            if (newHashes.getAlgorithm() != hashes.getAlgorithm()) {
+                probe = new BlockHashList(hashes.getAlgorithm(), 1);
+                probeIndex = probe.add(ByteBuffer.wrap(data, offset, length));
+            }
+            if (isMatch(expected, probe, probeIndex, length)) {
+                return expected;
+            }
+            for (int i = chains.first(key(probe.hashKey(probeIndex))); i >= 0; i = chains.next(i)) {
+                if (isMatch(i, probe, probeIndex, length)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        long offset(int index) {
+            return offsets[index];
+        }
+
+        private boolean isMatch(int i, BlockHashList probe, int probeIndex, int length) {
+            return i >= 0 && i < offsets.length && hashes.getLength(i) == length && hashes.sameHash(i, probe, probeIndex);
+        }
+
+        private static int key(long hashKey) {
+            return (int) (hashKey ^ (hashKey >>> 32));
+        }
+    }
+
+    /**
+     * Chained hash table over the indexes 0..count-1 of a list, by an int key per index
+     */
+    private static final class HashChains {
+        private final int[] heads;
+        private final int[] next;
+        private final int shift;
+        private final IntUnaryOperator keys;
+
+        HashChains(int count, IntUnaryOperator keys) {
+            this.keys = keys;
+            int bits = Math.max(4, 33 - Integer.numberOfLeadingZeros(Math.max(1, count)));
+            this.shift = 32 - bits;
+            this.heads = new int[1 << bits];
+            this.next = new int[count];
+            Arrays.fill(heads, -1);
+            // Inserted backwards so every chain lists indexes in file order
+            for (int i = count - 1; i >= 0; i--) {
+                int slot = slot(keys.applyAsInt(i));
+                next[i] = heads[slot];
+                heads[slot] = i;
+            }
+        }
+
+        /**
+         * First index whose key may equal key, or -1; callers compare the key themselves
+         */
+        int first(int key) {
+            return heads[slot(key)];
+        }
+
+        int next(int index) {
+            return next[index];
+        }
+
+        private int slot(int key) {
+            return (key * 0x9E3779B9) >>> shift;
+        }
+    }
+
+    /**
+     * Sends instructions to the writer, merging consecutive copies of adjacent old bytes
+     */
+    private static final class InstructionWriter {
+        private final BlockDeltaChannel channel;
+        private final int pieceSize;
+        private long copyTarget;
+        private long copySource;
+        private long copyLength;
+        long literalBytes;
+        long copiedBytes;
+        int count;
+
+        InstructionWriter(BlockDeltaChannel channel, int pieceSize) {
+            this.channel = channel;
+            this.pieceSize = pieceSize;
+        }
+
+        void copy(long targetOffset, long sourceOffset, long length) throws InterruptedException {
+            if (copyLength > 0 && copyTarget + copyLength == targetOffset && copySource + copyLength == sourceOffset) {
+                copyLength += length;
+            } else {
+                flush();
+                copyTarget = targetOffset;
+                copySource = sourceOffset;
+                copyLength = length;
+            }
+            copiedBytes += length;
+        }
+
+        /**
+         * New bytes at targetOffset, sent in pieces of at most pieceSize bytes
+         */
+        void literal(long targetOffset, byte[] buffer, int offset, int length) throws InterruptedException {
+            if (length == 0) {
+                return;
+            }
+            flush();
+            for (int sent = 0; sent < length; sent += pieceSize) {
+                int piece = Math.min(pieceSize, length - sent);
+                channel.send(BlockDelta.literal(targetOffset + sent, Arrays.copyOfRange(buffer, offset + sent, offset + sent + piece)));
+                count++;
+            }
+            literalBytes += length;
+        }
+
+        void flush() throws InterruptedException {
+            if (copyLength > 0) {
+                channel.send(BlockDelta.copy(copyTarget, copySource, copyLength));
+                count++;
+                copyLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Hash a file that is being copied whole: every block counts as changed, so
+     * nothing is sent to the writer. Blocks are hashed from a window of whole
+     * blocks read at a time, reusing one buffer for the whole file; in CDC mode
+     * chunks are cut from a stream instead.
+     */
+    public FileDelta hashNewFile(Path sourceFile, String relativePath) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(sourceFile, BasicFileAttributes.class);
+            long size = attrs.size();
+
+            BlockHashAlgorithm algorithm = BlockHashAlgorithm.fromName(blockHashAlgorithm);
+            DeltaAlgorithm mode = DeltaAlgorithm.fromName(deltaAlgorithm);
+            MessageDigest fileDigest = HashUtil.createSha256Digest();
+            BlockHashList blockHashes;
+            int blockSize = 0;
+            if (mode.isChunked()) {
+                // Cut points depend on the bytes before them, so chunks are cut from a stream
+                BlockHashList chunkHashes = new BlockHashList(algorithm,
+                    BlockHashList.expectedBlocks(size, avgChunkSize), false, true);
+                try (InputStream sourceStream = Files.newInputStream(sourceFile)) {
+                    size = newChunker().chunk(sourceStream, (data, offset, length) -> {
+                        chunkHashes.add(ByteBuffer.wrap(data, offset, length));
+                        fileDigest.update(data, offset, length);
+                    });
+                }
+                blockHashes = chunkHashes;
+            } else {
+                try (FileChannel channel = FileChannel.open(sourceFile, StandardOpenOption.READ)) {
+                    size = channel.size();
+                    blockSize = blockSizeService.select(relativePath, size);
+                    blockHashes = new BlockHashList(algorithm, BlockHashList.expectedBlocks(size, blockSize),
+                        mode.needsWeakSums());
+                    hashWindowed(channel, size, blockSize, blockHashes, fileDigest);
+                }
+            }
+
+            FileDelta delta = new FileDelta(relativePath);
+            delta.setBlockSize(blockSize);
+            delta.setTotalBlocks(blockHashes.size());
+            delta.setChangedBlocks(blockHashes.size());
+            delta.setSourceFileSize(size);
+            delta.setSourceLastModified(attrs.lastModifiedTime().toMillis());
+
+            LocalDateTime lastModified = LocalDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault());
+            FileSnapshot snapshot = new FileSnapshot(relativePath, size, lastModified,
+                HashUtil.bytesToHex(fileDigest.digest()), blockHashes);
+            snapshot.setBlockSize(blockSize);
+            delta.setSourceSnapshot(snapshot);
+
+            logger.debug("Hashed new file {}: {} blocks", relativePath, delta.getTotalBlocks());
+            return delta;
+
+        } catch (Exception e) {
+            logger.error("Failed to hash file: {}", sourceFile, e);
+            throw new RuntimeException("Failed to hash file", e);
+        }
+    }
+
+    /**
+     * Hash fixed-size blocks through one reusable read buffer of whole blocks.
+     * Mapped views would stay mapped, and on Windows keep the file locked, until
+     * the garbage collector got to them.
+     */
+    private void hashWindowed(FileChannel channel, long size, int blockSize, BlockHashList blockHashes,
+                              MessageDigest fileDigest) throws Exception {
+        int window = (int) Math.min(Math.max(1, READ_WINDOW_BYTES / blockSize) * (long) blockSize,
+            Math.max(blockSize, size));
+        byte[] buffer = new byte[window];
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        long position = 0;
+        while (position < size) {
+            wrapped.clear().limit((int) Math.min(window, size - position));
+            while (wrapped.hasRemaining()) {
+                if (channel.read(wrapped, position + wrapped.position()) < 0) {
+                    throw new EOFException("File shrank while being hashed at offset " + (position + wrapped.position()));
+                }
+            }
+            int length = wrapped.position();
+            fileDigest.update(buffer, 0, length);
+            for (int offset = 0; offset < length; offset += blockSize) {
+                blockHashes.add(ByteBuffer.wrap(buffer, offset, Math.min(blockSize, length - offset)));
+            }
+            position += length;
+        }
+    }
 }
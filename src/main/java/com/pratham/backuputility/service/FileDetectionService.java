@@ -1,17 +1,28 @@
 package com.pratham.backuputility.service;
 
+import com.pratham.backuputility.model.ScanIndex;
+import com.pratham.backuputility.model.TreeDiff;
+import com.pratham.backuputility.model.TreeDiffEntry;
 import com.pratham.backuputility.util.FileSystemUtil;
+import com.pratham.backuputility.util.FileSystemUtil.DirectoryEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Service responsible for detecting file changes and deletions
@@ -22,82 +33,160 @@ public class FileDetectionService {
 
     private static final Logger logger = LoggerFactory.getLogger(FileDetectionService.class);
 
+    // Entries listed ahead of the consumer before subdirectories stop being listed in advance
+    private static final long MAX_BUFFERED_ENTRIES = 65536;
+
+    @Autowired
+    private ScanIndexService scanIndexService;
+
     /**
-     * Detect all files in a directory (for full transfers)
+     * Diff two trees in a single pass and collect the entries. Unlike the streaming
+     * variant, the whole diff is held in memory until the scan index is committed,
+     * as the in-sync verdicts it records are only known once the caller has checked
+     * the modified candidates.
      */
-    public List<Path> detectAllFiles(Path sourceBase) {
-        try {
-            List<Path> allFiles = FileSystemUtil.getAllFiles(sourceBase);
-            logger.debug("Detected {} files for full transfer from {}", allFiles.size(), sourceBase);
-            return allFiles;
-        } catch (IOException e) {
-            logger.error("Failed to detect all files in: {}", sourceBase, e);
-            return new ArrayList<>();
-        }
+    public TreeDiff diffTrees(Path sourceBase, Path targetBase) {
+        TreeDiff diff = new TreeDiff();
+        MergeTask root = scan(sourceBase, targetBase, scanIndexService.load(sourceBase, targetBase));
+        emit(root, diff::add, null, false);
+        diff.setScanIndexCommit(() -> saveScanIndex(sourceBase, targetBase, root));
+        logger.debug("Tree diff {} -> {}: {} added, {} in both, {} deleted", sourceBase, targetBase,
+            diff.getAdded().size(), diff.getModifiedCandidates().size(), diff.getDeleted().size());
+        return diff;
     }
 
     /**
-     * Detect files that need to be transferred (new or modified)
+     * Diff two trees in a single pass.
+     *
+     * Both trees are listed one directory at a time in sorted name order and
+     * merge-joined, so each tree is read exactly once and no path sets are
+     * built. Subdirectories are listed in parallel on the walker pool of the
+     * source tree's file store, ahead of the consumer by at most
+     * MAX_BUFFERED_ENTRIES entries; entries are delivered to the consumer on the
+     * calling thread, in sorted path order, and a directory is dropped once its
+     * entries have been delivered, so memory does not grow with the trees.
+     * A missing tree is treated as empty. A directory that cannot be listed in
+     * full reports nothing below it as deleted, and is left out of the new index.
+     *
+     * The scan index of the last diff of the same pair lets unchanged
+     * directories skip their listing, and lets files whose stats have not
+     * changed since they were last found identical skip the content
+     * comparison. A directory goes into the new index once the consumer has
+     * seen its entries, and the index is saved at the end.
      */
-    public List<Path> detectChangedFiles(Path sourceBase, Path targetBase) {
-        List<Path> changedFiles = new ArrayList<>();
+    public void diffTrees(Path sourceBase, Path targetBase, Consumer<TreeDiffEntry> consumer) {
+        MergeTask root = scan(sourceBase, targetBase, scanIndexService.load(sourceBase, targetBase));
+        ScanIndex index = scanIndexService.isEnabled() ? new ScanIndex(root.context.scanStartNanos) : null;
+        emit(root, consumer, index, true);
+        if (index != null) {
+            scanIndexService.save(sourceBase, targetBase, index);
+        }
+    }
 
-        try {
-            List<Path> sourceFiles = FileSystemUtil.getAllFiles(sourceBase);
-            logger.info("Checking {} source files for changes from {} to {}", 
-                sourceFiles.size(), sourceBase, targetBase);
+    /**
+     * Diff a subtree of a tree pair the way diffTrees does, without reading or writing
+     * a scan index: subtrees rescanned one at a time would each leave an index of their
+     * own that no later scan reads
+     */
+    public void diffSubtree(Path sourceDir, Path targetDir, Consumer<TreeDiffEntry> consumer) {
+        emit(scan(sourceDir, targetDir, null), consumer, null, true);
+    }
 
-            for (Path sourceFile : sourceFiles) {
-                String relativePath = sourceBase.relativize(sourceFile).toString();
-                Path targetFile = targetBase.resolve(relativePath);
+    private MergeTask scan(Path sourceBase, Path targetBase, ScanIndex previous) {
+        ForkJoinPool pool = FileSystemUtil.getWalkerPool(Files.exists(sourceBase) ? sourceBase : targetBase);
+        ScanContext context = new ScanContext(previous,
+            TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()), scanIndexService.getStatistics(), pool);
+        MergeTask root = new MergeTask(context,
+            FileSystemUtil.statEntry(sourceBase, true), FileSystemUtil.statEntry(targetBase, true), null, "");
+        root.start();
+        return root.join();
+    }
 
-                if (needsTransfer(sourceFile, targetFile)) {
-                    changedFiles.add(sourceFile);
-                    logger.info("File {} needs transfer", relativePath);
-                }
-            }
+    /**
+     * Deliver the entries of a scan, counting it as one walk once they all have been
+     */
+    private static void emit(MergeTask root, Consumer<TreeDiffEntry> consumer, ScanIndex index, boolean release) {
+        root.emit(consumer, index, release);
+        FileSystemUtil.getWalkStatistics().recordWalk(System.nanoTime() - root.context.walkStartNanos);
+    }
 
-            logger.info("Detected {} changed files from {} to {}",
-                changedFiles.size(), sourceBase, targetBase);
+    private void saveScanIndex(Path sourceBase, Path targetBase, MergeTask root) {
+        if (!scanIndexService.isEnabled()) {
+            return;
+        }
+        ScanIndex index = new ScanIndex(root.context.scanStartNanos);
+        root.record(index);
+        scanIndexService.save(sourceBase, targetBase, index);
+    }
 
-        } catch (IOException e) {
-            logger.error("Failed to detect changed files from {} to {}", sourceBase, targetBase, e);
+    /**
+     * Whether the source side of an entry has to be copied to the target
+     */
+    public boolean needsTransfer(TreeDiffEntry entry) {
+        switch (entry.getType()) {
+            case ADDED:
+                logger.info("File {} needs transfer: target doesn't exist", entry.getRelativePath());
+                return true;
+            case DELETED:
+                return false;
+            default:
+                if (entry.isInSync()) {
+                    // Neither side has changed since both were last found identical
+                    scanIndexService.getStatistics().recordComparisonSkipped();
+                    return false;
+                }
+                if (entry.getSourceSize() != entry.getTargetSize()) {
+                    logger.info("File {} needs transfer: sizes differ", entry.getRelativePath());
+                    return true;
+                }
+                boolean different = needsTransfer(entry.getSourceFile(), entry.getTargetFile());
+                entry.setInSync(!different);
+                return different;
         }
+    }
+
+    /**
+     * Detect files that need to be transferred (new or modified)
+     */
+    public List<Path> detectChangedFiles(Path sourceBase, Path targetBase) {
+        List<Path> changedFiles = new ArrayList<>();
+        diffTrees(sourceBase, targetBase, entry -> addIfChanged(entry, changedFiles));
+        logger.info("Detected {} changed files from {} to {}",
+            changedFiles.size(), sourceBase, targetBase);
+        return changedFiles;
+    }
 
+    /**
+     * Detect files that need to be transferred within one subtree of a tree pair,
+     * leaving the pair's scan index alone
+     */
+    public List<Path> detectChangedFilesInSubtree(Path sourceDir, Path targetDir) {
+        List<Path> changedFiles = new ArrayList<>();
+        diffSubtree(sourceDir, targetDir, entry -> addIfChanged(entry, changedFiles));
+        logger.info("Detected {} changed files from {} to {}", changedFiles.size(), sourceDir, targetDir);
         return changedFiles;
     }
 
+    private void addIfChanged(TreeDiffEntry entry, List<Path> changedFiles) {
+        if (needsTransfer(entry)) {
+            changedFiles.add(entry.getSourceFile());
+        }
+    }
+
     /**
      * Detect files that have been deleted from source and should be removed from target
      */
     public List<Path> detectDeletedFiles(Path sourceBase, Path targetBase) {
         List<Path> deletedFiles = new ArrayList<>();
 
-        try {
-            List<Path> sourceFiles = FileSystemUtil.getAllFiles(sourceBase);
-            List<Path> targetFiles = FileSystemUtil.getAllFiles(targetBase);
-
-            // Get relative paths of source files
-            Set<String> sourceRelativePaths = new HashSet<>();
-            for (Path sourceFile : sourceFiles) {
-                sourceRelativePaths.add(sourceBase.relativize(sourceFile).toString());
+        diffTrees(sourceBase, targetBase, entry -> {
+            if (entry.getType() == TreeDiffEntry.Type.DELETED) {
+                deletedFiles.add(entry.getTargetFile());
             }
+        });
 
-            // Find target files that don't exist in source
-            for (Path targetFile : targetFiles) {
-                String targetRelativePath = targetBase.relativize(targetFile).toString();
-                if (!sourceRelativePaths.contains(targetRelativePath)) {
-                    deletedFiles.add(targetFile);
-                }
-            }
-
-            logger.debug("Detected {} deleted files in {} (not present in {})",
-                deletedFiles.size(), targetBase, sourceBase);
-
-        } catch (IOException e) {
-            logger.error("Failed to detect deleted files from {} to {}", sourceBase, targetBase, e);
-        }
-
+        logger.debug("Detected {} deleted files in {} (not present in {})",
+            deletedFiles.size(), targetBase, sourceBase);
         return deletedFiles;
     }
 
@@ -113,13 +202,13 @@ public class FileDetectionService {
 
             // Use fast sample-based comparison
             boolean different = com.pratham.backuputility.util.FileSystemUtil.areFilesDifferent(sourceFile, targetFile);
-            
+
             if (different) {
                 logger.info("File {} needs transfer: files are different", sourceFile.getFileName());
             } else {
                 logger.debug("File {} is identical, no transfer needed", sourceFile.getFileName());
             }
-            
+
             return different;
 
         } catch (Exception e) {
@@ -127,4 +216,293 @@ public class FileDetectionService {
             return true; // Assume transfer needed if we can't compare
         }
     }
+
+    /**
+     * Shared state of one scan
+     */
+    private static class ScanContext {
+        private final ScanIndex previous; // null when there is no usable index
+        private final long scanStartNanos;
+        private final ScanIndexService.IndexStatistics statistics;
+        private final ForkJoinPool pool;
+        private final long walkStartNanos = System.nanoTime();
+        // Entries listed but not yet delivered to the consumer
+        private final AtomicLong buffered = new AtomicLong();
+
+        ScanContext(ScanIndex previous, long scanStartNanos, ScanIndexService.IndexStatistics statistics,
+                    ForkJoinPool pool) {
+            this.previous = previous;
+            this.scanStartNanos = scanStartNanos;
+            this.statistics = statistics;
+            this.pool = pool;
+        }
+
+        ScanIndex.DirectoryRecord previousRecord(ScanIndex.Side side, String relativeDir) {
+            return previous != null ? previous.getDirectory(side, relativeDir) : null;
+        }
+    }
+
+    /**
+     * Fork/join task merge-joining one directory level of both trees; either side may be null (absent).
+     * Its result keeps entries and subdirectory tasks in sorted name order. Subdirectory tasks are
+     * started right away while few entries are buffered, otherwise when the consumer reaches them.
+     */
+    private static class MergeTask extends RecursiveTask<MergeTask> {
+        private final ScanContext context;
+        private final DirectoryEntry sourceDir;
+        private final DirectoryEntry targetDir;
+        private final Path relativeDir;
+        private final String indexKey;
+
+        private List<DirectoryEntry> sourceChildren = Collections.emptyList();
+        private List<DirectoryEntry> targetChildren = Collections.emptyList();
+        private ScanIndex.DirectoryRecord previousSource;
+        private ScanIndex.DirectoryRecord previousTarget;
+        // Whether each side was listed in full; a partial listing proves no entry absent
+        private boolean sourceComplete = true;
+        private boolean targetComplete = true;
+        // TreeDiffEntry or MergeTask, in sorted name order
+        private List<Object> items = new ArrayList<>();
+        // Files present on both sides, by name
+        private Map<String, Candidate> candidates = new HashMap<>();
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        MergeTask(ScanContext context, DirectoryEntry sourceDir, DirectoryEntry targetDir, Path relativeDir, String indexKey) {
+            this.context = context;
+            this.sourceDir = sourceDir;
+            this.targetDir = targetDir;
+            this.relativeDir = relativeDir;
+            this.indexKey = indexKey;
+        }
+
+        @Override
+        protected MergeTask compute() {
+            previousSource = context.previousRecord(ScanIndex.Side.SOURCE, indexKey);
+            previousTarget = context.previousRecord(ScanIndex.Side.TARGET, indexKey);
+            FileSystemUtil.DirectoryListing sourceListing = list(sourceDir, previousSource);
+            FileSystemUtil.DirectoryListing targetListing = list(targetDir, previousTarget);
+            sourceChildren = sourceListing.getEntries();
+            targetChildren = targetListing.getEntries();
+            sourceComplete = sourceListing.isComplete();
+            targetComplete = targetListing.isComplete();
+            if (!sourceComplete || !targetComplete) {
+                logger.warn("Could not list all of {}; entries missing from it are not reported deleted",
+                    !sourceComplete ? sourceDir.getPath() : targetDir.getPath());
+            }
+            List<MergeTask> subtasks = new ArrayList<>();
+
+            int i = 0;
+            int j = 0;
+            while (i < sourceChildren.size() || j < targetChildren.size()) {
+                DirectoryEntry source = i < sourceChildren.size() ? sourceChildren.get(i) : null;
+                DirectoryEntry target = j < targetChildren.size() ? targetChildren.get(j) : null;
+
+                int order = source == null ? 1 : target == null ? -1 : source.getName().compareTo(target.getName());
+                if (order < 0) {
+                    add(source, null, subtasks);
+                    i++;
+                } else if (order > 0) {
+                    // Only in the target: deleted from the source, unless the source could not be read in full
+                    if (sourceComplete) {
+                        add(null, target, subtasks);
+                    }
+                    j++;
+                } else if (source.isDirectory() == target.isDirectory()) {
+                    add(source, target, subtasks);
+                    i++;
+                    j++;
+                } else {
+                    // A file on one side and a directory on the other share nothing
+                    add(source, null, subtasks);
+                    add(null, target, subtasks);
+                    i++;
+                    j++;
+                }
+            }
+
+            context.buffered.addAndGet(items.size());
+            if (context.buffered.get() < MAX_BUFFERED_ENTRIES) {
+                for (MergeTask subtask : subtasks) {
+                    subtask.start();
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Submit this task to the walker pool, unless it already was
+         */
+        void start() {
+            if (started.compareAndSet(false, true)) {
+                context.pool.execute(this);
+            }
+        }
+
+        /**
+         * List a directory, reusing the previous listing if the directory itself is unchanged.
+         * Every child is still statted: in-place edits do not change the directory.
+         */
+        private FileSystemUtil.DirectoryListing list(DirectoryEntry directory, ScanIndex.DirectoryRecord previous) {
+            if (directory == null || !directory.isDirectory()) {
+                return new FileSystemUtil.DirectoryListing(Collections.emptyList(), true);
+            }
+
+            if (previous != null
+                    && previous.hasIdentity(directory.getLastModifiedNanos(), directory.getInode(), directory.getChangeTimeNanos())
+                    && context.previous.isSettled(previous.getMtime())
+                    && context.previous.isSettled(previous.getCtime())) {
+                List<DirectoryEntry> children = new ArrayList<>(previous.getChildCount());
+                for (int i = 0; i < previous.getChildCount(); i++) {
+                    DirectoryEntry child = FileSystemUtil.statEntry(directory.getPath().resolve(previous.getName(i)));
+                    if (child == null) {
+                        // Vanished without the directory changing; trust the file system instead
+                        children = null;
+                        break;
+                    }
+                    children.add(child);
+                }
+                if (children != null) {
+                    context.statistics.recordListingReused();
+                    return new FileSystemUtil.DirectoryListing(children, true);
+                }
+            }
+
+            context.statistics.recordListingRead();
+            return FileSystemUtil.listDirectory(directory.getPath());
+        }
+
+        /**
+         * Add a matched pair of children, or an unmatched child from either side
+         */
+        private void add(DirectoryEntry source, DirectoryEntry target, List<MergeTask> subtasks) {
+            DirectoryEntry present = source != null ? source : target;
+            Path relativePath = relativeDir == null ? present.getPath().getFileName() : relativeDir.resolve(present.getPath().getFileName());
+
+            if (present.isDirectory()) {
+                String childKey = indexKey.isEmpty() ? present.getName() : indexKey + "/" + present.getName();
+                MergeTask subtask = new MergeTask(context, source, target, relativePath, childKey);
+                subtasks.add(subtask);
+                items.add(subtask);
+                return;
+            }
+
+            TreeDiffEntry.Type type = source == null ? TreeDiffEntry.Type.DELETED
+                : target == null ? TreeDiffEntry.Type.ADDED
+                : TreeDiffEntry.Type.MODIFIED_CANDIDATE;
+
+            TreeDiffEntry entry = new TreeDiffEntry(type, relativePath.toString(),
+                source != null ? source.getPath() : null, target != null ? target.getPath() : null,
+                source != null ? source.getSize() : 0,
+                source != null ? source.getLastModifiedMillis() : 0,
+                target != null ? target.getSize() : 0,
+                target != null ? target.getLastModifiedMillis() : 0);
+
+            if (type == TreeDiffEntry.Type.MODIFIED_CANDIDATE) {
+                entry.setInSync(unchangedSinceInSync(previousSource, source) && unchangedSinceInSync(previousTarget, target));
+                candidates.put(present.getName(), new Candidate(entry, source, target));
+            }
+            items.add(entry);
+        }
+
+        /**
+         * Whether a file was in sync at the last scan and its stat has not changed since
+         */
+        private static boolean unchangedSinceInSync(ScanIndex.DirectoryRecord previous, DirectoryEntry file) {
+            if (previous == null) {
+                return false;
+            }
+            int i = previous.indexOf(file.getName());
+            return i >= 0 && previous.isInSync(i) && previous.childHasIdentity(i,
+                file.getSize(), file.getLastModifiedNanos(), file.getInode(), file.getChangeTimeNanos());
+        }
+
+        /**
+         * Deliver this directory's entries, and those of its subdirectories, in order,
+         * waiting for each subdirectory to be listed. With an index, each directory is
+         * recorded in it once its entries have been delivered; with release, it is then
+         * dropped, so only directories still being delivered stay in memory.
+         */
+        void emit(Consumer<TreeDiffEntry> consumer, ScanIndex index, boolean release) {
+            for (Object item : items) {
+                if (item instanceof TreeDiffEntry entry) {
+                    consumer.accept(entry);
+                } else {
+                    MergeTask subtask = (MergeTask) item;
+                    subtask.start();
+                    subtask.join().emit(consumer, index, release);
+                }
+                context.buffered.decrementAndGet();
+            }
+            if (index != null) {
+                recordDirectory(index);
+            }
+            if (release) {
+                items = Collections.emptyList();
+                candidates = Collections.emptyMap();
+                sourceChildren = Collections.emptyList();
+                targetChildren = Collections.emptyList();
+            }
+        }
+
+        /**
+         * Write this directory, and its subdirectories, into a new scan index
+         */
+        void record(ScanIndex index) {
+            recordDirectory(index);
+            for (Object item : items) {
+                if (item instanceof MergeTask subtask) {
+                    subtask.record(index);
+                }
+            }
+        }
+
+        /**
+         * Record each side listed in full; a side left out is listed afresh by the next scan
+         */
+        private void recordDirectory(ScanIndex index) {
+            if (sourceDir != null && sourceDir.isDirectory() && sourceComplete) {
+                index.putDirectory(ScanIndex.Side.SOURCE, indexKey, toRecord(index, sourceDir, sourceChildren));
+            }
+            if (targetDir != null && targetDir.isDirectory() && targetComplete) {
+                index.putDirectory(ScanIndex.Side.TARGET, indexKey, toRecord(index, targetDir, targetChildren));
+            }
+        }
+
+        private ScanIndex.DirectoryRecord toRecord(ScanIndex index, DirectoryEntry directory, List<DirectoryEntry> children) {
+            ScanIndex.DirectoryRecord record = new ScanIndex.DirectoryRecord(
+                directory.getLastModifiedNanos(), directory.getInode(), directory.getChangeTimeNanos(), children.size());
+            for (int i = 0; i < children.size(); i++) {
+                DirectoryEntry child = children.get(i);
+                Candidate candidate = child.isDirectory() ? null : candidates.get(child.getName());
+                boolean inSync = candidate != null && candidate.entry.isInSync()
+                    && candidate.isSettled(index);
+                record.setChild(i, child.getName(), child.isDirectory(), inSync, child.getSize(),
+                    child.getLastModifiedNanos(), child.getInode(), child.getChangeTimeNanos());
+            }
+            return record;
+        }
+    }
+
+    /**
+     * A file present in both trees, with the stats both sides had during the scan
+     */
+    private static class Candidate {
+        private final TreeDiffEntry entry;
+        private final DirectoryEntry source;
+        private final DirectoryEntry target;
+
+        Candidate(TreeDiffEntry entry, DirectoryEntry source, DirectoryEntry target) {
+            this.entry = entry;
+            this.source = source;
+            this.target = target;
+        }
+
+        /**
+         * Whether both stats are old enough that a later change would be visible in them
+         */
+        boolean isSettled(ScanIndex index) {
+            return index.isSettled(source.getLastModifiedNanos()) && index.isSettled(source.getChangeTimeNanos())
+                && index.isSettled(target.getLastModifiedNanos()) && index.isSettled(target.getChangeTimeNanos());
+        }
+    }
 }
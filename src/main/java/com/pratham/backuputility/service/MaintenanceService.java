@@ -3,6 +3,7 @@ package com.pratham.backuputility.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -27,6 +28,14 @@ public class MaintenanceService {
     @Autowired
     private TransferService transferService;
 
+    @Autowired
+    private TransferJobService transferJobService;
+
+    @Value("${app.maintenance.block-hash-migration-batch-size:200}")
+    private int blockHashMigrationBatchSize;
+
+    private volatile boolean legacyBlockHashesMigrated;
+
     /**
      * Clean up old snapshots daily at 2 AM
      */
@@ -41,6 +50,36 @@ public class MaintenanceService {
         }
     }
 
+    /**
+     * Pack block hashes still stored one row per block, shortly after startup.
+     * Works in batches and yields to transfers; retried every minute until nothing is left.
+     */
+    @Scheduled(initialDelay = 10000, fixedDelay = 60000)
+    public void migrateLegacyBlockHashes() {
+        if (legacyBlockHashesMigrated) {
+            return;
+        }
+        try {
+            int migrated = 0;
+            int batch;
+            do {
+                if (transferService.isTransferInProgress()) {
+                    logger.debug("Deferring block hash migration - transfer in progress");
+                    return;
+                }
+                batch = snapshotService.migrateLegacyBlockHashes(Math.max(1, blockHashMigrationBatchSize));
+                migrated += batch;
+            } while (batch > 0);
+
+            legacyBlockHashesMigrated = true;
+            if (migrated > 0) {
+                logger.info("Migrated block hashes of {} snapshots to packed storage", migrated);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to migrate legacy block hashes", e);
+        }
+    }
+
     /**
      * Clean up old transfer logs daily at 3 AM
      */
@@ -55,6 +94,20 @@ public class MaintenanceService {
         }
     }
 
+    /**
+     * Clean up finished transfer jobs daily at 3:30 AM
+     */
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void cleanupOldTransferJobs() {
+        logger.info("Starting scheduled cleanup of old transfer jobs");
+        try {
+            transferJobService.cleanupOldJobs();
+            logger.info("Completed scheduled cleanup of old transfer jobs");
+        } catch (Exception e) {
+            logger.error("Failed to cleanup old transfer jobs", e);
+        }
+    }
+
     /**
      * Log statistics every hour
      */
@@ -36,17 +36,21 @@ public class ProgressTrackingService {
         sendProgressUpdate();
     }
 
+    /**
+     * Record one processed file. Safe to call concurrently from transfer workers;
+     * each update reports the counters as they were after its own increment.
+     */
     public void updateFileProgress(String fileName, String status, long fileSize) {
         this.currentFile = fileName;
-        this.processedFiles.incrementAndGet();
-        this.processedBytes.addAndGet(fileSize);
+        int processed = this.processedFiles.incrementAndGet();
+        long bytes = this.processedBytes.addAndGet(fileSize);
 
         ProgressUpdate update = new ProgressUpdate();
         update.setCurrentFile(fileName);
         update.setStatus(status);
-        update.setProcessedFiles(processedFiles.get());
+        update.setProcessedFiles(processed);
         update.setTotalFiles(totalFiles.get());
-        update.setProcessedBytes(processedBytes.get());
+        update.setProcessedBytes(bytes);
         update.setTotalBytes(totalBytes.get());
         update.setOperation(currentOperation);
         update.setActive(isActive);
@@ -59,6 +63,10 @@ public class ProgressTrackingService {
         messagingTemplate.convertAndSend("/topic/progress", update);
     }
 
+    public int getTotalFiles() {
+        return totalFiles.get();
+    }
+
     public void finishProgress(String finalMessage) {
         this.endTime = LocalDateTime.now();
         this.isActive = false;
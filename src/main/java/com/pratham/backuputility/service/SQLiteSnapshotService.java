@@ -1,29 +1,44 @@
 package com.pratham.backuputility.service;
 
-import com.pratham.backuputility.entity.BlockHashEntity;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.pratham.backuputility.config.CacheConfig;
 import com.pratham.backuputility.entity.FileSnapshotEntity;
+import com.pratham.backuputility.entity.PackedBlockHashesEntity;
+import com.pratham.backuputility.model.BlockHashList;
 import com.pratham.backuputility.model.FileSnapshot;
+import com.pratham.backuputility.model.LatestSnapshots;
+import com.pratham.backuputility.model.MerkleTree;
 import com.pratham.backuputility.repository.BlockHashRepository;
 import com.pratham.backuputility.repository.FileSnapshotRepository;
+import com.pratham.backuputility.repository.PackedBlockHashesRepository;
+import com.pratham.backuputility.util.BlockHashAlgorithm;
+import com.pratham.backuputility.util.DeltaAlgorithm;
+import com.pratham.backuputility.util.FastCdc;
 import com.pratham.backuputility.util.HashUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Enhanced service for managing file snapshots with SQLite persistence
@@ -34,8 +49,20 @@ public class SQLiteSnapshotService {
 
     private static final Logger logger = LoggerFactory.getLogger(SQLiteSnapshotService.class);
 
-    @Value("${app.block-size:4096}")
-    private int blockSize;
+    @Value("${app.hash.block-algorithm:xxhash64}")
+    private String blockHashAlgorithm;
+
+    @Value("${app.delta.algorithm:block}")
+    private String deltaAlgorithm;
+
+    @Value("${app.cdc.min-chunk-size:2048}")
+    private int minChunkSize;
+
+    @Value("${app.cdc.avg-chunk-size:8192}")
+    private int avgChunkSize;
+
+    @Value("${app.cdc.max-chunk-size:65536}")
+    private int maxChunkSize;
 
     @Value("${app.max-snapshot-age-days:30}")
     private int maxSnapshotAgeDays;
@@ -46,64 +73,187 @@ public class SQLiteSnapshotService {
     @Autowired
     private BlockHashRepository blockHashRepository;
 
+    @Autowired
+    private PackedBlockHashesRepository packedBlockHashesRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private DatabaseWriterService databaseWriter;
+
+    @Autowired
+    private BlockSizeService blockSizeService;
+
     /**
-     * Create and persist a snapshot of a file with block-level hashes
+     * Create and persist a snapshot of a file with block-level hashes.
+     * The file is hashed outside of any transaction so the database
+     * connection is only held while the rows are written.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public FileSnapshotEntity createAndSaveSnapshot(Path filePath, String relativePath) {
+        return saveSnapshot(computeSnapshot(filePath, relativePath));
+    }
+
+    /**
+     * Hash a file block by block (or chunk by chunk in CDC mode) without touching the database
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public FileSnapshot computeSnapshot(Path filePath, String relativePath) {
         try {
             BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
             long fileSize = attrs.size();
             LocalDateTime lastModified = LocalDateTime.ofInstant(
                 attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault());
 
-            List<String> blockHashes = new ArrayList<>();
+            BlockHashAlgorithm algorithm = BlockHashAlgorithm.fromName(blockHashAlgorithm);
+            DeltaAlgorithm delta = DeltaAlgorithm.fromName(deltaAlgorithm);
             MessageDigest fileDigest = HashUtil.createSha256Digest();
 
-            try (InputStream fis = Files.newInputStream(filePath)) {
-                byte[] buffer = new byte[blockSize];
-                int bytesRead;
-
-                while ((bytesRead = fis.read(buffer)) != -1) {
-                    // Hash individual block
-                    String blockHash = HashUtil.calculateSha256Hash(buffer, bytesRead);
-                    blockHashes.add(blockHash);
-
-                    // Update file hash
-                    fileDigest.update(buffer, 0, bytesRead);
-                }
-            }
+            int blockSize = delta.isChunked() ? 0 : blockSizeService.select(relativePath, fileSize);
+            BlockHashList blockHashes = hashFile(filePath, fileSize, algorithm, blockSize, delta.needsWeakSums(), fileDigest);
 
             String fileHash = HashUtil.bytesToHex(fileDigest.digest());
+            FileSnapshot snapshot = new FileSnapshot(relativePath, fileSize, lastModified, fileHash, blockHashes);
+            snapshot.setBlockSize(blockSize);
+            return snapshot;
 
-            // Create and save the snapshot entity
-            FileSnapshotEntity snapshotEntity = new FileSnapshotEntity(relativePath, fileSize, lastModified, fileHash);
-            snapshotEntity = fileSnapshotRepository.save(snapshotEntity);
+        } catch (Exception e) {
+            logger.error("Failed to create snapshot for file: {}", filePath, e);
+            throw new RuntimeException("Failed to create snapshot", e);
+        }
+    }
 
-            // Save block hashes
-            for (int i = 0; i < blockHashes.size(); i++) {
-                BlockHashEntity blockHashEntity = new BlockHashEntity(snapshotEntity, i, blockHashes.get(i));
-                blockHashRepository.save(blockHashEntity);
+    /**
+     * Hash a file in blocks of blockSize bytes, or in content-defined chunks when blockSize is 0,
+     * feeding every byte to fileDigest as well
+     */
+    private BlockHashList hashFile(Path filePath, long fileSize, BlockHashAlgorithm algorithm, int blockSize,
+                                   boolean weakSums, MessageDigest fileDigest) throws Exception {
+        if (blockSize == 0) {
+            // Same chunker settings as DeltaCalculationService, so chunk boundaries match
+            BlockHashList chunkHashes = new BlockHashList(algorithm,
+                BlockHashList.expectedBlocks(fileSize, avgChunkSize), false, true);
+            try (InputStream fis = Files.newInputStream(filePath)) {
+                new FastCdc(minChunkSize, avgChunkSize, maxChunkSize).chunk(fis, (data, offset, length) -> {
+                    chunkHashes.add(ByteBuffer.wrap(data, offset, length));
+                    fileDigest.update(data, offset, length);
+                });
             }
+            return chunkHashes;
+        }
 
-            logger.debug("Created and saved snapshot for {}: {} blocks, {} bytes", relativePath, blockHashes.size(), fileSize);
-            return snapshotEntity;
+        BlockHashList blockHashes = new BlockHashList(algorithm, BlockHashList.expectedBlocks(fileSize, blockSize), weakSums);
+        try (InputStream fis = Files.newInputStream(filePath)) {
+            byte[] buffer = new byte[blockSize];
+            int bytesRead;
 
-        } catch (Exception e) {
-            logger.error("Failed to create snapshot for file: {}", filePath, e);
-            throw new RuntimeException("Failed to create snapshot", e);
+            // Full blocks, so block boundaries match the ones DeltaCalculationService hashes
+            while ((bytesRead = fis.readNBytes(buffer, 0, blockSize)) > 0) {
+                // Hash individual block
+                blockHashes.add(buffer, bytesRead);
+
+                // Update file hash
+                fileDigest.update(buffer, 0, bytesRead);
+            }
         }
+        return blockHashes;
+    }
+
+    /**
+     * Persist a computed snapshot together with its block hashes in one transaction.
+     * The hashes go in as a single packed row, so a file costs two inserts however many blocks it has.
+     * Written by the database writer, so it commits together with other queued writes;
+     * called on the writer thread it joins the batch in progress.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public FileSnapshotEntity saveSnapshot(FileSnapshot snapshot) {
+        BlockHashList blockHashes = snapshot.getBlockHashes();
+        int hashLength = blockHashes.getAlgorithm().getHashLength();
+        byte[] packed = blockHashes.toPacked();
+        byte[] packedWeakSums = blockHashes.toPackedWeakSums();
+        byte[] packedLengths = blockHashes.toPackedLengths();
+        MerkleTree tree = MerkleTree.build(blockHashes);
+
+        FileSnapshotEntity snapshotEntity = databaseWriter.execute(() -> transactionTemplate.execute(status -> {
+            FileSnapshotEntity entity = new FileSnapshotEntity(
+                snapshot.getFilePath(), snapshot.getSize(), snapshot.getLastModified(), snapshot.getFileHash());
+            entity.setBlockHashAlgorithm(snapshot.getBlockHashAlgorithm().name());
+            entity.setBlockSize(snapshot.getBlockSize() > 0 ? snapshot.getBlockSize() : null);
+            entity.setMerkleRoot(tree.getRootHex());
+            FileSnapshotEntity saved = fileSnapshotRepository.save(entity);
+
+            PackedBlockHashesEntity hashes = new PackedBlockHashesEntity(
+                saved.getId(), hashLength, blockHashes.size(), packed, packedWeakSums, packedLengths);
+            hashes.setMerkleNodes(tree.toPackedNodes());
+            packedBlockHashesRepository.save(hashes);
+            return saved;
+        }));
+
+        // Write-through: the new snapshot is now the latest for its path
+        latestSnapshotCache().put(snapshotEntity.getFilePath(), toEntry(snapshotEntity));
+
+        snapshot.setSnapshotTime(snapshotEntity.getSnapshotTime());
+        logger.debug("Created and saved snapshot for {}: {} blocks, {} bytes",
+            snapshot.getFilePath(), blockHashes.size(), snapshot.getSize());
+        return snapshotEntity;
     }
 
     /**
      * Get the most recent snapshot for a file
      */
+    @Transactional(readOnly = true)
     public Optional<FileSnapshotEntity> getLatestSnapshot(String filePath) {
         return fileSnapshotRepository.findTopByFilePathOrderBySnapshotTimeDesc(filePath);
     }
 
+    /**
+     * Load the latest snapshot of every file, without block hashes, in one streaming query
+     */
+    @Transactional(readOnly = true)
+    public LatestSnapshots loadLatestSnapshots() {
+        long start = System.nanoTime();
+        LatestSnapshots latest = new LatestSnapshots();
+        try (Stream<Object[]> rows = fileSnapshotRepository.streamLatestSnapshots()) {
+            // Ascending ids, so if two snapshots of a path share a timestamp the newer one wins
+            rows.forEach(row -> latest.put((Long) row[0], (String) row[1], (Long) row[2],
+                (LocalDateTime) row[3], (String) row[4], BlockHashAlgorithm.fromName((String) row[5]),
+                row[6] != null ? (Integer) row[6] : 0));
+        }
+        logger.debug("Loaded latest snapshots of {} files in {} ms",
+            latest.size(), (System.nanoTime() - start) / 1_000_000);
+        return latest;
+    }
+
+    /**
+     * Metadata of the latest snapshot for a file, or null if it has none. Cached by path;
+     * saveSnapshot and cleanupOldSnapshots keep the cache current. A miss loads under the
+     * cache's lock for the path, so a put or evict racing the load waits and lands after it
+     * instead of being overwritten with what the load read before the write.
+     */
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfig.LATEST_SNAPSHOTS, key = "#filePath", sync = true)
+    public LatestSnapshots.Entry getLatestSnapshotEntry(String filePath) {
+        return getLatestSnapshot(filePath).map(SQLiteSnapshotService::toEntry).orElse(null);
+    }
+
+    private static LatestSnapshots.Entry toEntry(FileSnapshotEntity entity) {
+        return new LatestSnapshots.Entry(entity.getId(), entity.getFilePath(), entity.getSize(),
+            entity.getLastModified(), entity.getFileHash(), BlockHashAlgorithm.fromName(entity.getBlockHashAlgorithm()),
+            entity.getBlockSize() != null ? entity.getBlockSize() : 0);
+    }
+
+    private Cache latestSnapshotCache() {
+        return cacheManager.getCache(CacheConfig.LATEST_SNAPSHOTS);
+    }
+
     /**
      * Get all snapshots for a file
      */
+    @Transactional(readOnly = true)
     public List<FileSnapshotEntity> getSnapshotsForFile(String filePath) {
         return fileSnapshotRepository.findByFilePathOrderBySnapshotTimeDesc(filePath);
     }
@@ -111,18 +261,129 @@ public class SQLiteSnapshotService {
     /**
      * Get block hashes for a snapshot
      */
-    public List<String> getBlockHashes(FileSnapshotEntity snapshot) {
-        return blockHashRepository.findByFileSnapshotIdOrderByBlockIndex(snapshot.getId())
-                .stream()
-                .map(BlockHashEntity::getHash)
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public BlockHashList getBlockHashes(FileSnapshotEntity snapshot) {
+        return getBlockHashes(snapshot.getId(), BlockHashAlgorithm.fromName(snapshot.getBlockHashAlgorithm()));
+    }
+
+    /**
+     * Get block hashes for a snapshot by id, without loading the snapshot row
+     */
+    @Transactional(readOnly = true)
+    public BlockHashList getBlockHashes(long snapshotId, BlockHashAlgorithm algorithm) {
+        List<Object[]> packed = packedBlockHashesRepository.findDataByFileSnapshotId(snapshotId);
+        if (packed.isEmpty()) {
+            // Not migrated yet: still stored one row per block
+            List<String> legacyHashes = blockHashRepository.findHashesByFileSnapshotId(snapshotId);
+            return BlockHashList.fromPacked(algorithm, packBlockHashes(legacyHashes, algorithm.getHashLength()));
+        }
+        Object[] row = packed.get(0);
+        return BlockHashList.fromPacked(algorithm, (byte[]) row[0], (byte[]) row[1], (byte[]) row[2]);
+    }
+
+    /**
+     * Merkle tree of a snapshot by id, or empty if there is no such snapshot
+     */
+    @Transactional(readOnly = true)
+    public Optional<MerkleTree> getMerkleTree(long snapshotId) {
+        return fileSnapshotRepository.findById(snapshotId)
+            .map(entity -> getMerkleTree(snapshotId, getBlockHashes(entity)));
+    }
+
+    /**
+     * Merkle tree of a snapshot over its already loaded block hashes; snapshots saved
+     * before trees were kept get theirs built from the hashes
+     */
+    @Transactional(readOnly = true)
+    public MerkleTree getMerkleTree(long snapshotId, BlockHashList blockHashes) {
+        List<byte[]> nodes = packedBlockHashesRepository.findMerkleNodesByFileSnapshotId(snapshotId);
+        return MerkleTree.fromPacked(blockHashes, nodes.isEmpty() ? null : nodes.get(0));
+    }
+
+    /**
+     * Compare two snapshots through their Merkle trees. Snapshots only compare block by
+     * block when they share the block hash algorithm and block size (or are both chunked).
+     */
+    @Transactional(readOnly = true)
+    public SnapshotDiff diffSnapshots(long fromSnapshotId, long toSnapshotId) {
+        FileSnapshot from = convertToModel(findSnapshot(fromSnapshotId));
+        FileSnapshot to = convertToModel(findSnapshot(toSnapshotId));
+        if (from.getBlockHashAlgorithm() != to.getBlockHashAlgorithm() || from.getBlockSize() != to.getBlockSize()
+                || from.getBlockHashes().isChunked() != to.getBlockHashes().isChunked()) {
+            return new SnapshotDiff(to.getFilePath(), to.getBlockSize(), null);
+        }
+        MerkleTree fromTree = getMerkleTree(fromSnapshotId, from.getBlockHashes());
+        MerkleTree toTree = getMerkleTree(toSnapshotId, to.getBlockHashes());
+        return new SnapshotDiff(to.getFilePath(), to.getBlockSize(), fromTree.diff(toTree));
+    }
+
+    private FileSnapshotEntity findSnapshot(long snapshotId) {
+        return fileSnapshotRepository.findById(snapshotId)
+            .orElseThrow(() -> new IllegalArgumentException("No snapshot with id " + snapshotId));
+    }
+
+    /**
+     * Merkle tree of a file on disk, cut the way a snapshot was: in blocks of blockSize,
+     * or in content-defined chunks when blockSize is 0. Hashes without a transaction.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public MerkleTree computeMerkleTree(Path filePath, BlockHashAlgorithm algorithm, int blockSize) {
+        try {
+            return MerkleTree.build(hashFile(filePath, Files.size(filePath), algorithm, blockSize, false,
+                HashUtil.createSha256Digest()));
+        } catch (Exception e) {
+            logger.error("Failed to hash file: {}", filePath, e);
+            throw new RuntimeException("Failed to hash file", e);
+        }
+    }
+
+    /**
+     * Move block hashes of up to batchSize snapshots from the legacy one-row-per-block table
+     * into packed rows. Each snapshot is converted in its own short transaction so transfers
+     * can interleave. Returns the number of snapshots migrated; 0 once nothing is left.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int migrateLegacyBlockHashes(int batchSize) {
+        // Every database access goes through the template: outside a transaction the
+        // EntityManager would keep the pool's only connection until this method returns
+        List<Long> snapshotIds = transactionTemplate.execute(status ->
+            blockHashRepository.findLegacySnapshotIds(PageRequest.of(0, batchSize)));
+        for (Long snapshotId : snapshotIds) {
+            databaseWriter.execute(() -> transactionTemplate.execute(status -> {
+                List<String> blockHashes = blockHashRepository.findHashesByFileSnapshotId(snapshotId);
+                // Legacy rows are hex, so the stored width is authoritative whatever the snapshot says
+                int hashLength = blockHashes.isEmpty() ? HashUtil.SHA256_LENGTH : blockHashes.get(0).length() / 2;
+                if (!packedBlockHashesRepository.existsById(snapshotId)) {
+                    packedBlockHashesRepository.save(new PackedBlockHashesEntity(
+                        snapshotId, hashLength, blockHashes.size(), packBlockHashes(blockHashes, hashLength)));
+                }
+                return blockHashRepository.deleteAllByFileSnapshotId(snapshotId);
+            }));
+        }
+        return snapshotIds.size();
+    }
+
+    /**
+     * Concatenate hex block hashes into one array of hashLength bytes per block
+     */
+    private static byte[] packBlockHashes(List<String> blockHashes, int hashLength) {
+        byte[] packed = new byte[blockHashes.size() * hashLength];
+        for (int i = 0; i < blockHashes.size(); i++) {
+            String hash = blockHashes.get(i);
+            if (hash.length() != hashLength * 2) {
+                throw new IllegalArgumentException("Block hash " + i + " is not " + hashLength + " bytes: " + hash);
+            }
+            HashUtil.hexToBytes(hash, packed, i * hashLength);
+        }
+        return packed;
     }
 
     /**
      * Convert FileSnapshotEntity to FileSnapshot model
      */
+    @Transactional(readOnly = true)
     public FileSnapshot convertToModel(FileSnapshotEntity entity) {
-        List<String> blockHashes = getBlockHashes(entity);
+        BlockHashList blockHashes = getBlockHashes(entity);
         FileSnapshot snapshot = new FileSnapshot(
                 entity.getFilePath(),
                 entity.getSize(),
@@ -130,28 +391,57 @@ public class SQLiteSnapshotService {
                 entity.getFileHash(),
                 blockHashes
         );
+        snapshot.setBlockSize(resolveBlockSize(blockHashes, entity.getBlockSize() != null ? entity.getBlockSize() : 0));
         snapshot.setSnapshotTime(entity.getSnapshotTime());
         return snapshot;
     }
 
+    /**
+     * Convert a latest-snapshot entry to a FileSnapshot model, fetching its block hashes
+     */
+    @Transactional(readOnly = true)
+    public FileSnapshot loadSnapshot(LatestSnapshots.Entry entry) {
+        BlockHashList blockHashes = getBlockHashes(entry.getSnapshotId(), entry.getBlockHashAlgorithm());
+        FileSnapshot snapshot = new FileSnapshot(entry.getFilePath(), entry.getSize(), entry.getLastModified(),
+            entry.getFileHash(), blockHashes);
+        snapshot.setBlockSize(resolveBlockSize(blockHashes, entry.getBlockSize()));
+        return snapshot;
+    }
+
+    /**
+     * Snapshots from before block sizes were recorded used the configured block size
+     */
+    private int resolveBlockSize(BlockHashList blockHashes, int recorded) {
+        if (recorded > 0 || blockHashes.isChunked()) {
+            return recorded;
+        }
+        return blockSizeService.getDefaultBlockSize();
+    }
+
     /**
      * Check if a file needs to be transferred based on snapshot comparison
      */
+    @Transactional(readOnly = true)
     public boolean needsTransfer(Path filePath, String relativePath) {
+        return needsTransfer(filePath, relativePath, getLatestSnapshotEntry(relativePath));
+    }
+
+    /**
+     * Check if a file needs to be transferred, given its latest snapshot (null if none)
+     */
+    @Transactional(readOnly = true)
+    public boolean needsTransfer(Path filePath, String relativePath, LatestSnapshots.Entry snapshot) {
         try {
             BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
             long fileSize = attrs.size();
             LocalDateTime lastModified = LocalDateTime.ofInstant(
                 attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault());
 
-            Optional<FileSnapshotEntity> latestSnapshot = getLatestSnapshot(relativePath);
-            
-            if (latestSnapshot.isEmpty()) {
+            if (snapshot == null) {
                 logger.debug("File {} needs transfer: no previous snapshot", relativePath);
                 return true;
             }
 
-            FileSnapshotEntity snapshot = latestSnapshot.get();
             
             // Quick checks first
             if (fileSize != snapshot.getSize() || !lastModified.equals(snapshot.getLastModified())) {
@@ -171,35 +461,45 @@ public class SQLiteSnapshotService {
     }
 
     /**
-     * Clean up old snapshots
+     * Clean up old snapshots, as one write of the database writer
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void cleanupOldSnapshots() {
         try {
-            LocalDateTime cutoffTime = LocalDateTime.now().minusDays(maxSnapshotAgeDays);
-            List<FileSnapshotEntity> oldSnapshots = fileSnapshotRepository.findSnapshotsOlderThan(cutoffTime);
-            
-            logger.info("Cleaning up {} old snapshots older than {}", oldSnapshots.size(), cutoffTime);
-            
-            for (FileSnapshotEntity snapshot : oldSnapshots) {
-                // Delete associated block hashes first
-                blockHashRepository.deleteByFileSnapshotId(snapshot.getId());
-                // Delete the snapshot
-                fileSnapshotRepository.delete(snapshot);
-            }
-            
-            logger.info("Cleanup completed");
+            databaseWriter.execute(() -> transactionTemplate.execute(status -> deleteOldSnapshots()));
         } catch (Exception e) {
             logger.error("Failed to cleanup old snapshots", e);
         }
     }
 
+    private int deleteOldSnapshots() {
+        LocalDateTime cutoffTime = LocalDateTime.now().minusDays(maxSnapshotAgeDays);
+        List<FileSnapshotEntity> oldSnapshots = fileSnapshotRepository.findSnapshotsOlderThan(cutoffTime);
+
+        logger.info("Cleaning up {} old snapshots older than {}", oldSnapshots.size(), cutoffTime);
+
+        for (FileSnapshotEntity snapshot : oldSnapshots) {
+            // Delete associated block hashes first
+            packedBlockHashesRepository.deleteByFileSnapshotId(snapshot.getId());
+            blockHashRepository.deleteAllByFileSnapshotId(snapshot.getId());
+            // Delete the snapshot
+            fileSnapshotRepository.delete(snapshot);
+            // It may have been the latest of its path; evicted once the deletes commit
+            latestSnapshotCache().evict(snapshot.getFilePath());
+        }
+
+        logger.info("Cleanup completed");
+        return oldSnapshots.size();
+    }
+
     /**
      * Get statistics about snapshots
      */
+    @Transactional(readOnly = true)
     public SnapshotStatistics getStatistics() {
         try {
             long totalSnapshots = fileSnapshotRepository.count();
-            long totalBlockHashes = blockHashRepository.count();
+            long totalBlockHashes = packedBlockHashesRepository.sumBlockCounts() + blockHashRepository.count();
             List<String> distinctFilePaths = fileSnapshotRepository.findDistinctFilePaths();
             
             return new SnapshotStatistics(totalSnapshots, totalBlockHashes, distinctFilePaths.size());
@@ -209,6 +509,28 @@ public class SQLiteSnapshotService {
         }
     }
 
+    /**
+     * Number of stored snapshots, without the distinct path count of getStatistics
+     */
+    @Transactional(readOnly = true)
+    public long countSnapshots() {
+        return fileSnapshotRepository.count();
+    }
+
+    /**
+     * Hit, miss and eviction counters of the latest snapshot metadata cache
+     */
+    public CacheStatistics getCacheStatistics() {
+        com.github.benmanes.caffeine.cache.Cache<?, ?> cache =
+            (com.github.benmanes.caffeine.cache.Cache<?, ?>) latestSnapshotCache().getNativeCache();
+        CacheStats stats = cache.stats();
+        long weightedBytes = cache.policy().eviction()
+            .map(eviction -> eviction.weightedSize().orElse(0))
+            .orElse(0L);
+        return new CacheStatistics(stats.hitCount(), stats.missCount(), stats.evictionCount(),
+            cache.estimatedSize(), weightedBytes);
+    }
+
     /**
      * Simple statistics class
      */
@@ -227,4 +549,57 @@ public class SQLiteSnapshotService {
         public long getTotalBlockHashes() { return totalBlockHashes; }
         public int getUniqueFiles() { return uniqueFiles; }
     }
+
+    /**
+     * Blocks that differ between two snapshots, or a snapshot and a copy on disk.
+     * The diff is null when the two were cut into blocks differently.
+     */
+    public static class SnapshotDiff {
+        private final String filePath;
+        private final int blockSize;
+        private final MerkleTree.Diff diff;
+
+        public SnapshotDiff(String filePath, int blockSize, MerkleTree.Diff diff) {
+            this.filePath = filePath;
+            this.blockSize = blockSize;
+            this.diff = diff;
+        }
+
+        public String getFilePath() { return filePath; }
+        // 0 for content-defined chunks
+        public int getBlockSize() { return blockSize; }
+        public boolean isComparable() { return diff != null; }
+        public MerkleTree.Diff getDiff() { return diff; }
+    }
+
+    /**
+     * Snapshot metadata cache counters
+     */
+    public static class CacheStatistics {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long entries;
+        // Estimated heap of the entries, each counted at least max-memory / max-entries
+        private final long weightedBytes;
+
+        public CacheStatistics(long hits, long misses, long evictions, long entries, long weightedBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.weightedBytes = weightedBytes;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getEntries() { return entries; }
+        public long getWeightedBytes() { return weightedBytes; }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0.0 : (double) hits / requests * 100.0;
+        }
+    }
 }
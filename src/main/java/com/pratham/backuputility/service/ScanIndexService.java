@@ -0,0 +1,162 @@
+package com.pratham.backuputility.service;
+
+import com.pratham.backuputility.model.ScanIndex;
+import com.pratham.backuputility.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service that stores the scan index of each source/target tree pair
+ * as a binary file under the snapshot directory
+ */
+@Service
+public class ScanIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScanIndexService.class);
+
+    private static final int MAGIC = 0x53434E49; // "SCNI"
+    private static final int VERSION = 1;
+
+    @Value("${app.snapshot-dir}")
+    private String snapshotDir;
+
+    @Value("${app.scan.index-enabled:true}")
+    private boolean enabled;
+
+    private final IndexStatistics statistics = new IndexStatistics();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public IndexStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Load the index of the last scan of this tree pair, or null if there is none
+     */
+    public ScanIndex load(Path sourceBase, Path targetBase) {
+        if (!enabled) {
+            return null;
+        }
+
+        Path indexFile = indexFile(sourceBase, targetBase);
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Ignoring scan index {} with unknown format", indexFile);
+                return null;
+            }
+            ScanIndex index = new ScanIndex(in.readLong());
+            for (ScanIndex.Side side : ScanIndex.Side.values()) {
+                int directoryCount = in.readInt();
+                for (int d = 0; d < directoryCount; d++) {
+                    String relativeDir = in.readUTF();
+                    ScanIndex.DirectoryRecord record = new ScanIndex.DirectoryRecord(
+                        in.readLong(), in.readLong(), in.readLong(), in.readInt());
+                    for (int i = 0; i < record.getChildCount(); i++) {
+                        String name = in.readUTF();
+                        byte flags = in.readByte();
+                        record.setChild(i, name, (flags & 1) != 0, (flags & 2) != 0,
+                            in.readLong(), in.readLong(), in.readLong(), in.readLong());
+                    }
+                    index.putDirectory(side, relativeDir, record);
+                }
+            }
+            statistics.loads.increment();
+            return index;
+        } catch (IOException e) {
+            logger.warn("Failed to read scan index {}, rescanning: {}", indexFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Replace the stored index of this tree pair
+     */
+    public synchronized void save(Path sourceBase, Path targetBase, ScanIndex index) {
+        if (!enabled) {
+            return;
+        }
+
+        Path indexFile = indexFile(sourceBase, targetBase);
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(index.getScanStartNanos());
+                for (ScanIndex.Side side : ScanIndex.Side.values()) {
+                    Map<String, ScanIndex.DirectoryRecord> directories = index.getDirectories(side);
+                    out.writeInt(directories.size());
+                    for (Map.Entry<String, ScanIndex.DirectoryRecord> entry : directories.entrySet()) {
+                        ScanIndex.DirectoryRecord record = entry.getValue();
+                        out.writeUTF(entry.getKey());
+                        out.writeLong(record.getMtime());
+                        out.writeLong(record.getInode());
+                        out.writeLong(record.getCtime());
+                        out.writeInt(record.getChildCount());
+                        for (int i = 0; i < record.getChildCount(); i++) {
+                            out.writeUTF(record.getName(i));
+                            out.writeByte((record.isDirectory(i) ? 1 : 0) | (record.isInSync(i) ? 2 : 0));
+                            out.writeLong(record.getSize(i));
+                            out.writeLong(record.getMtime(i));
+                            out.writeLong(record.getInode(i));
+                            out.writeLong(record.getCtime(i));
+                        }
+                    }
+                }
+            }
+
+            // Readers only ever see a complete index
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            statistics.saves.increment();
+        } catch (IOException e) {
+            logger.warn("Failed to write scan index {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    private Path indexFile(Path sourceBase, Path targetBase) {
+        String pair = sourceBase.toAbsolutePath().normalize() + "\n" + targetBase.toAbsolutePath().normalize();
+        String name = HashUtil.calculateSha256Hash(pair.getBytes(StandardCharsets.UTF_8)).substring(0, 32);
+        return Paths.get(snapshotDir, "scan-index", name + ".idx");
+    }
+
+    /**
+     * Cumulative scan index counters
+     */
+    public static class IndexStatistics {
+        private final LongAdder loads = new LongAdder();
+        private final LongAdder saves = new LongAdder();
+        private final LongAdder listingsReused = new LongAdder();
+        private final LongAdder listingsRead = new LongAdder();
+        private final LongAdder comparisonsSkipped = new LongAdder();
+
+        public void recordListingReused() { listingsReused.increment(); }
+        public void recordListingRead() { listingsRead.increment(); }
+        public void recordComparisonSkipped() { comparisonsSkipped.increment(); }
+
+        public long getLoads() { return loads.sum(); }
+        public long getSaves() { return saves.sum(); }
+        public long getListingsReused() { return listingsReused.sum(); }
+        public long getListingsRead() { return listingsRead.sum(); }
+        public long getComparisonsSkipped() { return comparisonsSkipped.sum(); }
+    }
+}
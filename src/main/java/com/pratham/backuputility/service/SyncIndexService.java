@@ -0,0 +1,215 @@
+package com.pratham.backuputility.service;
+
+import com.pratham.backuputility.model.DirectoryMerkleTree;
+import com.pratham.backuputility.model.TreeDiffEntry;
+import com.pratham.backuputility.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service that keeps the DC/DR directory Merkle tree used to answer sync status.
+ *
+ * The tree is rebuilt from every full comparison of the two trees and patched as
+ * transfers, deletions and watched DC changes complete. Changes made outside the
+ * application to a tree that is not watched only show up after the next rebuild,
+ * so the tree is trusted for max-age-ms after it was built.
+ */
+@Service
+public class SyncIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncIndexService.class);
+
+    // Key tags, so a copy known to differ never gets the key of its counterpart
+    private static final byte IN_SYNC = 1;
+    private static final byte SOURCE_ONLY = 2;
+    private static final byte TARGET_ONLY = 3;
+    private static final byte CHANGED = 4;
+
+    @Value("${app.sync-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.sync-index.max-age-ms:600000}")
+    private long maxAgeMs;
+
+    private volatile DirectoryMerkleTree tree;
+    private volatile long builtAtMillis;
+
+    // Bumped by every patch, so a rebuild that overlapped one is not installed
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong comparisons = new AtomicLong();
+    private volatile long lastComparisonMicros;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Compare DC and DR from the tree, or return null when there is no tree
+     * recent enough and the caller has to scan
+     */
+    public DirectoryMerkleTree.Comparison compare(int maxListed) {
+        DirectoryMerkleTree current = tree;
+        if (!enabled || current == null || System.currentTimeMillis() - builtAtMillis > maxAgeMs) {
+            return null;
+        }
+        long start = System.nanoTime();
+        DirectoryMerkleTree.Comparison comparison = current.compare(maxListed);
+        lastComparisonMicros = (System.nanoTime() - start) / 1000;
+        comparisons.incrementAndGet();
+        return comparison;
+    }
+
+    /**
+     * Start a new tree to fill from a full diff of the two trees
+     */
+    public Rebuild startRebuild(boolean sourceIsDc) {
+        return new Rebuild(sourceIsDc, updates.get());
+    }
+
+    /**
+     * Replace the tree with a rebuilt one, unless it was patched while the rebuild ran
+     */
+    public synchronized void install(Rebuild rebuild) {
+        if (!enabled) {
+            return;
+        }
+        if (updates.get() != rebuild.startedAfterUpdate) {
+            logger.debug("Discarding sync index rebuilt while transfers were updating it");
+            return;
+        }
+        tree = rebuild.tree;
+        builtAtMillis = System.currentTimeMillis();
+        rebuilds.incrementAndGet();
+        logger.debug("Sync index rebuilt with {} files", rebuild.tree.getFileCount());
+    }
+
+    /**
+     * Drop the tree, so the next status check scans both trees
+     */
+    public void invalidate() {
+        updates.incrementAndGet();
+        tree = null;
+    }
+
+    /**
+     * A file was copied to the other side; both copies now hold the content of fileHash
+     */
+    public void recordInSync(String relativePath, String fileHash) {
+        long key = contentKey(fileHash);
+        DirectoryMerkleTree current = beginUpdate();
+        if (current != null) {
+            current.put(relativePath, key, key);
+        }
+    }
+
+    /**
+     * A file changed on one side, or may have: it no longer matches the other side
+     */
+    public void recordChanged(DirectoryMerkleTree.Side side, String relativePath) {
+        DirectoryMerkleTree current = beginUpdate();
+        if (current != null) {
+            current.setKey(side, relativePath, nonZero(
+                statKey(CHANGED, updates.get(), System.nanoTime())));
+        }
+    }
+
+    /**
+     * A file or directory was deleted from one side
+     */
+    public void recordDeleted(DirectoryMerkleTree.Side side, String relativePath) {
+        DirectoryMerkleTree current = beginUpdate();
+        if (current != null) {
+            current.setKey(side, relativePath, 0);
+        }
+    }
+
+    private DirectoryMerkleTree beginUpdate() {
+        updates.incrementAndGet();
+        return tree;
+    }
+
+    public Map<String, Object> getStatistics() {
+        DirectoryMerkleTree current = tree;
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", enabled);
+        statistics.put("built", current != null);
+        if (current != null) {
+            statistics.put("ageMs", System.currentTimeMillis() - builtAtMillis);
+            statistics.put("files", current.getFileCount());
+            statistics.put("dcRootHash", current.getRootHash(DirectoryMerkleTree.Side.DC));
+            statistics.put("drRootHash", current.getRootHash(DirectoryMerkleTree.Side.DR));
+        }
+        statistics.put("rebuilds", rebuilds.get());
+        statistics.put("updates", updates.get());
+        statistics.put("comparisons", comparisons.get());
+        statistics.put("lastComparisonMicros", lastComparisonMicros);
+        return statistics;
+    }
+
+    private static long contentKey(String fileHash) {
+        byte[] bytes = fileHash.getBytes(StandardCharsets.US_ASCII);
+        return nonZero(HashUtil.xxHash64(bytes, 0, bytes.length));
+    }
+
+    private static long statKey(byte tag, long size, long lastModified) {
+        byte[] bytes = new byte[1 + 2 * Long.BYTES];
+        bytes[0] = tag;
+        HashUtil.putLong(size, bytes, 1, Long.BYTES);
+        HashUtil.putLong(lastModified, bytes, 1 + Long.BYTES, Long.BYTES);
+        return nonZero(HashUtil.xxHash64(bytes, 0, bytes.length));
+    }
+
+    private static long nonZero(long key) {
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * A tree being filled from one tree diff, with source and target mapped to DC and DR
+     */
+    public static final class Rebuild {
+        private final DirectoryMerkleTree tree = new DirectoryMerkleTree();
+        private final boolean sourceIsDc;
+        private final long startedAfterUpdate;
+
+        private Rebuild(boolean sourceIsDc, long startedAfterUpdate) {
+            this.sourceIsDc = sourceIsDc;
+            this.startedAfterUpdate = startedAfterUpdate;
+        }
+
+        /**
+         * Add one diff entry; differs tells whether the two copies of a file in both trees differ
+         */
+        public void add(TreeDiffEntry entry, boolean differs) {
+            long sourceKey = 0;
+            long targetKey = 0;
+            switch (entry.getType()) {
+                case ADDED -> sourceKey = statKey(SOURCE_ONLY, entry.getSourceSize(), entry.getSourceLastModified());
+                case DELETED -> targetKey = statKey(TARGET_ONLY, entry.getTargetSize(), entry.getTargetLastModified());
+                default -> {
+                    if (differs) {
+                        sourceKey = statKey(SOURCE_ONLY, entry.getSourceSize(), entry.getSourceLastModified());
+                        targetKey = statKey(TARGET_ONLY, entry.getTargetSize(), entry.getTargetLastModified());
+                        if (sourceKey == targetKey) {
+                            targetKey = nonZero(~targetKey);
+                        }
+                    } else {
+                        sourceKey = targetKey = statKey(IN_SYNC, entry.getSourceSize(), entry.getSourceLastModified());
+                    }
+                }
+            }
+            if (sourceIsDc) {
+                tree.put(entry.getRelativePath(), sourceKey, targetKey);
+            } else {
+                tree.put(entry.getRelativePath(), targetKey, sourceKey);
+            }
+        }
+    }
+}
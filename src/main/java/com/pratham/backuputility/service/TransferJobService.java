@@ -0,0 +1,303 @@
+package com.pratham.backuputility.service;
+
+import com.pratham.backuputility.entity.TransferJob;
+import com.pratham.backuputility.entity.TransferJobResult;
+import com.pratham.backuputility.repository.TransferJobRepository;
+import com.pratham.backuputility.repository.TransferJobResultRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs transfers as asynchronous jobs.
+ *
+ * Jobs execute one at a time on a dedicated thread. Their result lines are
+ * written to SQLite in batches while the transfer runs, so a finished job can
+ * still be paged through without keeping its results on the heap. Every job
+ * write goes through the database writer.
+ */
+@Service
+public class TransferJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferJobService.class);
+
+    private static final int RESULT_BATCH_SIZE = 100;
+    private static final long FLUSH_INTERVAL_MS = 2000;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private ProgressTrackingService progressTrackingService;
+
+    @Autowired
+    private TransferJobRepository jobRepository;
+
+    @Autowired
+    private TransferJobResultRepository resultRepository;
+
+    @Autowired
+    private DatabaseWriterService databaseWriter;
+
+    @Value("${app.jobs.max-results-per-job:10000}")
+    private int maxResultsPerJob;
+
+    @Value("${app.jobs.retention-days:7}")
+    private int retentionDays;
+
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "transfer-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Jobs that were queued or running when the application stopped can never finish
+     */
+    @PostConstruct
+    public void failInterruptedJobs() {
+        List<TransferJob> interrupted = jobRepository.findByStatusIn(List.of("QUEUED", "RUNNING"));
+        for (TransferJob job : interrupted) {
+            job.setStatus("FAILED");
+            job.setErrorMessage("Interrupted by application shutdown");
+            job.setFinishedAt(LocalDateTime.now());
+        }
+        if (!interrupted.isEmpty()) {
+            databaseWriter.execute(() -> jobRepository.saveAll(interrupted));
+            logger.warn("Marked {} interrupted transfer jobs as failed", interrupted.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Queue a transfer and return its job immediately. The check for a transfer
+     * already queued or running is made under the same lock as the enqueue, so
+     * concurrent requests cannot both get through.
+     *
+     * @throws IllegalStateException if a transfer is already queued or running
+     */
+    public synchronized TransferJob submit(String direction, String mode) {
+        if (transferService.isTransferInProgress() || hasActiveJob()) {
+            throw new IllegalStateException("Transfer already in progress");
+        }
+        TransferJob job = databaseWriter.execute(() -> jobRepository.save(new TransferJob(direction, mode)));
+        jobExecutor.submit(() -> run(job.getId()));
+        logger.info("Queued transfer job {} ({}, {})", job.getId(), direction, mode);
+        return job;
+    }
+
+    /**
+     * Whether a job is waiting or running
+     */
+    public boolean hasActiveJob() {
+        return !jobRepository.findByStatusIn(List.of("QUEUED", "RUNNING")).isEmpty();
+    }
+
+    public Optional<TransferJob> getJob(Long jobId) {
+        return jobRepository.findById(jobId);
+    }
+
+    public List<TransferJob> getRecentJobs(int limit) {
+        return jobRepository.findRecentJobs(PageRequest.of(0, limit));
+    }
+
+    /**
+     * One page of a job's stored result lines, in the order they were produced
+     */
+    public Page<TransferJobResult> getResults(Long jobId, int page, int size) {
+        return resultRepository.findByJobIdOrderBySeqAsc(jobId, PageRequest.of(page, size));
+    }
+
+    /**
+     * Delete finished jobs and their results once they are past the retention period,
+     * as one write of the database writer
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void cleanupOldJobs() {
+        LocalDateTime cutoffTime = LocalDateTime.now().minusDays(retentionDays);
+        List<Long> jobIds = jobRepository.findFinishedJobIdsOlderThan(cutoffTime);
+        if (jobIds.isEmpty()) {
+            return;
+        }
+        int results = databaseWriter.execute(() -> {
+            int deleted = resultRepository.deleteByJobIds(jobIds);
+            jobRepository.deleteByIds(jobIds);
+            return deleted;
+        });
+        logger.info("Cleaned up {} transfer jobs ({} result lines) older than {} days",
+            jobIds.size(), results, retentionDays);
+    }
+
+    private void run(Long jobId) {
+        // Work on a private copy so the entity handed back by submit() is never mutated
+        TransferJob job = jobRepository.findById(jobId).orElseThrow();
+        job.setStatus("RUNNING");
+        job.setStartedAt(LocalDateTime.now());
+        databaseWriter.execute(() -> jobRepository.save(job));
+
+        JobResultSink sink = new JobResultSink(job);
+        try {
+            transferService.performTransfer(job.getDirection(), job.getMode(), sink);
+        } catch (Exception e) {
+            logger.error("Transfer job {} failed", job.getId(), e);
+            sink.fail(e.getMessage());
+        } finally {
+            // Wait for the final state, so the job is no longer active once this thread is free
+            sink.finish().join();
+            logger.info("Transfer job {} {}: {} transferred, {} unchanged, {} deleted, {} failed",
+                job.getId(), job.getStatus(), job.getTransferredFiles(), job.getUnchangedFiles(),
+                job.getDeletedFiles(), job.getFailedFiles());
+        }
+    }
+
+    /**
+     * Collects result lines from the pipeline threads, counts them and writes
+     * them to the result table in batches.
+     *
+     * Lines also arrive from callbacks on the database writer thread, so a batch
+     * is handed to the writer after the monitor is released: a thread waiting for
+     * queue space while holding it could block the writer on the monitor.
+     */
+    private class JobResultSink implements Consumer<String> {
+        private final TransferJob job;
+        private List<TransferJobResult> buffer = new ArrayList<>();
+        private long lastFlushMs = System.currentTimeMillis();
+        // Result count of the last job state written; only touched on the writer thread
+        private long writtenResultCount = -1;
+
+        JobResultSink(TransferJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public void accept(String message) {
+            Batch batch = add(message);
+            if (batch != null) {
+                write(batch);
+            }
+        }
+
+        private synchronized Batch add(String message) {
+            long seq = job.getResultCount();
+            job.setResultCount(seq + 1);
+            count(message);
+
+            if (seq < maxResultsPerJob) {
+                buffer.add(new TransferJobResult(job.getId(), seq, message));
+            } else {
+                job.setResultsTruncated(true);
+            }
+
+            long now = System.currentTimeMillis();
+            if (buffer.size() >= RESULT_BATCH_SIZE || now - lastFlushMs >= FLUSH_INTERVAL_MS) {
+                return takeBatch();
+            }
+            return null;
+        }
+
+        synchronized void fail(String errorMessage) {
+            job.setStatus("FAILED");
+            job.setErrorMessage(errorMessage);
+        }
+
+        CompletableFuture<Void> finish() {
+            Batch batch;
+            synchronized (this) {
+                if (!"FAILED".equals(job.getStatus())) {
+                    job.setStatus("COMPLETED");
+                }
+                job.setFinishedAt(LocalDateTime.now());
+                batch = takeBatch();
+            }
+            return write(batch);
+        }
+
+        private void count(String message) {
+            if (message.startsWith("✓")) {
+                job.setTransferredFiles(job.getTransferredFiles() + 1);
+                job.setProcessedFiles(job.getProcessedFiles() + 1);
+            } else if (message.startsWith("○")) {
+                job.setUnchangedFiles(job.getUnchangedFiles() + 1);
+                job.setProcessedFiles(job.getProcessedFiles() + 1);
+            } else if (message.startsWith("✗ Deleted")) {
+                job.setDeletedFiles(job.getDeletedFiles() + 1);
+            } else if (message.startsWith("✗")) {
+                job.setFailedFiles(job.getFailedFiles() + 1);
+                job.setProcessedFiles(job.getProcessedFiles() + 1);
+            } else if (message.startsWith("Transfer failed") || message.startsWith("Transfer already in progress")) {
+                fail(message);
+            }
+        }
+
+        /**
+         * Take the buffered lines and a copy of the job's current state
+         */
+        private Batch takeBatch() {
+            job.setTotalFiles(Math.max(progressTrackingService.getTotalFiles(), job.getProcessedFiles()));
+            Batch batch = new Batch(buffer, job.copy());
+            buffer = new ArrayList<>();
+            lastFlushMs = System.currentTimeMillis();
+            return batch;
+        }
+
+        /**
+         * Queue a batch without waiting for it to commit. Batches taken on different
+         * threads may queue out of order; an older job state never overwrites a newer one.
+         */
+        private CompletableFuture<Void> write(Batch batch) {
+            CompletableFuture<Void> written;
+            try {
+                written = databaseWriter.submit(() -> {
+                    if (!batch.results.isEmpty()) {
+                        resultRepository.saveAll(batch.results);
+                    }
+                    if (batch.state.getResultCount() >= writtenResultCount) {
+                        jobRepository.save(batch.state);
+                        writtenResultCount = batch.state.getResultCount();
+                    }
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                written = CompletableFuture.failedFuture(e);
+            }
+            return written.exceptionally(e -> {
+                logger.error("Failed to store results for transfer job {}", job.getId(), e);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Result lines to store, and the job state to store with them
+     */
+    private static class Batch {
+        private final List<TransferJobResult> results;
+        private final TransferJob state;
+
+        Batch(List<TransferJobResult> results, TransferJob state) {
+            this.results = results;
+            this.state = state;
+        }
+    }
+}
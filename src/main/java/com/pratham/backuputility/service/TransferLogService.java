@@ -1,25 +1,60 @@
 package com.pratham.backuputility.service;
 
 import com.pratham.backuputility.entity.TransferLog;
+import com.pratham.backuputility.entity.TransferStatsRollup;
+import com.pratham.backuputility.model.CursorPage;
 import com.pratham.backuputility.model.FileDelta;
 import com.pratham.backuputility.model.FileSnapshot;
 import com.pratham.backuputility.repository.TransferLogRepository;
+import com.pratham.backuputility.repository.TransferStatsRollupRepository;
+import com.pratham.backuputility.util.DeltaAlgorithm;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
- * Enhanced service for logging transfer operations with SQLite persistence
+ * Enhanced service for logging transfer operations with SQLite persistence.
+ * Logs are written by the database writer; queries run on the read-only pool.
+ *
+ * In write-behind mode (the default) log records go into a bounded buffer and a
+ * flusher thread saves them in batches, every flush-size records or flush-interval-ms,
+ * so transfers do not wait for audit rows to commit. When the buffer is full, BLOCK
+ * makes the caller wait for room and DROP discards the record and counts it.
+ * Whatever is buffered is flushed on shutdown.
+ *
+ * Statistics come from hourly rollups per status and operation type, updated in the
+ * same transaction as the logs they count and trimmed with them on cleanup, so they
+ * cost a scan of the buckets rather than of every log.
  */
 @Service
-@Transactional
+@Transactional(readOnly = true)
 public class TransferLogService {
 
     private static final Logger logger = LoggerFactory.getLogger(TransferLogService.class);
@@ -27,9 +62,102 @@ public class TransferLogService {
     @Autowired
     private TransferLogRepository repository;
 
+    @Autowired
+    private TransferStatsRollupRepository rollupRepository;
+
+    @Autowired
+    private DatabaseWriterService databaseWriter;
+
     @Value("${app.max-log-retention-days:30}")
     private int maxLogRetentionDays;
 
+    @Value("${app.monitoring.max-page-size:1000}")
+    private int maxPageSize;
+
+    @Value("${app.transfer-log.write-behind.enabled:true}")
+    private boolean writeBehindEnabled;
+
+    @Value("${app.transfer-log.write-behind.capacity:8192}")
+    private int writeBehindCapacity;
+
+    @Value("${app.transfer-log.write-behind.flush-size:500}")
+    private int flushSize;
+
+    @Value("${app.transfer-log.write-behind.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${app.transfer-log.write-behind.overflow-policy:BLOCK}")
+    private OverflowPolicy overflowPolicy;
+
+    private BlockingQueue<TransferLog> buffer;
+    private Thread flusherThread;
+    private volatile boolean flusherRunning;
+    private final Object flushSignal = new Object();
+
+    private final AtomicLong bufferedLogs = new AtomicLong();
+    private final AtomicLong flushedLogs = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong droppedLogs = new AtomicLong();
+    private final AtomicLong failedLogs = new AtomicLong();
+    private final AtomicLong blockedWrites = new AtomicLong();
+    private final AtomicLong inlineWrites = new AtomicLong();
+
+    /**
+     * What a log write does when the write-behind buffer is full
+     */
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP
+    }
+
+    /**
+     * Bucket size of a statistics timeline
+     */
+    public enum Granularity {
+        HOUR,
+        DAY
+    }
+
+    @PostConstruct
+    public void start() {
+        // Queued ahead of any log write, so no log can be counted twice
+        databaseWriter.submit(this::rebuildRollupsIfMissing).whenComplete((built, e) -> {
+            if (e != null) {
+                logger.error("Failed to build transfer statistics rollups", e);
+            }
+        });
+
+        if (!writeBehindEnabled) {
+            return;
+        }
+        buffer = new ArrayBlockingQueue<>(Math.max(1, writeBehindCapacity));
+        flusherRunning = true;
+        flusherThread = new Thread(this::runFlusher, "transfer-log-flusher");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    /**
+     * Stop the flusher once everything buffered has been saved
+     */
+    @PreDestroy
+    public void stopWriteBehind() {
+        if (flusherThread == null) {
+            return;
+        }
+        flusherRunning = false;
+        synchronized (flushSignal) {
+            flushSignal.notifyAll();
+        }
+        try {
+            flusherThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything logged after the flusher exited
+        flush();
+    }
+
     /**
      * Log a successful transfer operation
      */
@@ -40,6 +168,7 @@ public class TransferLogService {
     /**
      * Log a successful transfer operation with operation type
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logTransfer(String fileName, FileSnapshot snapshot, FileDelta delta, String operationType) {
         try {
             long startTime = System.currentTimeMillis();
@@ -48,10 +177,18 @@ public class TransferLogService {
             log.setLastModified(snapshot.getLastModified());
             log.setChecksum(snapshot.getFileHash());
             
-            if (delta != null) {
+            if (delta != null && delta.getAlgorithm() != DeltaAlgorithm.BLOCK) {
+                log.setErrorMessage(String.format("Incremental (%s): %d bytes sent, %d bytes reused (%.1f%% efficiency)",
+                    delta.getAlgorithm().name().toLowerCase(Locale.ROOT), delta.getLiteralBytes(), delta.getCopiedBytes(),
+                    delta.getEfficiencyPercentage()));
+                log.setBytesTransferred(delta.getLiteralBytes());
+                log.setCompressionRatio(delta.getEfficiencyPercentage() / 100.0);
+            } else if (delta != null) {
                 log.setErrorMessage(String.format("Incremental: %d/%d blocks updated (%.1f%% efficiency)",
                     delta.getChangedBlocks(), delta.getTotalBlocks(), delta.getEfficiencyPercentage()));
-                log.setBytesTransferred((long) (delta.getChangedBlocks() * 4096)); // Approximate
+                // Whole-file copies send the file; otherwise approximate, as the last block may be shorter
+                log.setBytesTransferred(delta.isNewFile() ? delta.getSourceFileSize()
+                    : Math.min(delta.getChangedBlocks() * delta.getBlockSize(), delta.getSourceFileSize()));
                 log.setCompressionRatio(delta.getEfficiencyPercentage() / 100.0);
             } else {
                 log.setBytesTransferred(snapshot.getSize());
@@ -61,7 +198,7 @@ public class TransferLogService {
             long endTime = System.currentTimeMillis();
             log.setTransferDurationMs(endTime - startTime);
 
-            repository.save(log);
+            write(log);
 
         } catch (Exception e) {
             logger.error("Failed to log transfer for file: {}", fileName, e);
@@ -71,6 +208,7 @@ public class TransferLogService {
     /**
      * Log a full file transfer (no delta)
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logFullTransfer(String fileName, long fileSize, String checksum) {
         try {
             TransferLog log = new TransferLog(fileName, fileSize, "SUCCESS", "FULL");
@@ -79,7 +217,7 @@ public class TransferLogService {
             log.setBytesTransferred(fileSize);
             log.setCompressionRatio(1.0);
 
-            repository.save(log);
+            write(log);
 
         } catch (Exception e) {
             logger.error("Failed to log full transfer for file: {}", fileName, e);
@@ -96,13 +234,14 @@ public class TransferLogService {
     /**
      * Log a failed transfer operation with operation type
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logTransferError(String fileName, String errorMessage, String operationType) {
         try {
             TransferLog log = new TransferLog(fileName, 0, "FAILED", operationType);
             log.setLastModified(LocalDateTime.now());
             log.setErrorMessage(errorMessage);
 
-            repository.save(log);
+            write(log);
 
         } catch (Exception e) {
             logger.error("Failed to log transfer error for file: {}", fileName, e);
@@ -112,13 +251,14 @@ public class TransferLogService {
     /**
      * Log a skipped file operation
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logSkippedFile(String fileName, String reason) {
         try {
             TransferLog log = new TransferLog(fileName, 0, "SKIPPED", "SKIP");
             log.setLastModified(LocalDateTime.now());
             log.setErrorMessage(reason);
 
-            repository.save(log);
+            write(log);
 
         } catch (Exception e) {
             logger.error("Failed to log skipped file: {}", fileName, e);
@@ -128,19 +268,175 @@ public class TransferLogService {
     /**
      * Log a file deletion operation
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logFileDeletion(String fileName) {
         try {
             TransferLog log = new TransferLog(fileName, 0, "DELETED", "DELETE");
             log.setLastModified(LocalDateTime.now());
             log.setErrorMessage("File deleted during sync");
 
-            repository.save(log);
+            write(log);
 
         } catch (Exception e) {
             logger.error("Failed to log file deletion for: {}", fileName, e);
         }
     }
 
+    /**
+     * Save a log record now, or buffer it for the flusher in write-behind mode
+     */
+    private void write(TransferLog log) {
+        if (!flusherRunning) {
+            databaseWriter.execute(() -> saveLogs(List.of(log)));
+            return;
+        }
+
+        if (!buffer.offer(log)) {
+            if (overflowPolicy == OverflowPolicy.DROP) {
+                droppedLogs.incrementAndGet();
+                logger.debug("Transfer log buffer full, dropped log for {}", log.getFileName());
+                return;
+            }
+            if (databaseWriter.isWriterThread()) {
+                // The flusher needs the writer to make room, so save into the batch in progress instead
+                saveLogs(List.of(log));
+                inlineWrites.incrementAndGet();
+                return;
+            }
+            blockedWrites.incrementAndGet();
+            try {
+                buffer.put(log);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while buffering transfer log", e);
+            }
+        }
+        bufferedLogs.incrementAndGet();
+        if (buffer.size() >= flushSize) {
+            synchronized (flushSignal) {
+                flushSignal.notifyAll();
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (flusherRunning) {
+            try {
+                synchronized (flushSignal) {
+                    if (flusherRunning && buffer.size() < flushSize) {
+                        flushSignal.wait(flushIntervalMs);
+                    }
+                }
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Transfer log flusher error", e);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Save everything currently buffered, flush-size records per transaction
+     */
+    private void flush() {
+        if (buffer == null) {
+            return;
+        }
+        List<TransferLog> batch = new ArrayList<>();
+        while (buffer.drainTo(batch, Math.max(1, flushSize)) > 0) {
+            try {
+                databaseWriter.execute(() -> saveLogs(batch));
+                flushedLogs.addAndGet(batch.size());
+                flushes.incrementAndGet();
+            } catch (Exception e) {
+                failedLogs.addAndGet(batch.size());
+                logger.error("Failed to save {} buffered transfer logs", batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Save logs and add them to their rollups; runs inside a database writer transaction
+     */
+    private List<TransferLog> saveLogs(List<TransferLog> logs) {
+        List<TransferLog> saved = repository.saveAll(logs);
+        Map<String, RollupDelta> deltas = new HashMap<>();
+        for (TransferLog log : logs) {
+            addToRollup(deltas, log.getTransferredAt(), log.getStatus(), log.getOperationType(),
+                log.getBytesTransferred(), log.getTransferDurationMs());
+        }
+        applyRollups(deltas);
+        return saved;
+    }
+
+    /**
+     * Build the rollups from the logs themselves when they have none yet,
+     * e.g. for a database written before rollups existed
+     */
+    private Integer rebuildRollupsIfMissing() {
+        // count, not findTopRecentLogs: its native SELECT * fails on an empty table with the SQLite driver
+        if (rollupRepository.count() > 0 || repository.count() == 0) {
+            return 0;
+        }
+        Map<String, RollupDelta> deltas = new HashMap<>();
+        try (Stream<Object[]> rows = repository.streamRollupColumns()) {
+            rows.forEach(row -> addToRollup(deltas, (LocalDateTime) row[0], (String) row[1], (String) row[2],
+                (Long) row[3], (Long) row[4]));
+        }
+        applyRollups(deltas);
+        logger.info("Built {} transfer statistics rollups from existing transfer logs", deltas.size());
+        return deltas.size();
+    }
+
+    private static void addToRollup(Map<String, RollupDelta> deltas, LocalDateTime transferredAt, String status,
+                                    String operationType, Long bytesTransferred, Long durationMs) {
+        long bucketStart = bucketStart(transferredAt);
+        String key = bucketStart + ":" + status + ":" + operationType;
+        RollupDelta delta = deltas.computeIfAbsent(key, k -> new RollupDelta(bucketStart, status, operationType));
+        delta.transfers++;
+        delta.bytes += bytesTransferred != null ? bytesTransferred : 0;
+        if (durationMs != null) {
+            delta.durations++;
+            delta.durationSumMs += durationMs;
+        }
+    }
+
+    private void applyRollups(Map<String, RollupDelta> deltas) {
+        for (Map.Entry<String, RollupDelta> entry : deltas.entrySet()) {
+            RollupDelta delta = entry.getValue();
+            rollupRepository.add(entry.getKey(), delta.bucketStart, delta.status, delta.operationType,
+                delta.transfers, delta.bytes, delta.durations, delta.durationSumMs);
+        }
+    }
+
+    // Start of the hour containing a time, in epoch millis
+    private static long bucketStart(LocalDateTime time) {
+        return time.truncatedTo(ChronoUnit.HOURS).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Counters of the write-behind buffer
+     */
+    public Map<String, Object> getWriteBehindStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", writeBehindEnabled);
+        statistics.put("overflowPolicy", overflowPolicy);
+        statistics.put("capacity", writeBehindCapacity);
+        statistics.put("pending", buffer != null ? buffer.size() : 0);
+        statistics.put("buffered", bufferedLogs.get());
+        statistics.put("flushed", flushedLogs.get());
+        statistics.put("flushes", flushes.get());
+        statistics.put("dropped", droppedLogs.get());
+        statistics.put("failed", failedLogs.get());
+        statistics.put("blockedWrites", blockedWrites.get());
+        statistics.put("inlineWrites", inlineWrites.get());
+        return statistics;
+    }
+
     /**
      * Get recent transfer logs
      */
@@ -149,24 +445,52 @@ public class TransferLogService {
     }
 
     /**
-     * Get logs by status
+     * Get one page of all logs, newest first; a null cursor starts at the newest
      */
-    public List<TransferLog> getLogsByStatus(String status) {
-        return repository.findByStatus(status);
+    public CursorPage<TransferLog> getLogs(String cursor, int size) {
+        return page(cursor, size, repository::findPage);
     }
 
     /**
-     * Get logs by operation type
+     * Get one page of logs by status, newest first
      */
-    public List<TransferLog> getLogsByOperationType(String operationType) {
-        return repository.findByOperationType(operationType);
+    public CursorPage<TransferLog> getLogsByStatus(String status, String cursor, int size) {
+        return page(cursor, size, (afterTime, afterId, pageable) ->
+            repository.findPageByStatus(status, afterTime, afterId, pageable));
     }
 
     /**
-     * Get logs within a time range
+     * Get one page of logs by operation type, newest first
      */
-    public List<TransferLog> getLogsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
-        return repository.findByTimeRange(startTime, endTime);
+    public CursorPage<TransferLog> getLogsByOperationType(String operationType, String cursor, int size) {
+        return page(cursor, size, (afterTime, afterId, pageable) ->
+            repository.findPageByOperationType(operationType, afterTime, afterId, pageable));
+    }
+
+    /**
+     * Get one page of logs within a time range, newest first
+     */
+    public CursorPage<TransferLog> getLogsByTimeRange(LocalDateTime startTime, LocalDateTime endTime,
+                                                      String cursor, int size) {
+        return page(cursor, size, (afterTime, afterId, pageable) ->
+            repository.findPageByTimeRange(startTime, endTime, afterTime, afterId, pageable));
+    }
+
+    /**
+     * Pass every log within a time range to a consumer, newest first. Reads one page per
+     * short transaction, so a slow consumer never holds a connection or a WAL snapshot.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long exportLogsByTimeRange(LocalDateTime startTime, LocalDateTime endTime, Consumer<TransferLog> consumer) {
+        long exported = 0;
+        String cursor = null;
+        do {
+            CursorPage<TransferLog> page = getLogsByTimeRange(startTime, endTime, cursor, maxPageSize);
+            page.getItems().forEach(consumer);
+            exported += page.getItems().size();
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return exported;
     }
 
     /**
@@ -174,20 +498,38 @@ public class TransferLogService {
      */
     public TransferStatistics getStatistics() {
         try {
-            long totalTransfers = repository.count();
-            long successfulTransfers = repository.countByStatus("SUCCESS");
-            long failedTransfers = repository.countByStatus("FAILED");
-            long skippedTransfers = repository.countByStatus("SKIPPED");
-            Long totalBytesTransferred = repository.getTotalBytesTransferred();
-            Double averageTransferDuration = repository.getAverageTransferDuration();
+            long totalTransfers = 0;
+            long successfulTransfers = 0;
+            long failedTransfers = 0;
+            long skippedTransfers = 0;
+            long totalBytesTransferred = 0;
+            double averageTransferDuration = 0.0;
+
+            for (Object[] row : rollupRepository.sumByStatus()) {
+                String status = (String) row[0];
+                long transfers = ((Number) row[1]).longValue();
+                totalTransfers += transfers;
+                switch (status) {
+                    case "SUCCESS" -> {
+                        successfulTransfers = transfers;
+                        // Bytes and durations count successful transfers only
+                        totalBytesTransferred = ((Number) row[2]).longValue();
+                        long durations = ((Number) row[3]).longValue();
+                        averageTransferDuration = durations > 0 ? ((Number) row[4]).doubleValue() / durations : 0.0;
+                    }
+                    case "FAILED" -> failedTransfers = transfers;
+                    case "SKIPPED" -> skippedTransfers = transfers;
+                    default -> { }
+                }
+            }
 
             return new TransferStatistics(
                 totalTransfers,
                 successfulTransfers,
                 failedTransfers,
                 skippedTransfers,
-                totalBytesTransferred != null ? totalBytesTransferred : 0L,
-                averageTransferDuration != null ? averageTransferDuration : 0.0
+                totalBytesTransferred,
+                averageTransferDuration
             );
         } catch (Exception e) {
             logger.error("Failed to get transfer statistics", e);
@@ -196,12 +538,34 @@ public class TransferLogService {
     }
 
     /**
-     * Clean up old transfer logs
+     * Transfer counters per bucket of the given size, from since onwards, oldest first
+     */
+    public List<StatisticsBucket> getStatisticsTimeline(LocalDateTime since, Granularity granularity) {
+        Map<String, StatisticsBucket> buckets = new LinkedHashMap<>();
+        for (TransferStatsRollup rollup : rollupRepository.findSince(bucketStart(since))) {
+            LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochMilli(rollup.getBucketStart()), ZoneId.systemDefault());
+            if (granularity == Granularity.DAY) {
+                start = start.truncatedTo(ChronoUnit.DAYS);
+            }
+            LocalDateTime bucketStart = start;
+            buckets.computeIfAbsent(bucketStart + ":" + rollup.getStatus() + ":" + rollup.getOperationType(),
+                key -> new StatisticsBucket(bucketStart, rollup.getStatus(), rollup.getOperationType())).add(rollup);
+        }
+        return new ArrayList<>(buckets.values());
+    }
+
+    /**
+     * Clean up old transfer logs. The cutoff is rounded down to the hour so whole
+     * rollup buckets go with the logs they count.
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void cleanupOldLogs() {
         try {
-            LocalDateTime cutoffTime = LocalDateTime.now().minusDays(maxLogRetentionDays);
-            repository.deleteOldLogs(cutoffTime);
+            LocalDateTime cutoffTime = LocalDateTime.now().minusDays(maxLogRetentionDays).truncatedTo(ChronoUnit.HOURS);
+            databaseWriter.execute(() -> {
+                repository.deleteOldLogs(cutoffTime);
+                return rollupRepository.deleteOlderThan(bucketStart(cutoffTime));
+            });
             logger.info("Cleaned up transfer logs older than {}", cutoffTime);
         } catch (Exception e) {
             logger.error("Failed to cleanup old transfer logs", e);
@@ -209,10 +573,120 @@ public class TransferLogService {
     }
 
     /**
-     * Search logs by file name pattern
+     * Search logs by file name pattern, one page at a time, newest first
      */
-    public List<TransferLog> searchLogsByFileName(String fileNamePattern) {
-        return repository.findByFileNamePattern(fileNamePattern);
+    public CursorPage<TransferLog> searchLogsByFileName(String fileNamePattern, String cursor, int size) {
+        return page(cursor, size, (afterTime, afterId, pageable) ->
+            repository.findPageByFileNamePattern(fileNamePattern, afterTime, afterId, pageable));
+    }
+
+    /**
+     * Fetch the page after a cursor, one extra row telling whether another page follows
+     */
+    private CursorPage<TransferLog> page(String cursor, int size, PageQuery query) {
+        int limit = Math.max(1, Math.min(size, maxPageSize));
+        LogCursor after = LogCursor.decode(cursor);
+        List<TransferLog> logs = query.find(after.transferredAt, after.id, PageRequest.of(0, limit + 1));
+        if (logs.size() <= limit) {
+            return new CursorPage<>(logs, null);
+        }
+        List<TransferLog> items = new ArrayList<>(logs.subList(0, limit));
+        return new CursorPage<>(items, LogCursor.encode(items.get(limit - 1)));
+    }
+
+    @FunctionalInterface
+    private interface PageQuery {
+        List<TransferLog> find(LocalDateTime afterTime, long afterId, Pageable pageable);
+    }
+
+    /**
+     * Position in (transferredAt DESC, id DESC) order, passed to clients as an opaque string
+     */
+    private static class LogCursor {
+        // Sorts after every log, so the first page starts at the newest
+        private static final LogCursor START = new LogCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+        private final LocalDateTime transferredAt;
+        private final long id;
+
+        LogCursor(LocalDateTime transferredAt, long id) {
+            this.transferredAt = transferredAt;
+            this.id = id;
+        }
+
+        static String encode(TransferLog log) {
+            String position = log.getTransferredAt() + "," + log.getId();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static LogCursor decode(String cursor) {
+            if (cursor == null || cursor.isEmpty()) {
+                return START;
+            }
+            try {
+                String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int comma = position.lastIndexOf(',');
+                return new LogCursor(LocalDateTime.parse(position.substring(0, comma)),
+                    Long.parseLong(position.substring(comma + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+        }
+    }
+
+    /**
+     * Counters being added to one rollup row
+     */
+    private static class RollupDelta {
+        private final long bucketStart;
+        private final String status;
+        private final String operationType;
+        private long transfers;
+        private long bytes;
+        private long durations;
+        private long durationSumMs;
+
+        RollupDelta(long bucketStart, String status, String operationType) {
+            this.bucketStart = bucketStart;
+            this.status = status;
+            this.operationType = operationType;
+        }
+    }
+
+    /**
+     * Transfer counters of one timeline bucket, status and operation type
+     */
+    public static class StatisticsBucket {
+        private final LocalDateTime bucketStart;
+        private final String status;
+        private final String operationType;
+        private long transfers;
+        private long bytesTransferred;
+        private long durations;
+        private long durationSumMs;
+
+        public StatisticsBucket(LocalDateTime bucketStart, String status, String operationType) {
+            this.bucketStart = bucketStart;
+            this.status = status;
+            this.operationType = operationType;
+        }
+
+        void add(TransferStatsRollup rollup) {
+            transfers += rollup.getTransferCount();
+            bytesTransferred += rollup.getBytesTransferred();
+            durations += rollup.getDurationCount();
+            durationSumMs += rollup.getDurationSumMs();
+        }
+
+        public LocalDateTime getBucketStart() { return bucketStart; }
+        public String getStatus() { return status; }
+        public String getOperationType() { return operationType; }
+        public long getTransfers() { return transfers; }
+        public long getBytesTransferred() { return bytesTransferred; }
+
+        public double getAverageTransferDuration() {
+            return durations > 0 ? (double) durationSumMs / durations : 0;
+        }
     }
 
     /**
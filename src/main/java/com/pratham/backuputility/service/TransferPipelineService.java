@@ -0,0 +1,494 @@
+package com.pratham.backuputility.service;
+
+import com.pratham.backuputility.model.BlockDeltaChannel;
+import com.pratham.backuputility.model.DirectoryMerkleTree;
+import com.pratham.backuputility.model.FileDelta;
+import com.pratham.backuputility.model.FileSnapshot;
+import com.pratham.backuputility.model.LatestSnapshots;
+import com.pratham.backuputility.model.TransferOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Staged transfer pipeline.
+ *
+ * Every file flows through four stages, each with its own sized worker pool
+ * and a bounded input queue:
+ * <ol>
+ *   <li>scan - stat the file and compare it with its latest snapshot (I/O, per device).
+ *       Large runs look snapshots up in a view preloaded with one query when the run starts.</li>
+ *   <li>hash - read the source once, hashing its blocks into both the delta and the new snapshot (CPU, per core)</li>
+ *   <li>write - apply the delta to the target file as its blocks are read (I/O, per device)</li>
+ *   <li>persist - hand the new snapshot and transfer log to the database writer, which
+ *       commits them in batches; a file completes once its rows have committed</li>
+ * </ol>
+ * A full queue blocks the stage feeding it, so the slowest stage throttles the
+ * run instead of letting work pile up in memory. Within a file, changed blocks
+ * go from hash to write through a bounded channel, so memory per file is
+ * limited to that buffer however large the file is.
+ */
+@Service
+public class TransferPipelineService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferPipelineService.class);
+
+    @Autowired
+    private SQLiteSnapshotService snapshotService;
+
+    @Autowired
+    private DatabaseWriterService databaseWriter;
+
+    @Autowired
+    private DeltaCalculationService deltaCalculationService;
+
+    @Autowired
+    private DeltaApplicationService deltaApplicationService;
+
+    @Autowired
+    private ProgressTrackingService progressTrackingService;
+
+    @Autowired
+    private TransferLogService transferLogService;
+
+    @Autowired
+    private SyncIndexService syncIndexService;
+
+    @Value("${app.transfer.workers:4}")
+    private int ioThreadsPerDevice;
+
+    @Value("${app.pipeline.hash-threads:0}")
+    private int hashThreads;
+
+    @Value("${app.pipeline.queue-capacity:32}")
+    private int queueCapacity;
+
+    // Changed blocks buffered between the reader and the writer of one file
+    @Value("${app.pipeline.stream-buffer-blocks:64}")
+    private int streamBufferBlocks;
+
+    // Runs with at least this many files preload the latest snapshot of every file in one query;
+    // smaller ones (e.g. continuous backup batches) look each file up on its own
+    @Value("${app.pipeline.snapshot-preload-min-files:1000}")
+    private int snapshotPreloadMinFiles;
+
+    // Relative paths currently owned by the pipeline
+    private final Set<String> inFlightPaths = ConcurrentHashMap.newKeySet();
+
+    // Most recent run, kept so its stage statistics can be inspected after it finishes
+    private volatile PipelineRun lastRun;
+
+    /**
+     * Push the given files through the pipeline and wait until all of them have completed.
+     * Per-file results are handed to the results sink as files finish, from any stage thread.
+     */
+    public void execute(List<Path> files, Path sourceBase, Path targetBase,
+                        TransferOperation operation, Consumer<String> results) throws InterruptedException {
+        execute(files, sourceBase, targetBase, operation, results, failedFile -> {});
+    }
+
+    /**
+     * Like execute, also handing the source path of every file that failed to failedFiles
+     */
+    public void execute(List<Path> files, Path sourceBase, Path targetBase, TransferOperation operation,
+                        Consumer<String> results, Consumer<Path> failedFiles) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        LatestSnapshots latestSnapshots = files.size() >= snapshotPreloadMinFiles
+            ? snapshotService.loadLatestSnapshots() : null;
+        PipelineRun run = new PipelineRun(sourceBase, targetBase, operation, latestSnapshots, results, failedFiles,
+            Math.max(1, ioThreadsPerDevice), hashThreads > 0 ? hashThreads : cores, Math.max(1, queueCapacity));
+        lastRun = run;
+
+        try {
+            run.execute(files);
+        } finally {
+            run.shutdown();
+            for (StageStatistics stage : run.getStatistics()) {
+                logger.info("Pipeline stage {}: {} threads, {} processed, {}% utilised",
+                    stage.getStage(), stage.getThreads(), stage.getProcessed(),
+                    String.format("%.1f", stage.getUtilisation()));
+            }
+        }
+    }
+
+    /**
+     * Per-stage queue depth and utilisation of the current (or last) run
+     */
+    public List<StageStatistics> getStageStatistics() {
+        PipelineRun run = lastRun;
+        return run != null ? run.getStatistics() : Collections.emptyList();
+    }
+
+    /**
+     * State of one pipeline run: its stages and completion tracking
+     */
+    private class PipelineRun {
+        private final Path sourceBase;
+        private final Path targetBase;
+        private final TransferOperation operation;
+        private final LatestSnapshots latestSnapshots; // null when files are looked up one by one
+        private final Consumer<String> results;
+        private final Consumer<Path> failedFiles;
+
+        private final Stage scanStage;
+        private final Stage hashStage;
+        private final Stage writeStage;
+        private final Stage persistStage;
+
+        // One permit is released for every file that leaves the pipeline
+        private final Semaphore completions = new Semaphore(0);
+        private final AtomicInteger completed = new AtomicInteger(0);
+        private final long startNanos = System.nanoTime();
+
+        PipelineRun(Path sourceBase, Path targetBase, TransferOperation operation, LatestSnapshots latestSnapshots,
+                    Consumer<String> results, Consumer<Path> failedFiles, int ioThreads, int hashThreads,
+                    int queueCapacity) {
+            this.sourceBase = sourceBase;
+            this.targetBase = targetBase;
+            this.operation = operation;
+            this.latestSnapshots = latestSnapshots;
+            this.results = results;
+            this.failedFiles = failedFiles;
+
+            this.scanStage = new Stage("scan", ioThreads, queueCapacity, this::scan);
+            this.hashStage = new Stage("hash", hashThreads, queueCapacity, this::hash);
+            this.writeStage = new Stage("write", ioThreads, queueCapacity, this::write);
+            this.persistStage = new Stage("persist", 1, queueCapacity, this::persist);
+        }
+
+        void execute(List<Path> files) throws InterruptedException {
+            for (Path sourceFile : files) {
+                scanStage.submit(new FileTask(sourceFile, sourceBase.relativize(sourceFile).toString()));
+            }
+            completions.acquire(files.size());
+        }
+
+        void shutdown() {
+            for (Stage stage : stages()) {
+                stage.executor.shutdownNow();
+            }
+            // Idle workers exit as soon as they are interrupted; wait so the final statistics are complete
+            for (Stage stage : stages()) {
+                try {
+                    stage.executor.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        List<StageStatistics> getStatistics() {
+            long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+            List<StageStatistics> statistics = new ArrayList<>();
+            for (Stage stage : stages()) {
+                statistics.add(stage.statistics(elapsedNanos));
+            }
+            return statistics;
+        }
+
+        private List<Stage> stages() {
+            return List.of(scanStage, hashStage, writeStage, persistStage);
+        }
+
+        /**
+         * Decide whether a file needs a transfer at all
+         */
+        private void scan(FileTask task) throws Exception {
+            // Never let two workers touch the same relative path
+            if (!inFlightPaths.add(task.relativePath)) {
+                task.claimed = false;
+                logger.warn("Skipping {}: already being processed", task.relativePath);
+                complete(task, String.format("○ %s (already in progress)", task.relativePath), "Unchanged");
+                return;
+            }
+
+            task.targetFile = targetBase.resolve(task.relativePath);
+            task.fileSize = Files.exists(task.sourceFile) ? Files.size(task.sourceFile) : 0;
+
+            boolean targetExists = Files.exists(task.targetFile);
+            task.latestSnapshot = latestSnapshots != null
+                ? latestSnapshots.get(task.relativePath)
+                : snapshotService.getLatestSnapshotEntry(task.relativePath);
+            boolean snapshotIndicatesTransfer = snapshotService.needsTransfer(task.sourceFile, task.relativePath, task.latestSnapshot);
+
+            logger.debug("Processing file {}: targetExists={}, snapshotIndicatesTransfer={}, fullMode={}",
+                         task.relativePath, targetExists, snapshotIndicatesTransfer, operation.isFullMode());
+
+            if (operation.isFullMode() || snapshotIndicatesTransfer || !targetExists) {
+                task.reason = !targetExists ? "target missing" :
+                              snapshotIndicatesTransfer ? "content changed" : "full mode";
+                hashStage.submit(task);
+            } else {
+                complete(task, String.format("○ %s (unchanged)", task.relativePath), "Unchanged");
+            }
+        }
+
+        /**
+         * Hash the source file, diff it against the old snapshot and build the new snapshot, in one read.
+         * The file is handed to the write stage first, and its changed blocks are streamed to the
+         * writer through a bounded channel while they are read.
+         */
+        private void hash(FileTask task) {
+            // With nothing to diff against, every block changes: the writer copies the file
+            // kernel-side while it is hashed here
+            task.wholeFile = task.latestSnapshot == null || !Files.exists(task.targetFile);
+            // Block hashes of the old snapshot are only fetched when there is something to diff
+            FileSnapshot oldSnapshot = task.wholeFile ? null : snapshotService.loadSnapshot(task.latestSnapshot);
+
+            BlockDeltaChannel changedBlocks = new BlockDeltaChannel(Math.max(1, streamBufferBlocks));
+            task.changedBlocks = changedBlocks;
+            writeStage.submit(task);
+
+            // From here on the write stage owns the task and reports any failure
+            try {
+                changedBlocks.complete(task.wholeFile
+                    ? deltaCalculationService.hashNewFile(task.sourceFile, task.relativePath)
+                    : deltaCalculationService.calculateDelta(task.sourceFile, oldSnapshot, task.relativePath, changedBlocks));
+            } catch (Exception e) {
+                changedBlocks.fail(e);
+            }
+        }
+
+        /**
+         * Apply the delta to the target file as its blocks arrive, or copy the whole file
+         */
+        private void write(FileTask task) {
+            task.delta = task.wholeFile
+                ? deltaApplicationService.copyFile(task.sourceFile, task.targetFile, task.changedBlocks)
+                : deltaApplicationService.applyDelta(task.targetFile, task.changedBlocks);
+            task.newSnapshot = task.delta.getSourceSnapshot();
+            task.changedBlocks = null;
+            persistStage.submit(task);
+        }
+
+        /**
+         * Record the outcome of a file; the only stage that writes to the database.
+         * Does not wait for the commit, so the writer can group the rows of many files.
+         */
+        private void persist(FileTask task) {
+            if (task.error != null) {
+                String errorResult = String.format("✗ ERROR: %s - %s", task.relativePath, task.error.getMessage());
+                databaseWriter.submit(() -> {
+                    transferLogService.logTransferError(task.sourceFile.toString(), task.error.getMessage());
+                    return null;
+                }).whenComplete((ignored, e) -> completeFailed(task, errorResult));
+                return;
+            }
+
+            databaseWriter.submit(() -> {
+                snapshotService.saveSnapshot(task.newSnapshot);
+                transferLogService.logTransfer(task.relativePath, task.newSnapshot, task.delta);
+                return null;
+            }).whenComplete((ignored, e) -> {
+                if (e != null) {
+                    logger.error("Error saving snapshot of file: {}", task.sourceFile, e);
+                    completeFailed(task, String.format("✗ ERROR: %s - %s", task.relativePath, e.getMessage()));
+                } else {
+                    syncIndexService.recordInSync(task.relativePath, task.newSnapshot.getFileHash());
+                    complete(task, String.format("✓ %s (%.1f%% efficiency) [%s]",
+                        task.relativePath, task.delta.getEfficiencyPercentage(), task.reason), "Transferred");
+                }
+            });
+        }
+
+        /**
+         * Complete a file whose transfer failed. It may have left the target partly written.
+         */
+        private void completeFailed(FileTask task, String result) {
+            try {
+                syncIndexService.recordChanged(
+                    operation.isDcToDr() ? DirectoryMerkleTree.Side.DR : DirectoryMerkleTree.Side.DC, task.relativePath);
+                failedFiles.accept(task.sourceFile);
+            } finally {
+                complete(task, result, "Processed");
+            }
+        }
+
+        /**
+         * Route a failed file to the persist stage so its error is logged by the DB writer
+         */
+        private void fail(Stage stage, FileTask task, Exception e) {
+            logger.error("Error processing file: {}", task.sourceFile, e);
+            if (stage == persistStage || task.error != null) {
+                completeFailed(task, String.format("✗ ERROR: %s - %s", task.relativePath, e.getMessage()));
+                return;
+            }
+            task.error = e;
+            persistStage.submit(task);
+        }
+
+        /**
+         * Record the final result of a file and release its path
+         */
+        private void complete(FileTask task, String result, String status) {
+            try {
+                results.accept(result);
+                progressTrackingService.updateFileProgress(task.relativePath, status, task.fileSize);
+            } finally {
+                if (task.claimed) {
+                    inFlightPaths.remove(task.relativePath);
+                }
+                task.delta = null;
+                task.changedBlocks = null;
+                int done = completed.incrementAndGet();
+                if (done % 10 == 0) {
+                    logger.info("Processed {} files", done);
+                }
+                completions.release();
+            }
+        }
+
+        /**
+         * A pipeline stage: a fixed set of worker threads draining a bounded queue
+         */
+        private class Stage {
+            private final String name;
+            private final int threads;
+            private final BlockingQueue<FileTask> queue;
+            private final ExecutorService executor;
+            private final StageWork work;
+            private final AtomicInteger active = new AtomicInteger(0);
+            private final AtomicLong processed = new AtomicLong(0);
+            private final LongAdder busyNanos = new LongAdder();
+
+            Stage(String name, int threads, int queueCapacity, StageWork work) {
+                this.name = name;
+                this.threads = threads;
+                this.queue = new ArrayBlockingQueue<>(queueCapacity);
+                this.work = work;
+
+                AtomicInteger counter = new AtomicInteger(0);
+                this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                    Thread thread = new Thread(runnable, "pipeline-" + name + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                for (int i = 0; i < threads; i++) {
+                    executor.execute(this::drain);
+                }
+            }
+
+            /**
+             * Enqueue a task, blocking while the queue is full
+             */
+            void submit(FileTask task) {
+                try {
+                    queue.put(task);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while queueing " + task.relativePath + " for " + name, e);
+                }
+            }
+
+            private void drain() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    FileTask task;
+                    try {
+                        task = queue.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    long start = System.nanoTime();
+                    active.incrementAndGet();
+                    try {
+                        work.process(task);
+                    } catch (Exception e) {
+                        fail(this, task, e);
+                    } finally {
+                        active.decrementAndGet();
+                        processed.incrementAndGet();
+                        busyNanos.add(System.nanoTime() - start);
+                    }
+                }
+            }
+
+            StageStatistics statistics(long elapsedNanos) {
+                double utilisation = (double) busyNanos.sum() / ((double) elapsedNanos * threads) * 100.0;
+                return new StageStatistics(name, threads, queue.size(), queue.size() + queue.remainingCapacity(),
+                    active.get(), processed.get(), Math.min(100.0, utilisation));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StageWork {
+        void process(FileTask task) throws Exception;
+    }
+
+    /**
+     * Work item carrying one file through the stages
+     */
+    private static class FileTask {
+        private final Path sourceFile;
+        private final String relativePath;
+        private Path targetFile;
+        private long fileSize;
+        private String reason;
+        private LatestSnapshots.Entry latestSnapshot;
+        private BlockDeltaChannel changedBlocks;
+        private boolean wholeFile;
+        private FileDelta delta;
+        private FileSnapshot newSnapshot;
+        private Exception error;
+        private boolean claimed = true;
+
+        FileTask(Path sourceFile, String relativePath) {
+            this.sourceFile = sourceFile;
+            this.relativePath = relativePath;
+        }
+    }
+
+    /**
+     * Point-in-time view of one stage, used to find the bottleneck
+     */
+    public static class StageStatistics {
+        private final String stage;
+        private final int threads;
+        private final int queueDepth;
+        private final int queueCapacity;
+        private final int activeWorkers;
+        private final long processed;
+        private final double utilisation;
+
+        public StageStatistics(String stage, int threads, int queueDepth, int queueCapacity,
+                               int activeWorkers, long processed, double utilisation) {
+            this.stage = stage;
+            this.threads = threads;
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+            this.activeWorkers = activeWorkers;
+            this.processed = processed;
+            this.utilisation = utilisation;
+        }
+
+        public String getStage() { return stage; }
+        public int getThreads() { return threads; }
+        public int getQueueDepth() { return queueDepth; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public int getActiveWorkers() { return activeWorkers; }
+        public long getProcessed() { return processed; }
+        public double getUtilisation() { return utilisation; }
+    }
+}
@@ -1,6 +1,5 @@
 package com.pratham.backuputility.service;
 
-import com.pratham.backuputility.entity.FileSnapshotEntity;
 import com.pratham.backuputility.model.*;
 import com.pratham.backuputility.util.FileSystemUtil;
 import org.slf4j.Logger;
@@ -9,12 +8,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Main transfer service that orchestrates all transfer operations
@@ -39,16 +38,16 @@ public class TransferService {
     private FileDetectionService fileDetectionService;
 
     @Autowired
-    private DeltaCalculationService deltaCalculationService;
+    private ProgressTrackingService progressTrackingService;
 
     @Autowired
-    private DeltaApplicationService deltaApplicationService;
+    private TransferLogService transferLogService;
 
     @Autowired
-    private ProgressTrackingService progressTrackingService;
+    private TransferPipelineService transferPipelineService;
 
     @Autowired
-    private TransferLogService transferLogService;
+    private SyncIndexService syncIndexService;
 
     // State management
     private final AtomicBoolean transferInProgress = new AtomicBoolean(false);
@@ -68,8 +67,19 @@ public class TransferService {
      * Perform transfer operation
      */
     public List<String> performTransfer(String direction, String mode) {
+        List<String> results = Collections.synchronizedList(new ArrayList<>());
+        performTransfer(direction, mode, results::add);
+        return results;
+    }
+
+    /**
+     * Perform transfer operation, streaming each result line to the given sink as it is produced.
+     * The sink may be called from several pipeline threads at once.
+     */
+    public void performTransfer(String direction, String mode, Consumer<String> results) {
         if (!transferInProgress.compareAndSet(false, true)) {
-            return Arrays.asList("Transfer already in progress");
+            results.accept("Transfer already in progress");
+            return;
         }
 
         try {
@@ -82,22 +92,51 @@ public class TransferService {
 
             TransferOperation operation = new TransferOperation(dir, transferMode, sourcePath, targetPath);
 
-            return executeTransfer(operation);
+            executeTransfer(operation, results);
 
         } catch (Exception e) {
             logger.error("Transfer failed", e);
-            return Arrays.asList("Transfer failed: " + e.getMessage());
+            results.accept("Transfer failed: " + e.getMessage());
         } finally {
             transferInProgress.set(false);
         }
     }
 
     /**
-     * Execute the transfer operation
+     * Incrementally transfer an explicit set of DC files to DR, without scanning either tree.
+     * Files must be absolute, normalized paths under app.dc-path. Every file that failed is
+     * handed to failedFiles; if the run itself fails, all of them are.
+     * Returns false if another transfer was already running and nothing was done.
      */
-    private List<String> executeTransfer(TransferOperation operation) {
-        List<String> results = new ArrayList<>();
+    public boolean performFileTransfer(List<Path> files, Consumer<String> results, Consumer<Path> failedFiles) {
+        if (!transferInProgress.compareAndSet(false, true)) {
+            return false;
+        }
 
+        try {
+            TransferOperation operation = new TransferOperation(
+                TransferOperation.Direction.DC_TO_DR, TransferOperation.Mode.INCREMENTAL, dcPath, drPath);
+            long totalBytes = FileSystemUtil.calculateTotalBytes(files);
+
+            progressTrackingService.startProgress(files.size(), totalBytes, operation.getDirection().toString());
+            transferPipelineService.execute(files, Paths.get(dcPath).toAbsolutePath().normalize(),
+                Paths.get(drPath).toAbsolutePath().normalize(), operation, results, failedFiles);
+            progressTrackingService.finishProgress("Transfer completed successfully");
+        } catch (Exception e) {
+            logger.error("File transfer failed", e);
+            results.accept("✗ ERROR: " + e.getMessage());
+            files.forEach(failedFiles);
+            progressTrackingService.sendError(e.getMessage());
+        } finally {
+            transferInProgress.set(false);
+        }
+        return true;
+    }
+
+    /**
+     * Execute the transfer operation
+     */
+    private void executeTransfer(TransferOperation operation, Consumer<String> results) {
         try {
             Path sourceBase = Paths.get(operation.getSourcePathStr());
             Path targetBase = Paths.get(operation.getTargetPathStr());
@@ -107,11 +146,20 @@ public class TransferService {
                 cleanupOldSnapshotsForFullSync(sourceBase, operation.getDirection().toString());
             }
 
-            // Detect files to process
-            List<Path> files = detectFilesToProcess(sourceBase, targetBase, operation);
-            
-            // Calculate total bytes for progress tracking
-            long totalBytes = FileSystemUtil.calculateTotalBytes(files);
+            // Diff both trees once; transfers and deletions both come from this pass
+            TreeDiff diff = fileDetectionService.diffTrees(sourceBase, targetBase);
+
+            // Detect files to process and total bytes for progress tracking
+            List<Path> files = new ArrayList<>();
+            long totalBytes = 0;
+            Set<TreeDiffEntry> toProcess = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (TreeDiffEntry entry : detectFilesToProcess(diff, operation)) {
+                files.add(entry.getSourceFile());
+                totalBytes += entry.getSourceSize();
+                toProcess.add(entry);
+            }
+            diff.commitScanIndex();
+            rebuildSyncIndex(diff, toProcess, operation.isDcToDr());
             
             // Start progress tracking
             progressTrackingService.startProgress(files.size(), totalBytes, operation.getDirection().toString());
@@ -119,13 +167,17 @@ public class TransferService {
             logger.info("Starting {} transfer: {} files, {} bytes", 
                 operation.isFullMode() ? "full" : "incremental", files.size(), totalBytes);
 
-            // Process transfers
-            processFileTransfers(files, sourceBase, targetBase, operation, results);
+            // Process transfers through the staged pipeline
+            transferPipelineService.execute(files, sourceBase, targetBase, operation, results);
 
             // Handle deletions for full mode
             if (operation.isFullMode()) {
-                List<Path> filesToDelete = detectFilesToDelete(sourceBase, targetBase, operation);
-                processFileDeletions(filesToDelete, targetBase, results);
+                List<Path> filesToDelete = new ArrayList<>();
+                for (TreeDiffEntry entry : diff.getDeleted()) {
+                    filesToDelete.add(entry.getTargetFile());
+                }
+                logger.info("Found {} files to delete from target for full sync", filesToDelete.size());
+                processFileDeletions(filesToDelete, targetBase, targetSide(operation), results);
             }
 
             // Complete progress tracking
@@ -134,11 +186,9 @@ public class TransferService {
 
         } catch (Exception e) {
             logger.error("Transfer execution failed", e);
-            results.add("Transfer failed: " + e.getMessage());
+            results.accept("Transfer failed: " + e.getMessage());
             progressTrackingService.sendError(e.getMessage());
         }
-
-        return results;
     }
 
     /**
@@ -162,142 +212,55 @@ public class TransferService {
     /**
      * Detect files to process based on transfer mode
      */
-    private List<Path> detectFilesToProcess(Path sourceBase, Path targetBase, TransferOperation operation) {
-        if (operation.isFullMode()) {
-            return fileDetectionService.detectAllFiles(sourceBase);
-        } else {
-            return fileDetectionService.detectChangedFiles(sourceBase, targetBase);
-        }
-    }
-
-    /**
-     * Detect files that need to be deleted from target (for full sync)
-     */
-    private List<Path> detectFilesToDelete(Path sourceBase, Path targetBase, TransferOperation operation) {
-        List<Path> filesToDelete = new ArrayList<>();
-        
-        try {
-            // Get all files in target directory
-            List<Path> targetFiles = FileSystemUtil.getAllFiles(targetBase);
-            
-            // Get all files in source directory
-            List<Path> sourceFiles = FileSystemUtil.getAllFiles(sourceBase);
-            Set<String> sourceRelativePaths = new HashSet<>();
-            
-            for (Path sourceFile : sourceFiles) {
-                String relativePath = sourceBase.relativize(sourceFile).toString();
-                sourceRelativePaths.add(relativePath);
+    private List<TreeDiffEntry> detectFilesToProcess(TreeDiff diff, TransferOperation operation) {
+        List<TreeDiffEntry> entries = new ArrayList<>(diff.getAdded());
+        for (TreeDiffEntry entry : diff.getModifiedCandidates()) {
+            if (operation.isFullMode() || fileDetectionService.needsTransfer(entry)) {
+                entries.add(entry);
             }
-            
-            // Find target files that don't exist in source
-            for (Path targetFile : targetFiles) {
-                String relativePath = targetBase.relativize(targetFile).toString();
-                if (!sourceRelativePaths.contains(relativePath)) {
-                    filesToDelete.add(targetFile);
-                }
-            }
-            
-            logger.info("Found {} files to delete from target for full sync", filesToDelete.size());
-            
-        } catch (Exception e) {
-            logger.error("Failed to detect files to delete", e);
         }
-        
-        return filesToDelete;
+        logger.info("Detected {} files to process ({} new)", entries.size(), diff.getAdded().size());
+        return entries;
     }
 
     /**
-     * Process file transfers
+     * Rebuild the sync index from a transfer's tree diff; the files about to be
+     * transferred differ until the pipeline records them as copied
      */
-    private void processFileTransfers(List<Path> files, Path sourceBase, Path targetBase,
-                                    TransferOperation operation, List<String> results) {
-        int processed = 0;
-
-        for (Path sourceFile : files) {
-            try {
-                processed++;
-                String relativePath = sourceBase.relativize(sourceFile).toString();
-                Path targetFile = targetBase.resolve(relativePath);
-
-                String result = processFile(sourceFile, targetFile, relativePath, operation);
-                results.add(result);
-
-                // Update progress
-                long fileSize = Files.exists(sourceFile) ? Files.size(sourceFile) : 0;
-                String status = result.startsWith("✓") ? "Transferred" :
-                               result.startsWith("○") ? "Unchanged" : "Processed";
-
-                progressTrackingService.updateFileProgress(relativePath, status, fileSize);
-
-                if (processed % 10 == 0) {
-                    logger.info("Processed {}/{} files", processed, files.size());
-                }
-
-            } catch (Exception e) {
-                String error = String.format("✗ ERROR: %s - %s",
-                    sourceBase.relativize(sourceFile), e.getMessage());
-                results.add(error);
-                logger.error("Error processing file: {}", sourceFile, e);
-                transferLogService.logTransferError(sourceFile.toString(), e.getMessage());
-            }
+    private void rebuildSyncIndex(TreeDiff diff, Set<TreeDiffEntry> toProcess, boolean sourceIsDc) {
+        if (!syncIndexService.isEnabled()) {
+            return;
         }
+        SyncIndexService.Rebuild rebuild = syncIndexService.startRebuild(sourceIsDc);
+        for (TreeDiffEntry entry : diff.getAdded()) {
+            rebuild.add(entry, true);
+        }
+        for (TreeDiffEntry entry : diff.getModifiedCandidates()) {
+            rebuild.add(entry, toProcess.contains(entry));
+        }
+        for (TreeDiffEntry entry : diff.getDeleted()) {
+            rebuild.add(entry, true);
+        }
+        syncIndexService.install(rebuild);
     }
 
-    /**
-     * Process a single file transfer
-     */
-    /**
-     * Process a single file transfer
-     */
-    private String processFile(Path sourceFile, Path targetFile, String relativePath, TransferOperation operation) {
-        try {
-            // Check if target file exists - if not, we need to transfer regardless of snapshot comparison
-            boolean targetExists = Files.exists(targetFile);
-            boolean snapshotIndicatesTransfer = sqliteSnapshotService.needsTransfer(sourceFile, relativePath);
-            
-            logger.debug("Processing file {}: targetExists={}, snapshotIndicatesTransfer={}, fullMode={}", 
-                         relativePath, targetExists, snapshotIndicatesTransfer, operation.isFullMode());
-            
-            if (operation.isFullMode() || snapshotIndicatesTransfer || !targetExists) {
-                // Get the old snapshot for delta calculation
-                Optional<FileSnapshotEntity> oldSnapshotEntity = sqliteSnapshotService.getLatestSnapshot(relativePath);
-                FileSnapshot oldSnapshot = oldSnapshotEntity.map(sqliteSnapshotService::convertToModel).orElse(null);
-
-                // Calculate and apply delta
-                FileDelta delta = deltaCalculationService.calculateDelta(sourceFile, oldSnapshot, relativePath);
-                deltaApplicationService.applyDelta(targetFile, delta);
-
-                // Create and save new snapshot
-                FileSnapshotEntity newSnapshotEntity = sqliteSnapshotService.createAndSaveSnapshot(sourceFile, relativePath);
-                FileSnapshot newSnapshot = sqliteSnapshotService.convertToModel(newSnapshotEntity);
-
-                // Log the transfer
-                transferLogService.logTransfer(relativePath, newSnapshot, delta);
-
-                String reason = !targetExists ? "target missing" : 
-                              snapshotIndicatesTransfer ? "content changed" : "full mode";
-                return String.format("✓ %s (%.1f%% efficiency) [%s]", relativePath, delta.getEfficiencyPercentage(), reason);
-            } else {
-                return String.format("○ %s (unchanged)", relativePath);
-            }
-
-        } catch (Exception e) {
-            logger.error("Failed to process file: {}", sourceFile, e);
-            throw new RuntimeException("File processing failed", e);
-        }
+    private static DirectoryMerkleTree.Side targetSide(TransferOperation operation) {
+        return operation.isDcToDr() ? DirectoryMerkleTree.Side.DR : DirectoryMerkleTree.Side.DC;
     }
 
     /**
      * Process file deletions
      */
-    private void processFileDeletions(List<Path> filesToDelete, Path targetBase, List<String> results) {
+    private void processFileDeletions(List<Path> filesToDelete, Path targetBase, DirectoryMerkleTree.Side targetSide,
+                                      Consumer<String> results) {
         for (Path targetFile : filesToDelete) {
             try {
                 String relativePath = targetBase.relativize(targetFile).toString();
                 
                 if (Files.exists(targetFile)) {
                     Files.delete(targetFile);
-                    results.add(String.format("✗ Deleted: %s", relativePath));
+                    syncIndexService.recordDeleted(targetSide, relativePath);
+                    results.accept(String.format("✗ Deleted: %s", relativePath));
                     logger.info("Deleted file: {}", relativePath);
                     
                     // Log the deletion
@@ -307,7 +270,7 @@ public class TransferService {
             } catch (Exception e) {
                 String error = String.format("✗ ERROR deleting %s: %s", 
                     targetBase.relativize(targetFile), e.getMessage());
-                results.add(error);
+                results.accept(error);
                 logger.error("Failed to delete file: {}", targetFile, e);
             }
         }
@@ -331,84 +294,8 @@ public class TransferService {
                 return status;
             }
 
-            // Get all files from both directories
-            List<Path> dcFiles = FileSystemUtil.getAllFiles(dcBase);
-            List<Path> drFiles = FileSystemUtil.getAllFiles(drBase);
-
-            logger.info("Found {} files in DC and {} files in DR", dcFiles.size(), drFiles.size());
-
-            // Create sets of relative paths for comparison
-            Set<String> dcRelativePaths = new HashSet<>();
-            Set<String> drRelativePaths = new HashSet<>();
-            
-            for (Path dcFile : dcFiles) {
-                dcRelativePaths.add(dcBase.relativize(dcFile).toString());
-            }
-            
-            for (Path drFile : drFiles) {
-                drRelativePaths.add(drBase.relativize(drFile).toString());
-            }
-
-            // Find files that need synchronization
-            Set<String> outOfSyncFiles = new HashSet<>();
-            
-            logger.info("DC has {} files, DR has {} files", dcFiles.size(), drFiles.size());
-            
-            // Check DC files that are missing in DR or different
-            for (Path dcFile : dcFiles) {
-                String relativePath = dcBase.relativize(dcFile).toString();
-                Path correspondingDrFile = drBase.resolve(relativePath);
-                
-                boolean needsSync = false;
-                String reason = "";
-                
-                if (!Files.exists(correspondingDrFile)) {
-                    needsSync = true;
-                    reason = "missing in DR";
-                } else if (needsTransfer(dcFile, correspondingDrFile)) {
-                    needsSync = true;
-                    reason = "content different";
-                }
-                
-                if (needsSync) {
-                    outOfSyncFiles.add(relativePath);
-                    logger.info("File {} needs sync: {}", relativePath, reason);
-                }
-            }
-            
-            logger.info("Found {} DC files that need sync", outOfSyncFiles.size());
-            
-            // Check DR files that are missing in DC
-            int drOnlyFiles = 0;
-            for (Path drFile : drFiles) {
-                String relativePath = drBase.relativize(drFile).toString();
-                Path correspondingDcFile = dcBase.resolve(relativePath);
-                
-                if (!Files.exists(correspondingDcFile)) {
-                    outOfSyncFiles.add(relativePath);
-                    drOnlyFiles++;
-                    logger.info("File {} exists in DR but not in DC", relativePath);
-                }
-            }
-            
-            logger.info("Found {} DR-only files", drOnlyFiles);
-
-            // Calculate totals
-            Set<String> allUniqueFiles = new HashSet<>();
-            allUniqueFiles.addAll(dcRelativePaths);
-            allUniqueFiles.addAll(drRelativePaths);
-            
-            int totalUniqueFiles = allUniqueFiles.size();
-            int outOfSyncCount = outOfSyncFiles.size();
-            int syncedFiles = Math.max(0, totalUniqueFiles - outOfSyncCount);
-
-            logger.info("Sync status: {} total files, {} out of sync, {} synced", 
-                totalUniqueFiles, outOfSyncCount, syncedFiles);
-
-            status.put("synced_files", String.valueOf(syncedFiles));
-            status.put("out_of_sync_files", String.valueOf(outOfSyncCount));
-            status.put("total_snapshots", String.valueOf(sqliteSnapshotService.getStatistics().getTotalSnapshots()));
-            status.put("mode", "Incremental (DC→DR), Full (DR→DC)");
+            DirectoryMerkleTree.Comparison comparison = syncIndexService.compare(0);
+            status.putAll(comparison != null ? summarise(comparison) : compareDcAndDr(dcBase, drBase, null));
 
         } catch (Exception e) {
             status.put("error", "Failed to check sync: " + e.getMessage());
@@ -419,30 +306,71 @@ public class TransferService {
     }
 
     /**
-     * Helper method to check if a file needs transfer (fast sample-based comparison)
+     * Compare DC and DR in one tree diff pass and summarise the result.
+     * When fileStatuses is given, the out-of-sync files are recorded in it as well.
      */
-    private boolean needsTransfer(Path sourceFile, Path targetFile) {
-        try {
-            if (!Files.exists(targetFile)) {
-                logger.debug("File {} needs transfer: target doesn't exist", sourceFile.getFileName());
-                return true;
+    private Map<String, String> compareDcAndDr(Path dcBase, Path drBase, Map<String, String> fileStatuses) {
+        int[] counts = new int[4]; // total, missing in DR, different, missing in DC
+        SyncIndexService.Rebuild rebuild = syncIndexService.startRebuild(true);
+
+        fileDetectionService.diffTrees(dcBase, drBase, entry -> {
+            counts[0]++;
+            String fileStatus = null;
+
+            switch (entry.getType()) {
+                case ADDED:
+                    counts[1]++;
+                    fileStatus = "MISSING_IN_DR";
+                    logger.info("File {} needs sync: missing in DR", entry.getRelativePath());
+                    break;
+                case DELETED:
+                    counts[3]++;
+                    fileStatus = "MISSING_IN_DC";
+                    logger.info("File {} exists in DR but not in DC", entry.getRelativePath());
+                    break;
+                default:
+                    if (fileDetectionService.needsTransfer(entry)) {
+                        counts[2]++;
+                        fileStatus = "MISMATCH";
+                        logger.info("File {} needs sync: content different", entry.getRelativePath());
+                    }
             }
 
-            // Use fast sample-based comparison
-            boolean different = FileSystemUtil.areFilesDifferent(sourceFile, targetFile);
-            
-            if (different) {
-                logger.debug("File {} needs transfer: content different", sourceFile.getFileName());
-            } else {
-                logger.debug("File {} is identical", sourceFile.getFileName());
+            if (fileStatus != null && fileStatuses != null) {
+                fileStatuses.put(entry.getRelativePath(), fileStatus);
             }
-            
-            return different;
+            rebuild.add(entry, fileStatus != null);
+        });
+        syncIndexService.install(rebuild);
 
-        } catch (Exception e) {
-            logger.warn("Error comparing files {} and {}: {}", sourceFile, targetFile, e.getMessage());
-            return true; // Assume transfer needed if we can't compare
-        }
+        int totalUniqueFiles = counts[0];
+        int outOfSyncCount = counts[1] + counts[2] + counts[3];
+        int syncedFiles = Math.max(0, totalUniqueFiles - outOfSyncCount);
+
+        logger.info("Sync status: {} total files, {} out of sync ({} missing in DR, {} different, {} DR-only), {} synced",
+            totalUniqueFiles, outOfSyncCount, counts[1], counts[2], counts[3], syncedFiles);
+
+        return statusMap(syncedFiles, outOfSyncCount, "scan");
+    }
+
+    /**
+     * Summarise a comparison of the sync index the way compareDcAndDr summarises a scan
+     */
+    private Map<String, String> summarise(DirectoryMerkleTree.Comparison comparison) {
+        logger.debug("Sync status from index: {} files, {} out of sync, {} directories visited, {} subtrees skipped",
+            comparison.getTotalFiles(), comparison.getOutOfSync(),
+            comparison.getDirectoriesVisited(), comparison.getSubtreesSkipped());
+        return statusMap(comparison.getTotalFiles() - comparison.getOutOfSync(), comparison.getOutOfSync(), "index");
+    }
+
+    private Map<String, String> statusMap(long syncedFiles, long outOfSyncCount, String checkedBy) {
+        Map<String, String> status = new LinkedHashMap<>();
+        status.put("synced_files", String.valueOf(syncedFiles));
+        status.put("out_of_sync_files", String.valueOf(outOfSyncCount));
+        status.put("total_snapshots", String.valueOf(sqliteSnapshotService.countSnapshots()));
+        status.put("mode", "Incremental (DC→DR), Full (DR→DC)");
+        status.put("checked_by", checkedBy);
+        return status;
     }
 
     /**
@@ -461,36 +389,30 @@ public class TransferService {
                 return result;
             }
 
-            // Get basic status
-            result.putAll(getSyncStatus());
-
-            // Get file-level status
-            List<Path> dcChangedFiles = fileDetectionService.detectChangedFiles(dcBase, drBase);
-            List<Path> drChangedFiles = fileDetectionService.detectChangedFiles(drBase, dcBase);
-
-            // Add file statuses using traditional loops to avoid lambda issues
-            for (Path f : dcChangedFiles) {
-                String relativePath = dcBase.relativize(f).toString();
-                fileStatuses.put(relativePath, "MISSING_IN_DR");
-            }
-
-            for (Path f : drChangedFiles) {
-                String relativePath = drBase.relativize(f).toString();
-                fileStatuses.put(relativePath, "MISSING_IN_DC");
+            // Summary and file-level status from the same pass
+            DirectoryMerkleTree.Comparison comparison = syncIndexService.compare(50);
+            long outOfSync;
+            if (comparison != null) {
+                result.putAll(summarise(comparison));
+                comparison.getFiles().forEach((path, status) -> fileStatuses.put(path, status.name()));
+                outOfSync = comparison.getOutOfSync();
+            } else {
+                result.putAll(compareDcAndDr(dcBase, drBase, fileStatuses));
+                outOfSync = fileStatuses.size();
             }
 
             // Limit results for UI
-            if (fileStatuses.size() > 50) {
+            if (outOfSync > 50) {
                 Map<String, String> limitedStatuses = new LinkedHashMap<>();
                 fileStatuses.entrySet().stream()
                     .limit(50)
                     .forEach(entry -> limitedStatuses.put(entry.getKey(), entry.getValue()));
-                limitedStatuses.put("...", String.format("... and %d more files", fileStatuses.size() - 50));
-                fileStatuses = limitedStatuses;
+                limitedStatuses.put("...", String.format("... and %d more files", outOfSync - 50));
+                result.put("files", limitedStatuses);
+            } else {
+                result.put("files", fileStatuses);
             }
 
-            result.put("files", fileStatuses);
-
         } catch (Exception e) {
             result.put("error", "Failed to get detailed sync status: " + e.getMessage());
             logger.error("Failed to get detailed sync status", e);
@@ -499,6 +421,34 @@ public class TransferService {
         return result;
     }
 
+    /**
+     * Compare the DC or DR copy of a file with the file's latest snapshot, block by block.
+     * The copy is hashed the way the snapshot was and the two Merkle trees are compared
+     * from the root, so only the branches that differ are descended.
+     */
+    public SQLiteSnapshotService.SnapshotDiff verifyCopy(String relativePath, String side) {
+        String basePath = switch (side.toLowerCase(Locale.ROOT)) {
+            case "dc" -> dcPath;
+            case "dr" -> drPath;
+            default -> throw new IllegalArgumentException("Side must be dc or dr, not " + side);
+        };
+        Path base = Paths.get(basePath).toAbsolutePath().normalize();
+        Path file = base.resolve(relativePath).normalize();
+        if (!file.startsWith(base) || !Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("No file " + relativePath + " in " + side);
+        }
+        LatestSnapshots.Entry entry = sqliteSnapshotService.getLatestSnapshotEntry(relativePath);
+        if (entry == null) {
+            throw new IllegalArgumentException("No snapshot of " + relativePath);
+        }
+
+        FileSnapshot snapshot = sqliteSnapshotService.loadSnapshot(entry);
+        MerkleTree snapshotTree = sqliteSnapshotService.getMerkleTree(entry.getSnapshotId(), snapshot.getBlockHashes());
+        MerkleTree copyTree = sqliteSnapshotService.computeMerkleTree(file, snapshot.getBlockHashAlgorithm(),
+            snapshot.getBlockSize());
+        return new SQLiteSnapshotService.SnapshotDiff(relativePath, snapshot.getBlockSize(), snapshotTree.diff(copyTree));
+    }
+
     /**
      * Check if transfer is in progress
      */
@@ -0,0 +1,108 @@
+package com.pratham.backuputility.util;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Algorithms for per-block change detection.
+ *
+ * Block hashes only decide which blocks to send, so a fast non-cryptographic
+ * fingerprint is enough; whole-file hashes stay SHA-256. Every snapshot records
+ * the algorithm its block hashes were made with.
+ */
+public enum BlockHashAlgorithm {
+    SHA256(HashUtil.SHA256_LENGTH) {
+        @Override
+        public void hash(byte[] data, int length, byte[] out, int offset) {
+            HashUtil.sha256(data, 0, length, out, offset);
+        }
+
+        @Override
+        public void hash(ByteBuffer data, byte[] out, int offset) {
+            HashUtil.sha256(data.duplicate(), out, offset);
+        }
+    },
+
+    XXHASH64(8) {
+        @Override
+        public long hashToLong(byte[] data, int length) {
+            return HashUtil.xxHash64(data, 0, length);
+        }
+
+        @Override
+        public long hashToLong(ByteBuffer data) {
+            return HashUtil.xxHash64(data);
+        }
+    },
+
+    CRC32C(4) {
+        @Override
+        public long hashToLong(byte[] data, int length) {
+            return HashUtil.crc32c(data, 0, length);
+        }
+
+        @Override
+        public long hashToLong(ByteBuffer data) {
+            return HashUtil.crc32c(data);
+        }
+    };
+
+    private final int hashLength;
+
+    BlockHashAlgorithm(int hashLength) {
+        this.hashLength = hashLength;
+    }
+
+    /**
+     * Size of one hash in bytes
+     */
+    public int getHashLength() {
+        return hashLength;
+    }
+
+    /**
+     * Whether hashes fit in a long, so hashToLong can be used
+     */
+    public boolean fitsInLong() {
+        return hashLength <= Long.BYTES;
+    }
+
+    /**
+     * Hash the first length bytes of a block as a long; only for algorithms that fit in one
+     */
+    public long hashToLong(byte[] data, int length) {
+        throw new UnsupportedOperationException(name() + " hashes do not fit in a long");
+    }
+
+    /**
+     * Hash the remaining bytes of a block as a long, leaving its position unchanged
+     */
+    public long hashToLong(ByteBuffer data) {
+        throw new UnsupportedOperationException(name() + " hashes do not fit in a long");
+    }
+
+    /**
+     * Hash the first length bytes of a block into out at offset, most significant byte first
+     */
+    public void hash(byte[] data, int length, byte[] out, int offset) {
+        HashUtil.putLong(hashToLong(data, length), out, offset, hashLength);
+    }
+
+    /**
+     * Hash the remaining bytes of a block into out at offset, leaving its position unchanged
+     */
+    public void hash(ByteBuffer data, byte[] out, int offset) {
+        HashUtil.putLong(hashToLong(data), out, offset, hashLength);
+    }
+
+    /**
+     * Parse a configured or stored name such as "xxhash64" or "SHA-256".
+     * Snapshots written before the algorithm was recorded have no name and used SHA-256.
+     */
+    public static BlockHashAlgorithm fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return SHA256;
+        }
+        return valueOf(name.trim().replace("-", "").toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,50 @@
+package com.pratham.backuputility.util;
+
+import java.util.Locale;
+
+/**
+ * How an incremental transfer finds the parts of a file that changed.
+ */
+public enum DeltaAlgorithm {
+    /**
+     * Compare blocks at the same index and rewrite changed ones in place.
+     * Cheap, but an inserted or deleted byte shifts every later block and makes it differ.
+     */
+    BLOCK,
+
+    /**
+     * rsync-style: look up old blocks at any offset of the new file by weak rolling
+     * checksum, confirmed by block hash, and rebuild the target from COPY and LITERAL
+     * instructions in a temporary file. Survives inserted and shifted bytes.
+     */
+    ROLLING,
+
+    /**
+     * Content-defined chunking (FastCDC): cut files into variable-length chunks at
+     * content-dependent boundaries and resend only chunks whose hash is new. Fewer,
+     * larger chunks than fixed blocks, and edits in the middle of a file only change
+     * the chunks around them. Rebuilds the target like ROLLING.
+     */
+    CDC;
+
+    /**
+     * Whether snapshots should keep the weak rolling checksum of every block
+     */
+    public boolean needsWeakSums() {
+        return this == ROLLING;
+    }
+
+    /**
+     * Whether snapshots are cut into content-defined chunks instead of fixed-size blocks
+     */
+    public boolean isChunked() {
+        return this == CDC;
+    }
+
+    public static DeltaAlgorithm fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return BLOCK;
+        }
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
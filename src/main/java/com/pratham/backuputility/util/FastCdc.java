@@ -0,0 +1,123 @@
+package com.pratham.backuputility.util;
+
+import java.io.InputStream;
+
+/**
+ * Content-defined chunking with FastCDC (Gear hash with normalized chunking).
+ *
+ * A cut point is placed where the Gear hash of the last bytes matches a mask, so
+ * boundaries depend on the content around them rather than on file offsets: an
+ * insert or delete only changes the chunks it touches, and the rest of the file
+ * is cut exactly as before. Chunks are min..max bytes long, about avg on average.
+ * Before avg bytes a stricter mask is used and after it a looser one, which pulls
+ * chunk sizes towards avg. No cut is looked for in the first min bytes.
+ *
+ * The Gear table is fixed, so the same content always gives the same chunks;
+ * stored snapshots depend on that.
+ */
+public final class FastCdc {
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // SplitMix64 from a fixed seed, spelled out so the table never changes
+        long state = 0x6A09E667F3BCC908L;
+        for (int i = 0; i < GEAR.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    // Masks on the top bits: each shift moves older bytes up, so these depend on the last 64 bytes
+    private final long strictMask;
+    private final long looseMask;
+
+    public FastCdc(int minSize, int avgSize, int maxSize) {
+        if (minSize < 64 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException(String.format(
+                "Invalid chunk sizes min=%d avg=%d max=%d: need 64 <= min <= avg <= max", minSize, avgSize, maxSize));
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        this.strictMask = topBits(bits + 1);
+        this.looseMask = topBits(bits - 1);
+    }
+
+    private static long topBits(int count) {
+        return count <= 0 ? 0 : -1L << (64 - Math.min(63, count));
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Length of the chunk starting at offset, given length bytes of input from there.
+     * Unless the input ends within max bytes, length must be at least max.
+     */
+    public int cut(byte[] data, int offset, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int end = Math.min(length, maxSize);
+        int normal = Math.min(end, avgSize);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Cut a whole stream into chunks, handing each to consumer in order; returns the bytes read
+     */
+    public long chunk(InputStream in, ChunkConsumer consumer) throws Exception {
+        byte[] buffer = new byte[Math.max(4 * maxSize, 1024 * 1024)];
+        int start = 0;
+        int end = 0;
+        boolean endOfStream = false;
+        long total = 0;
+        while (true) {
+            if (end - start < maxSize && !endOfStream) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+                int read = in.readNBytes(buffer, end, buffer.length - end);
+                endOfStream = read < buffer.length - end;
+                end += read;
+            }
+            if (start == end) {
+                return total;
+            }
+            int length = cut(buffer, start, end - start);
+            consumer.accept(buffer, start, length);
+            start += length;
+            total += length;
+        }
+    }
+
+    /**
+     * Receives chunks; the array is reused once accept returns
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(byte[] data, int offset, int length) throws Exception;
+    }
+}
@@ -3,8 +3,15 @@ package com.pratham.backuputility.util;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Utility class for file system operations
@@ -15,54 +22,188 @@ public final class FileSystemUtil {
         // Utility class - prevent instantiation
     }
 
+    // Default number of concurrent directory listings per file store
+    private static final int DEFAULT_WALKER_PARALLELISM = 8;
+
+    private static volatile int walkerParallelism = DEFAULT_WALKER_PARALLELISM;
+
+    // One walker pool per file store, so a slow mount cannot starve walks of the others
+    private static final Map<Object, ForkJoinPool> WALKER_POOLS = new ConcurrentHashMap<>();
+
+    private static final WalkStatistics WALK_STATISTICS = new WalkStatistics();
+
+    // Read inode and ctime alongside the basic attributes where the platform has them
+    private static final boolean UNIX_ATTRIBUTES = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+    private static final String UNIX_STAT = "unix:isDirectory,size,lastModifiedTime,ino,ctime";
+
     /**
-     * Get all files in a directory recursively
+     * Set how many directories may be listed concurrently on one file store.
+     * Only affects pools created after the call.
      */
-    public static List<Path> getAllFiles(Path directory) throws IOException {
-        List<Path> files = new ArrayList<>();
+    public static void setWalkerParallelism(int parallelism) {
+        walkerParallelism = Math.max(1, parallelism);
+    }
 
-        if (!Files.exists(directory)) {
-            System.err.println("Directory does not exist: " + directory);
-            return files;
-        }
+    /**
+     * Counters of all walks since startup
+     */
+    public static WalkStatistics getWalkStatistics() {
+        return WALK_STATISTICS;
+    }
 
-        System.out.println("Scanning directory: " + directory.toAbsolutePath());
+    /**
+     * Work-stealing pool used to walk trees on the file store holding the given path
+     */
+    public static ForkJoinPool getWalkerPool(Path path) {
+        Object key;
+        try {
+            key = Files.getFileStore(path);
+        } catch (IOException e) {
+            key = "default";
+        }
+        return WALKER_POOLS.computeIfAbsent(key, k -> new ForkJoinPool(walkerParallelism));
+    }
 
-        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                files.add(file);
-                if (files.size() % 10 == 0) { // Log every 10 files
-                    System.out.println("Found " + files.size() + " files so far...");
+    /**
+     * List one directory, sorted by name, reading each entry's attributes once.
+     * A directory that no longer exists lists as empty and complete. If the listing
+     * fails part way, or an entry that still exists cannot be statted, the entries
+     * read so far are returned marked incomplete: absent names prove nothing then.
+     */
+    public static DirectoryListing listDirectory(Path directory) {
+        List<DirectoryEntry> entries = new ArrayList<>();
+        boolean complete = true;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                DirectoryEntry entry = statEntry(path);
+                if (entry != null) {
+                    entries.add(entry);
+                } else if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                    complete = false;
                 }
-                return FileVisitResult.CONTINUE;
             }
+            WALK_STATISTICS.directories.increment();
+        } catch (NoSuchFileException e) {
+            // Removed since its parent was listed
+        } catch (IOException | DirectoryIteratorException e) {
+            WALK_STATISTICS.errors.increment();
+            complete = Files.notExists(directory, LinkOption.NOFOLLOW_LINKS);
+        }
 
-            @Override
-            public FileVisitResult visitFileFailed(Path file, IOException exc) {
-                // Log but continue processing
-                System.err.println("Failed to visit file: " + file + " - " + exc.getMessage());
-                return FileVisitResult.CONTINUE;
-            }
+        entries.sort(Comparator.comparing(DirectoryEntry::getName));
+        return new DirectoryListing(entries, complete);
+    }
 
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                System.out.println("Entering directory: " + dir);
-                return FileVisitResult.CONTINUE;
-            }
+    /**
+     * Stat one path without following links. Returns null if it cannot be read.
+     */
+    public static DirectoryEntry statEntry(Path path) {
+        return statEntry(path, false);
+    }
 
-            @Override
-            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
-                if (exc != null) {
-                    System.err.println("Error after visiting directory: " + dir + " - " + exc.getMessage());
-                }
-                System.out.println("Finished directory: " + dir);
-                return FileVisitResult.CONTINUE;
+    /**
+     * Stat one path, following a final symbolic link if asked to (as for the root of a walk).
+     * Returns null if it cannot be read.
+     */
+    public static DirectoryEntry statEntry(Path path, boolean followLinks) {
+        LinkOption[] options = followLinks ? new LinkOption[0] : new LinkOption[] { LinkOption.NOFOLLOW_LINKS };
+        try {
+            DirectoryEntry entry;
+            if (UNIX_ATTRIBUTES) {
+                Map<String, Object> attributes = Files.readAttributes(path, UNIX_STAT, options);
+                entry = new DirectoryEntry(path,
+                    (Boolean) attributes.get("isDirectory"),
+                    (Long) attributes.get("size"),
+                    ((FileTime) attributes.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS),
+                    ((Number) attributes.get("ino")).longValue(),
+                    ((FileTime) attributes.get("ctime")).to(TimeUnit.NANOSECONDS));
+            } else {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, options);
+                entry = new DirectoryEntry(path, attributes.isDirectory(), attributes.size(),
+                    attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), 0, 0);
+            }
+            if (!entry.isDirectory()) {
+                WALK_STATISTICS.files.increment();
             }
-        });
+            return entry;
+        } catch (IOException e) {
+            WALK_STATISTICS.errors.increment();
+            return null;
+        }
+    }
+
+    /**
+     * A directory entry with the attributes read while listing it
+     */
+    public static final class DirectoryEntry {
+        private final Path path;
+        private final String name;
+        private final boolean directory;
+        private final long size;
+        private final long lastModifiedNanos;
+        private final long inode;           // 0 where the file system does not expose it
+        private final long changeTimeNanos; // 0 where the file system does not expose it
+
+        public DirectoryEntry(Path path, boolean directory, long size, long lastModifiedNanos,
+                              long inode, long changeTimeNanos) {
+            this.path = path;
+            this.name = path.getFileName().toString();
+            this.directory = directory;
+            this.size = size;
+            this.lastModifiedNanos = lastModifiedNanos;
+            this.inode = inode;
+            this.changeTimeNanos = changeTimeNanos;
+        }
+
+        public Path getPath() { return path; }
+        public String getName() { return name; }
+        public boolean isDirectory() { return directory; }
+        public long getSize() { return size; }
+        public long getLastModifiedNanos() { return lastModifiedNanos; }
+        public long getLastModifiedMillis() { return TimeUnit.NANOSECONDS.toMillis(lastModifiedNanos); }
+        public long getInode() { return inode; }
+        public long getChangeTimeNanos() { return changeTimeNanos; }
+    }
+
+    /**
+     * The entries of one directory in name order, and whether they are all of them
+     */
+    public static final class DirectoryListing {
+        private final List<DirectoryEntry> entries;
+        private final boolean complete;
+
+        public DirectoryListing(List<DirectoryEntry> entries, boolean complete) {
+            this.entries = entries;
+            this.complete = complete;
+        }
+
+        public List<DirectoryEntry> getEntries() { return entries; }
+        public boolean isComplete() { return complete; }
+    }
+
+    /**
+     * Cumulative walker counters
+     */
+    public static final class WalkStatistics {
+        private final LongAdder walks = new LongAdder();
+        private final LongAdder walkNanos = new LongAdder();
+        private final LongAdder directories = new LongAdder();
+        private final LongAdder files = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * Count one finished walk of a tree and the time it took
+         */
+        public void recordWalk(long nanos) {
+            walks.increment();
+            walkNanos.add(nanos);
+        }
 
-        System.out.println("Total files found in " + directory + ": " + files.size());
-        return files;
+        public long getWalks() { return walks.sum(); }
+        public long getWalkTimeMs() { return walkNanos.sum() / 1_000_000; }
+        public long getDirectoriesListed() { return directories.sum(); }
+        public long getFilesFound() { return files.sum(); }
+        public long getErrors() { return errors.sum(); }
     }
 
     /**
@@ -80,35 +221,6 @@ public final class FileSystemUtil {
             .sum();
     }
 
-    /**
-     * Count unique files across two directory trees
-     */
-    public static int countUniqueFiles(Path dir1, Path dir2) throws IOException {
-        List<Path> files1 = getAllFiles(dir1);
-        List<Path> files2 = getAllFiles(dir2);
-
-        // Use relative paths for comparison
-        List<String> relativePaths = new ArrayList<>();
-
-        // Add files from dir1
-        for (Path file : files1) {
-            String relativePath = dir1.relativize(file).toString();
-            if (!relativePaths.contains(relativePath)) {
-                relativePaths.add(relativePath);
-            }
-        }
-
-        // Add files from dir2
-        for (Path file : files2) {
-            String relativePath = dir2.relativize(file).toString();
-            if (!relativePaths.contains(relativePath)) {
-                relativePaths.add(relativePath);
-            }
-        }
-
-        return relativePaths.size();
-    }
-
     /**
      * Ensure directory exists, creating it if necessary
      */
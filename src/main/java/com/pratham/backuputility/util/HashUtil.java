@@ -1,13 +1,39 @@
 package com.pratham.backuputility.util;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
 
 /**
- * Utility class for cryptographic hash operations
+ * Utility class for cryptographic hash operations.
+ *
+ * Hashes are available in binary form (byte[] or long) for comparison without
+ * building Strings, and as lower-case hex for storage and display.
  */
 public final class HashUtil {
 
+    // xxHash64 primes
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    public static final int SHA256_LENGTH = 32;
+
+    // One digest per thread, reused for every short-lived hash instead of a getInstance per call
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST = ThreadLocal.withInitial(HashUtil::createSha256Digest);
+
     private HashUtil() {
         // Utility class - prevent instantiation
     }
@@ -16,15 +42,82 @@ public final class HashUtil {
      * Convert bytes to hexadecimal string representation
      */
     public static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
+        return bytesToHex(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Lower-case hex of the low digits*4 bits of a value, zero-padded
+     */
+    public static String toHex(long value, int digits) {
+        char[] hex = new char[digits];
+        for (int i = digits - 1; i >= 0; i--) {
+            hex[i] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Parse a hex string produced by bytesToHex
+     */
+    public static byte[] hexToBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        hexToBytes(hex, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Parse a hex string produced by bytesToHex into out at offset
+     */
+    public static void hexToBytes(String hex, byte[] out, int offset) {
+        for (int i = 0; i < hex.length() / 2; i++) {
+            out[offset + i] = (byte) ((Character.digit(hex.charAt(2 * i), 16) << 4) | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+    }
+
+    /**
+     * Hex of length bytes of data starting at offset
+     */
+    public static String bytesToHex(byte[] data, int offset, int length) {
+        char[] hex = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            hex[2 * i] = HEX_DIGITS[(data[offset + i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[data[offset + i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Write the low length bytes of a value into out at offset, most significant first,
+     * so the bytes read the same in hex as toHex(value, 2 * length)
+     */
+    public static void putLong(long value, byte[] out, int offset, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            out[offset + i] = (byte) value;
+            value >>>= 8;
         }
-        return sb.toString();
     }
 
     /**
-     * Create a new SHA-256 message digest instance
+     * Read length bytes written by putLong
+     */
+    public static long getLong(byte[] data, int offset, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Parse a hex string of up to 16 digits produced by toHex
+     */
+    public static long hexToLong(String hex) {
+        return Long.parseUnsignedLong(hex, 16);
+    }
+
+    /**
+     * Create a new SHA-256 message digest instance, for callers that feed it across many calls
      */
     public static MessageDigest createSha256Digest() {
         try {
@@ -34,21 +127,200 @@ public final class HashUtil {
         }
     }
 
+    /**
+     * SHA-256 of part of an array, written into out at outOffset. Allocates nothing.
+     */
+    public static void sha256(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.update(data, offset, length);
+        try {
+            digest.digest(out, outOffset, SHA256_LENGTH);
+        } catch (DigestException e) {
+            digest.reset();
+            throw new IllegalArgumentException("No room for a SHA-256 hash in output buffer", e);
+        }
+    }
+
+    /**
+     * SHA-256 of part of an array
+     */
+    public static byte[] sha256(byte[] data, int offset, int length) {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.update(data, offset, length);
+        return digest.digest();
+    }
+
+    /**
+     * SHA-256 of the remaining bytes of a buffer; the buffer's position is advanced to its limit
+     */
+    public static byte[] sha256(ByteBuffer data) {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.update(data);
+        return digest.digest();
+    }
+
+    /**
+     * SHA-256 of the remaining bytes of a buffer, written into out at outOffset.
+     * The buffer's position is advanced to its limit.
+     */
+    public static void sha256(ByteBuffer data, byte[] out, int outOffset) {
+        MessageDigest digest = SHA256_DIGEST.get();
+        digest.update(data);
+        try {
+            digest.digest(out, outOffset, SHA256_LENGTH);
+        } catch (DigestException e) {
+            digest.reset();
+            throw new IllegalArgumentException("No room for a SHA-256 hash in output buffer", e);
+        }
+    }
+
     /**
      * Calculate SHA-256 hash of data and return as hex string
      */
     public static String calculateSha256Hash(byte[] data) {
-        MessageDigest digest = createSha256Digest();
-        digest.update(data);
-        return bytesToHex(digest.digest());
+        return bytesToHex(sha256(data, 0, data.length));
     }
 
     /**
      * Calculate SHA-256 hash of partial data and return as hex string
      */
     public static String calculateSha256Hash(byte[] data, int length) {
-        MessageDigest digest = createSha256Digest();
-        digest.update(data, 0, length);
-        return bytesToHex(digest.digest());
+        return bytesToHex(sha256(data, 0, length));
+    }
+
+    /**
+     * Calculate SHA-256 hash of the remaining bytes of a buffer and return as hex string.
+     * The buffer's position is advanced to its limit.
+     */
+    public static String calculateSha256Hash(ByteBuffer data) {
+        return bytesToHex(sha256(data));
+    }
+
+    /**
+     * CRC32C of part of an array, as an unsigned 32-bit value
+     */
+    public static long crc32c(byte[] data, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+
+    /**
+     * CRC32C of the remaining bytes of a buffer, leaving its position unchanged
+     */
+    public static long crc32c(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * xxHash64 (seed 0) of part of an array: a fast non-cryptographic 64-bit hash,
+     * suitable for detecting changed blocks but not for integrity against tampering
+     */
+    public static long xxHash64(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int p = offset;
+        long h;
+
+        if (length >= 32) {
+            long v1 = P1 + P2;
+            long v2 = P2;
+            long v3 = 0;
+            long v4 = -P1;
+            int limit = end - 32;
+            do {
+                v1 = xxRound(v1, (long) LONG_LE.get(data, p));
+                v2 = xxRound(v2, (long) LONG_LE.get(data, p + 8));
+                v3 = xxRound(v3, (long) LONG_LE.get(data, p + 16));
+                v4 = xxRound(v4, (long) LONG_LE.get(data, p + 24));
+                p += 32;
+            } while (p <= limit);
+            h = xxMerge(v1, v2, v3, v4);
+        } else {
+            h = P5;
+        }
+
+        h += length;
+        for (; p + 8 <= end; p += 8) {
+            h ^= xxRound(0, (long) LONG_LE.get(data, p));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (p + 4 <= end) {
+            h ^= ((int) INT_LE.get(data, p) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            p += 4;
+        }
+        for (; p < end; p++) {
+            h ^= (data[p] & 0xFFL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        return xxAvalanche(h);
+    }
+
+    /**
+     * xxHash64 (seed 0) of the remaining bytes of a buffer, leaving its position unchanged
+     */
+    public static long xxHash64(ByteBuffer data) {
+        if (data.hasArray()) {
+            return xxHash64(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+
+        ByteBuffer in = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int length = in.remaining();
+        long h;
+
+        if (length >= 32) {
+            long v1 = P1 + P2;
+            long v2 = P2;
+            long v3 = 0;
+            long v4 = -P1;
+            while (in.remaining() >= 32) {
+                v1 = xxRound(v1, in.getLong());
+                v2 = xxRound(v2, in.getLong());
+                v3 = xxRound(v3, in.getLong());
+                v4 = xxRound(v4, in.getLong());
+            }
+            h = xxMerge(v1, v2, v3, v4);
+        } else {
+            h = P5;
+        }
+
+        h += length;
+        while (in.remaining() >= 8) {
+            h ^= xxRound(0, in.getLong());
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (in.remaining() >= 4) {
+            h ^= (in.getInt() & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+        }
+        while (in.hasRemaining()) {
+            h ^= (in.get() & 0xFFL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        return xxAvalanche(h);
+    }
+
+    private static long xxRound(long acc, long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    private static long xxMerge(long v1, long v2, long v3, long v4) {
+        long h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+        h = (h ^ xxRound(0, v1)) * P1 + P4;
+        h = (h ^ xxRound(0, v2)) * P1 + P4;
+        h = (h ^ xxRound(0, v3)) * P1 + P4;
+        h = (h ^ xxRound(0, v4)) * P1 + P4;
+        return h;
+    }
+
+    private static long xxAvalanche(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
     }
 }
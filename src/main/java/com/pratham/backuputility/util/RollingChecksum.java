@@ -0,0 +1,75 @@
+package com.pratham.backuputility.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Weak rolling checksum over a fixed-size window, as used by rsync (an Adler-32 variant).
+ *
+ * a is the sum of the window's bytes and b the sum of a after each byte, both
+ * modulo 2^16. Sliding the window by one byte updates both in O(1), so the sum
+ * of the window at every offset of a file costs one pass. Collisions are
+ * frequent enough that a match must be confirmed with the block's strong hash.
+ */
+public final class RollingChecksum {
+    private final int windowSize;
+    private int a;
+    private int b;
+
+    public RollingChecksum(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Start over on length bytes of data at offset
+     */
+    public void reset(byte[] data, int offset, int length) {
+        int sumA = 0;
+        int sumB = 0;
+        for (int i = 0; i < length; i++) {
+            sumA += data[offset + i] & 0xFF;
+            sumB += sumA;
+        }
+        a = sumA;
+        b = sumB;
+    }
+
+    /**
+     * Slide the window by one byte: out leaves at the front, in enters at the back
+     */
+    public void roll(byte out, byte in) {
+        a += (in & 0xFF) - (out & 0xFF);
+        b += a - windowSize * (out & 0xFF);
+    }
+
+    /**
+     * The checksum of the current window
+     */
+    public int value() {
+        return (a & 0xFFFF) | (b << 16);
+    }
+
+    /**
+     * Checksum of length bytes of data at offset
+     */
+    public static int of(byte[] data, int offset, int length) {
+        RollingChecksum checksum = new RollingChecksum(length);
+        checksum.reset(data, offset, length);
+        return checksum.value();
+    }
+
+    /**
+     * Checksum of the remaining bytes of a buffer, leaving its position unchanged
+     */
+    public static int of(ByteBuffer data) {
+        if (data.hasArray()) {
+            return of(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        int sumA = 0;
+        int sumB = 0;
+        for (int i = data.position(); i < data.limit(); i++) {
+            sumA += data.get(i) & 0xFF;
+            sumB += sumA;
+        }
+        return (sumA & 0xFFFF) | (sumB << 16);
+    }
+}
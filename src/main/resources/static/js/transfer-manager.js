@@ -23,7 +23,7 @@ const transferManager = {
       direction: backendDirection,
       mode: mode,
     })
-      .done((response) => this.handleSuccess(response, modeText))
+      .done((job) => this.pollJob(job.id, modeText))
       .fail((xhr) => this.handleError(xhr))
       .always(() => {
         // Don't set to false immediately, let WebSocket handle it
@@ -31,19 +31,34 @@ const transferManager = {
       });
   },
 
-  handleSuccess(response, modeText) {
-    if (response && response.length > 0) {
-      // Count actual file results (exclude summary messages)
-      const fileResults = response.filter(
-        (msg) =>
-          msg.startsWith("✓") ||
-          msg.startsWith("○") ||
-          msg.startsWith("✗")
-      );
-      const fileCount = fileResults.length;
+  pollJob(jobId, modeText) {
+    $.get(`/api/incremental/jobs/${jobId}`)
+      .done((job) => {
+        if (!job.finished) {
+          setTimeout(() => this.pollJob(jobId, modeText), 2000);
+          return;
+        }
+        $.get(`/api/incremental/jobs/${jobId}/results`, { page: 0, size: 100 })
+          .done((page) => this.handleSuccess(job, page, modeText));
+      })
+      .fail(() => setTimeout(() => this.pollJob(jobId, modeText), 5000));
+  },
 
+  handleSuccess(job, page, modeText) {
+    if (job.status === "FAILED") {
+      UIHelpers.showError(`Transfer failed: ${job.errorMessage}`);
+      return;
+    }
+
+    if (job.processedFiles > 0 || job.deletedFiles > 0) {
+      const fileCount = job.processedFiles;
       console.log(`${modeText} transfer completed: ${fileCount} file${fileCount !== 1 ? "s" : ""} processed`);
-      this.displayResults(response);
+
+      const results = page.results.slice();
+      if (page.totalElements > results.length) {
+        results.push(`... and ${page.totalElements - results.length} more (job ${job.id})`);
+      }
+      this.displayResults(results);
     } else {
       console.log(`${modeText} transfer completed: No changes detected`);
     }
@@ -0,0 +1,77 @@
+package com.pratham.backuputility.benchmark;
+
+import com.pratham.backuputility.model.BlockHashList;
+import com.pratham.backuputility.service.BlockSizeService;
+import com.pratham.backuputility.util.BlockHashAlgorithm;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing a whole file into its snapshot's block hashes with the fixed 4 KB block
+ * size against the per-file size of BlockSizeService, across file size classes.
+ * Larger blocks hash faster and store fewer hash bytes, but a changed byte resends
+ * a whole block; the teardown prints block count, stored hash bytes and the bytes
+ * resent for a one-byte change, so the trade-off can be read next to the timings.
+ *
+ * Run after mvn test-compile (the 256 MB case needs a heap of about 1 GB):
+ *   java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main BlockSizeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class BlockSizeBenchmark {
+
+    private static final int MIN_BLOCK_SIZE = 4096;
+    private static final int MAX_BLOCK_SIZE = 1024 * 1024;
+
+    @Param({"65536", "67108864", "268435456"})
+    private int fileSize;
+
+    @Param({"fixed", "adaptive"})
+    private String policy;
+
+    private ByteBuffer file;
+    private int blockSize;
+    private BlockHashList lastHashes;
+
+    @Setup(Level.Trial)
+    public void createFile() {
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        file = ByteBuffer.wrap(data);
+        blockSize = "adaptive".equals(policy)
+            ? BlockSizeService.bySize(fileSize, MIN_BLOCK_SIZE, MAX_BLOCK_SIZE) : MIN_BLOCK_SIZE;
+    }
+
+    @Benchmark
+    public BlockHashList hashFile() {
+        BlockHashList hashes = new BlockHashList(BlockHashAlgorithm.XXHASH64,
+            BlockHashList.expectedBlocks(fileSize, blockSize));
+        for (int offset = 0; offset < fileSize; offset += blockSize) {
+            hashes.add(file.slice(offset, Math.min(blockSize, fileSize - offset)));
+        }
+        lastHashes = hashes;
+        return hashes;
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.printf("%n%s, %d byte file: %d byte blocks, %d blocks, %d hash bytes stored, %d bytes resent per changed byte%n",
+            policy, fileSize, blockSize, lastHashes.size(), lastHashes.toPacked().length, blockSize);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(BlockSizeBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
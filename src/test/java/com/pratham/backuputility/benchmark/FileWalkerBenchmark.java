@@ -0,0 +1,141 @@
+package com.pratham.backuputility.benchmark;
+
+import com.pratham.backuputility.service.FileDetectionService;
+import com.pratham.backuputility.service.ScanIndexService;
+import com.pratham.backuputility.util.FileSystemUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Compares the sequential Files.walkFileTree walker with the parallel tree diff of
+ * FileDetectionService, the traversal transfers run, on a wide tree (few levels, many
+ * directories) and a deep tree (many levels). The diff runs against a missing target,
+ * which lists one tree like the sequential walker, and against a copy of the tree,
+ * which lists both. The scan index is off, so every directory is listed each time.
+ *
+ * Directory listings on local disk are cheap, so the parallel walk mostly pays
+ * off on high-latency mounts such as NFS. The trees are created under java.io.tmpdir,
+ * so pass -jvmArgs -Djava.io.tmpdir=/mnt/nfs/... to measure one.
+ *
+ * Run after mvn test-compile with:
+ *   java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main FileWalkerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileWalkerBenchmark {
+
+    @Param({"wide", "deep"})
+    private String shape;
+
+    @Param({"1", "8"})
+    private int threadsPerMount;
+
+    private Path base;
+    private Path root;
+    private Path copy;
+    private FileDetectionService detection;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        base = Files.createTempDirectory("walker-benchmark");
+        root = base.resolve("source");
+        copy = base.resolve("copy");
+        for (Path tree : List.of(root, copy)) {
+            if ("wide".equals(shape)) {
+                // 200 directories of 50 files directly under the root
+                for (int d = 0; d < 200; d++) {
+                    createFiles(Files.createDirectories(tree.resolve("dir" + d)), 50);
+                }
+            } else {
+                // Binary tree 10 levels deep, 10 files per directory
+                createDeep(Files.createDirectories(tree), 10);
+            }
+        }
+        FileSystemUtil.setWalkerParallelism(threadsPerMount);
+
+        ScanIndexService scanIndexService = new ScanIndexService();
+        ReflectionTestUtils.setField(scanIndexService, "enabled", false);
+        detection = new FileDetectionService();
+        ReflectionTestUtils.setField(detection, "scanIndexService", scanIndexService);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        try (Stream<Path> paths = Files.walk(base)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * The sequential walker FileSystemUtil used before, without its console output
+     */
+    @Benchmark
+    public List<Path> sequentialWalkFileTree() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    @Benchmark
+    public long parallelDiffMissingTarget() {
+        LongAdder count = new LongAdder();
+        detection.diffTrees(root, base.resolve("missing"), entry -> count.increment());
+        return count.sum();
+    }
+
+    @Benchmark
+    public long parallelDiffCopy() {
+        LongAdder count = new LongAdder();
+        detection.diffTrees(root, copy, entry -> count.increment());
+        return count.sum();
+    }
+
+    private static void createDeep(Path directory, int depth) throws IOException {
+        createFiles(directory, 10);
+        if (depth == 0) {
+            return;
+        }
+        createDeep(Files.createDirectories(directory.resolve("a")), depth - 1);
+        createDeep(Files.createDirectories(directory.resolve("b")), depth - 1);
+    }
+
+    private static void createFiles(Path directory, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Files.write(directory.resolve("file" + i + ".bin"), new byte[16]);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(FileWalkerBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
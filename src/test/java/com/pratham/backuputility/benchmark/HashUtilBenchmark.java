@@ -0,0 +1,88 @@
+package com.pratham.backuputility.benchmark;
+
+import com.pratham.backuputility.util.HashUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of hashing one block with the original HashUtil (a MessageDigest.getInstance
+ * and a String.format per byte for every block) against the current one (per-thread
+ * digest, table-driven hex, binary results).
+ *
+ * Run after mvn test-compile with the GC profiler to see allocation rates:
+ *   java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main HashUtilBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashUtilBenchmark {
+
+    @Param({"4096"})
+    private int blockSize;
+
+    private byte[] block;
+    private final byte[] digestOut = new byte[HashUtil.SHA256_LENGTH];
+
+    @Setup(Level.Trial)
+    public void createBlock() {
+        block = new byte[blockSize];
+        new Random(42).nextBytes(block);
+    }
+
+    /**
+     * HashUtil.calculateSha256Hash as it was before
+     */
+    @Benchmark
+    public String legacySha256Hex() throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(block, 0, block.length);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public String sha256Hex() {
+        return HashUtil.calculateSha256Hash(block, block.length);
+    }
+
+    @Benchmark
+    public byte[] sha256Binary() {
+        HashUtil.sha256(block, 0, block.length, digestOut, 0);
+        return digestOut;
+    }
+
+    @Benchmark
+    public String xxHash64Hex() {
+        return HashUtil.toHex(HashUtil.xxHash64(block, 0, block.length), 16);
+    }
+
+    @Benchmark
+    public long xxHash64Binary() {
+        return HashUtil.xxHash64(block, 0, block.length);
+    }
+
+    @Benchmark
+    public long crc32cBinary() {
+        return HashUtil.crc32c(block, 0, block.length);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(HashUtilBenchmark.class.getSimpleName())
+            .addProfiler("gc")
+            .build()).run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.pratham.backuputility.model;
+
+import com.pratham.backuputility.util.BlockHashAlgorithm;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MerkleTreeTest {
+
+    // Around the fanout and its powers, so trees differ in height and end on partial nodes
+    private static final int[] SIZES = {0, 1, 2, 15, 16, 17, 255, 256, 257, 300, 4095, 4097, 5000};
+
+    @ParameterizedTest
+    @EnumSource(BlockHashAlgorithm.class)
+    void identicalTreesCompareAtTheRoot(BlockHashAlgorithm algorithm) {
+        for (int size : SIZES) {
+            MerkleTree tree = MerkleTree.build(blocks(algorithm, size, 1, null));
+            MerkleTree.Diff diff = tree.diff(MerkleTree.build(blocks(algorithm, size, 1, null)));
+            assertTrue(diff.isIdentical(), "size " + size);
+            assertEquals(0, diff.getChangedBlocks());
+            assertEquals(1, diff.getNodesCompared());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(BlockHashAlgorithm.class)
+    void diffMatchesBlockByBlockComparisonAcrossSizes(BlockHashAlgorithm algorithm) {
+        Random random = new Random(5);
+        for (int oldSize : SIZES) {
+            for (int newSize : SIZES) {
+                boolean[] edited = new boolean[newSize];
+                for (int i = 0; i < newSize; i++) {
+                    edited[i] = random.nextInt(50) == 0;
+                }
+                if (newSize > 0) {
+                    edited[newSize - 1] = random.nextBoolean(); // sometimes inside the partial last node
+                }
+                assertDiff(MerkleTree.build(blocks(algorithm, oldSize, 1, null)),
+                    MerkleTree.build(blocks(algorithm, newSize, 1, edited)));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(BlockHashAlgorithm.class)
+    void singleChangedBlockIsFoundWithFewComparisons(BlockHashAlgorithm algorithm) {
+        int size = 5000;
+        boolean[] edited = new boolean[size];
+        edited[4321] = true;
+        MerkleTree tree = MerkleTree.build(blocks(algorithm, size, 1, null));
+        MerkleTree.Diff diff = tree.diff(MerkleTree.build(blocks(algorithm, size, 1, edited)));
+        assertEquals(1, diff.getChangedBlocks());
+        assertEquals(4321, diff.getChangedRanges().get(0).getFirstBlock());
+        assertTrue(diff.getNodesCompared() <= 1 + (tree.getLevelCount() - 1) * MerkleTree.FANOUT,
+            diff.getNodesCompared() + " nodes compared");
+    }
+
+    @ParameterizedTest
+    @EnumSource(BlockHashAlgorithm.class)
+    void packedNodesRoundTrip(BlockHashAlgorithm algorithm) {
+        for (int size : SIZES) {
+            BlockHashList hashes = blocks(algorithm, size, 1, null);
+            MerkleTree tree = MerkleTree.build(hashes);
+            MerkleTree restored = MerkleTree.fromPacked(hashes, tree.toPackedNodes());
+            assertEquals(tree.getRootHex(), restored.getRootHex());
+            assertEquals(tree.getLevelCount(), restored.getLevelCount());
+            // Nodes that do not fit the block hashes are rebuilt
+            assertEquals(tree.getRootHex(), MerkleTree.fromPacked(hashes, new byte[3]).getRootHex());
+            assertEquals(tree.getRootHex(), MerkleTree.fromPacked(hashes, null).getRootHex());
+        }
+    }
+
+    /**
+     * The diff must report exactly the blocks whose hashes differ or that only one tree has,
+     * in both directions
+     */
+    private static void assertDiff(MerkleTree a, MerkleTree b) {
+        int total = Math.max(a.getLeafCount(), b.getLeafCount());
+        boolean[] expected = new boolean[total];
+        for (int i = 0; i < total; i++) {
+            expected[i] = i >= a.getLeafCount() || i >= b.getLeafCount()
+                || !a.getNodeHex(0, i).equals(b.getNodeHex(0, i));
+        }
+        for (MerkleTree.Diff diff : List.of(a.diff(b), b.diff(a))) {
+            String sizes = a.getLeafCount() + " vs " + b.getLeafCount() + " blocks";
+            boolean[] changed = new boolean[total];
+            long previousEnd = -1;
+            for (MerkleTree.Range range : diff.getChangedRanges()) {
+                assertTrue(range.getFirstBlock() > previousEnd, "ranges out of order or unmerged: " + sizes);
+                for (long i = range.getFirstBlock(); i < range.getFirstBlock() + range.getBlockCount(); i++) {
+                    changed[(int) i] = true;
+                }
+                previousEnd = range.getFirstBlock() + range.getBlockCount();
+            }
+            assertEquals(total, diff.getTotalBlocks(), sizes);
+            for (int i = 0; i < total; i++) {
+                assertEquals(expected[i], changed[i], "block " + i + ", " + sizes);
+            }
+        }
+    }
+
+    /**
+     * count blocks with content derived from seed and index; edited blocks get other content
+     */
+    private static BlockHashList blocks(BlockHashAlgorithm algorithm, int count, long seed, boolean[] edited) {
+        BlockHashList hashes = new BlockHashList(algorithm, count);
+        byte[] block = new byte[64];
+        for (int i = 0; i < count; i++) {
+            boolean edit = edited != null && edited[i];
+            new Random(seed * 1_000_003 + i + (edit ? 7_777_777 : 0)).nextBytes(block);
+            hashes.add(ByteBuffer.wrap(block));
+        }
+        return hashes;
+    }
+}
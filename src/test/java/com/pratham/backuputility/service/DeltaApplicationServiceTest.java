@@ -0,0 +1,90 @@
+package com.pratham.backuputility.service;
+
+import com.pratham.backuputility.model.BlockDelta;
+import com.pratham.backuputility.model.BlockDeltaChannel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A source read failing part way through a transfer must leave the target as it was
+ */
+class DeltaApplicationServiceTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    private final DeltaApplicationService service = new DeltaApplicationService();
+
+    @Test
+    void failedBlockDeltaLeavesTargetIntact() throws Exception {
+        Path target = dir.resolve("target.bin");
+        byte[] old = random(1, 3 * BLOCK_SIZE);
+        Files.write(target, old);
+
+        BlockDeltaChannel channel = new BlockDeltaChannel(8);
+        channel.send(BlockDelta.block(0, BLOCK_SIZE, random(2, BLOCK_SIZE)));
+        channel.send(BlockDelta.block(2, BLOCK_SIZE, random(3, BLOCK_SIZE)));
+        RuntimeException failure = new RuntimeException("source read failed");
+        channel.fail(failure);
+
+        assertEquals(failure, assertThrows(RuntimeException.class, () -> service.applyDelta(target, channel)));
+        assertArrayEquals(old, Files.readAllBytes(target));
+        assertOnlyFile(target);
+    }
+
+    @Test
+    void failedBlockDeltaCreatesNoNewTarget() throws Exception {
+        Path target = dir.resolve("new.bin");
+
+        BlockDeltaChannel channel = new BlockDeltaChannel(8);
+        channel.send(BlockDelta.block(0, BLOCK_SIZE, random(2, BLOCK_SIZE)));
+        channel.fail(new RuntimeException("source read failed"));
+
+        assertThrows(RuntimeException.class, () -> service.applyDelta(target, channel));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void failedCopyLeavesTargetIntact() throws Exception {
+        Path source = dir.resolve("source.bin");
+        Path target = dir.resolve("target.bin");
+        byte[] old = random(1, 3 * BLOCK_SIZE);
+        Files.write(source, random(4, 5 * BLOCK_SIZE));
+        Files.write(target, old);
+
+        BlockDeltaChannel hashed = new BlockDeltaChannel(8);
+        hashed.fail(new RuntimeException("source read failed"));
+
+        assertThrows(RuntimeException.class, () -> service.copyFile(source, target, hashed));
+        assertArrayEquals(old, Files.readAllBytes(target));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    private void assertOnlyFile(Path file) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    private static byte[] random(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
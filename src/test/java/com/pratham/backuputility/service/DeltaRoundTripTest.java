@@ -0,0 +1,119 @@
+package com.pratham.backuputility.service;
+
+import com.pratham.backuputility.model.BlockDeltaChannel;
+import com.pratham.backuputility.model.FileDelta;
+import com.pratham.backuputility.model.FileSnapshot;
+import com.pratham.backuputility.util.HashUtil;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A target holding the old version of a file, rebuilt by applyDelta from the delta
+ * against the old version's snapshot, must end up byte for byte the new version
+ */
+class DeltaRoundTripTest {
+
+    private static final String[] ALGORITHMS = {"block", "rolling", "cdc"};
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    static Stream<Arguments> edits() {
+        byte[] base = random(1, 200_000);
+        byte[] inserted = random(2, 1000);
+        List<Arguments> cases = new ArrayList<>();
+        for (String algorithm : ALGORITHMS) {
+            cases.add(Arguments.of(algorithm, "unchanged", base, base));
+            cases.add(Arguments.of(algorithm, "insert", base, splice(base, 50_000, 0, inserted)));
+            cases.add(Arguments.of(algorithm, "delete", base, splice(base, 70_001, 3000, new byte[0])));
+            cases.add(Arguments.of(algorithm, "overwrite", base, splice(base, 120_000, 500, inserted)));
+            cases.add(Arguments.of(algorithm, "append", base, splice(base, base.length, 0, inserted)));
+            cases.add(Arguments.of(algorithm, "truncate", base, Arrays.copyOf(base, 99_999)));
+            cases.add(Arguments.of(algorithm, "reordered", base, splice(splice(base, 0, 40_000, new byte[0]),
+                160_000, 0, Arrays.copyOf(base, 40_000))));
+            cases.add(Arguments.of(algorithm, "emptied", base, new byte[0]));
+            cases.add(Arguments.of(algorithm, "from empty", new byte[0], base));
+            cases.add(Arguments.of(algorithm, "empty", new byte[0], new byte[0]));
+            cases.add(Arguments.of(algorithm, "shorter than a block", random(3, 100), random(4, 150)));
+            cases.add(Arguments.of(algorithm, "grown from less than a block", random(3, 100),
+                splice(base, 10, 0, random(3, 100))));
+        }
+        return cases.stream();
+    }
+
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("edits")
+    void rebuiltTargetMatchesSource(String algorithm, String edit, byte[] oldContent, byte[] newContent) throws Exception {
+        DeltaCalculationService calculator = calculator(algorithm);
+        Path source = dir.resolve("source.bin");
+        Path target = dir.resolve("target.bin");
+
+        Files.write(source, oldContent);
+        FileSnapshot oldSnapshot = calculator.hashNewFile(source, "file.bin").getSourceSnapshot();
+        Files.write(target, oldContent);
+        Files.write(source, newContent);
+
+        BlockDeltaChannel channel = new BlockDeltaChannel(8);
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> {
+            try {
+                channel.complete(calculator.calculateDelta(source, oldSnapshot, "file.bin", channel));
+            } catch (Exception e) {
+                channel.fail(e);
+            }
+        });
+        FileDelta delta = new DeltaApplicationService().applyDelta(target, channel);
+        reader.join();
+
+        String expected = HashUtil.calculateSha256Hash(newContent);
+        assertEquals(expected, HashUtil.calculateSha256Hash(Files.readAllBytes(target)));
+        assertEquals(expected, delta.getSourceSnapshot().getFileHash());
+        assertEquals(newContent.length, delta.getSourceFileSize());
+    }
+
+    private static DeltaCalculationService calculator(String algorithm) {
+        BlockSizeService blockSizes = new BlockSizeService();
+        ReflectionTestUtils.setField(blockSizes, "blockSize", BLOCK_SIZE);
+        ReflectionTestUtils.setField(blockSizes, "adaptive", false);
+
+        DeltaCalculationService calculator = new DeltaCalculationService();
+        ReflectionTestUtils.setField(calculator, "blockSizeService", blockSizes);
+        ReflectionTestUtils.setField(calculator, "blockHashAlgorithm", "xxhash64");
+        ReflectionTestUtils.setField(calculator, "deltaAlgorithm", algorithm);
+        ReflectionTestUtils.setField(calculator, "minChunkSize", 2048);
+        ReflectionTestUtils.setField(calculator, "avgChunkSize", 8192);
+        ReflectionTestUtils.setField(calculator, "maxChunkSize", 65536);
+        return calculator;
+    }
+
+    private static byte[] random(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * data with removed bytes at offset replaced by insert
+     */
+    private static byte[] splice(byte[] data, int offset, int removed, byte[] insert) {
+        byte[] result = new byte[data.length - removed + insert.length];
+        System.arraycopy(data, 0, result, 0, offset);
+        System.arraycopy(insert, 0, result, offset, insert.length);
+        System.arraycopy(data, offset + removed, result, offset + insert.length, data.length - offset - removed);
+        return result;
+    }
+}
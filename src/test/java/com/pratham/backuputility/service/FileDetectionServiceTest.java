@@ -0,0 +1,81 @@
+package com.pratham.backuputility.service;
+
+import com.pratham.backuputility.model.ScanIndex;
+import com.pratham.backuputility.model.TreeDiffEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+class FileDetectionServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private Path source;
+    private Path target;
+    private Path unreadable;
+    private ScanIndexService scanIndexService;
+    private FileDetectionService detection;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        source = dir.resolve("dc");
+        target = dir.resolve("dr");
+        for (Path base : List.of(source, target)) {
+            Files.createDirectories(base.resolve("photos/2024"));
+            Files.writeString(base.resolve("photos/a.jpg"), "a");
+            Files.writeString(base.resolve("photos/2024/b.jpg"), "b");
+            Files.writeString(base.resolve("readme.txt"), "readme");
+        }
+        // Genuinely deleted from the source, so the scan has something to report
+        Files.writeString(target.resolve("old.txt"), "old");
+
+        scanIndexService = new ScanIndexService();
+        ReflectionTestUtils.setField(scanIndexService, "snapshotDir", dir.resolve("snapshots").toString());
+        ReflectionTestUtils.setField(scanIndexService, "enabled", true);
+        detection = new FileDetectionService();
+        ReflectionTestUtils.setField(detection, "scanIndexService", scanIndexService);
+
+        unreadable = source.resolve("photos");
+        Files.setPosixFilePermissions(unreadable, PosixFilePermissions.fromString("---------"));
+    }
+
+    @AfterEach
+    void restorePermissions() throws Exception {
+        Files.setPosixFilePermissions(unreadable, PosixFilePermissions.fromString("rwxr-xr-x"));
+    }
+
+    @Test
+    void unreadableSourceDirectoryReportsNoDeletions() {
+        assumeFalse(Files.isReadable(unreadable), "permissions are not enforced for this user");
+
+        List<TreeDiffEntry> entries = new ArrayList<>();
+        detection.diffTrees(source, target, entries::add);
+
+        List<String> deleted = entries.stream()
+            .filter(entry -> entry.getType() == TreeDiffEntry.Type.DELETED)
+            .map(TreeDiffEntry::getRelativePath)
+            .toList();
+        assertEquals(List.of("old.txt"), deleted);
+        assertEquals(List.of(target.resolve("old.txt")), detection.detectDeletedFiles(source, target));
+
+        // The partial listing must not be reused as if it were complete
+        ScanIndex index = scanIndexService.load(source, target);
+        assertNotNull(index);
+        assertNull(index.getDirectory(ScanIndex.Side.SOURCE, "photos"));
+        assertNotNull(index.getDirectory(ScanIndex.Side.TARGET, "photos"));
+    }
+}
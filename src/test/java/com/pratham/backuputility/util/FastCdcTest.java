@@ -0,0 +1,121 @@
+package com.pratham.backuputility.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FastCdcTest {
+
+    private static final int MIN = 2048;
+    private static final int AVG = 8192;
+    private static final int MAX = 65536;
+
+    private final FastCdc cdc = new FastCdc(MIN, AVG, MAX);
+
+    @Test
+    void chunksCoverTheInputWithinMinAndMax() throws Exception {
+        byte[] data = random(1, 3_000_000);
+        List<byte[]> chunks = chunks(data);
+        long total = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int length = chunks.get(i).length;
+            assertTrue(length <= MAX, "chunk " + i + " longer than max: " + length);
+            if (i < chunks.size() - 1) {
+                assertTrue(length >= MIN, "chunk " + i + " shorter than min: " + length);
+            }
+            total += length;
+        }
+        assertEquals(data.length, total);
+    }
+
+    @Test
+    void cutRespectsMinAndMaxAtTheEndOfInput() {
+        byte[] data = random(2, 4 * MAX);
+        // Input ending within min is one chunk, however short
+        assertEquals(0, cdc.cut(data, 0, 0));
+        assertEquals(1, cdc.cut(data, 0, 1));
+        assertEquals(MIN, cdc.cut(data, 0, MIN));
+        assertEquals(MIN, cdc.cut(data, 10, MIN));
+        // Past min a cut stays within the input and max
+        for (int length : new int[] {MIN + 1, AVG, MAX - 1, MAX, MAX + 1, 4 * MAX - 7}) {
+            for (int offset = 0; offset < 7; offset++) {
+                int cut = cdc.cut(data, offset, length);
+                assertTrue(cut > MIN && cut <= Math.min(length, MAX),
+                    "cut " + cut + " for length " + length + " at offset " + offset);
+            }
+        }
+        // With no content boundary the cut falls at max, or at the end of shorter input
+        byte[] zeros = new byte[2 * MAX];
+        assertEquals(MAX, cdc.cut(zeros, 0, zeros.length));
+        assertEquals(MAX - 100, cdc.cut(zeros, 0, MAX - 100));
+    }
+
+    @Test
+    void boundariesSurviveAnInsertOrDelete() throws Exception {
+        byte[] data = random(3, 2_000_000);
+        Set<String> original = hashes(chunks(data));
+
+        byte[] inserted = new byte[data.length + 100];
+        System.arraycopy(data, 0, inserted, 0, 1_000_000);
+        System.arraycopy(random(4, 100), 0, inserted, 1_000_000, 100);
+        System.arraycopy(data, 1_000_000, inserted, 1_000_100, data.length - 1_000_000);
+        assertMostlyShared(original, hashes(chunks(inserted)));
+
+        byte[] deleted = new byte[data.length - 5000];
+        System.arraycopy(data, 0, deleted, 0, 300_000);
+        System.arraycopy(data, 305_000, deleted, 300_000, data.length - 305_000);
+        assertMostlyShared(original, hashes(chunks(deleted)));
+
+        byte[] prepended = new byte[data.length + 1];
+        System.arraycopy(data, 0, prepended, 1, data.length);
+        assertMostlyShared(original, hashes(chunks(prepended)));
+    }
+
+    @Test
+    void rejectsInvalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new FastCdc(32, 64, 128));
+        assertThrows(IllegalArgumentException.class, () -> new FastCdc(4096, 2048, 8192));
+        assertThrows(IllegalArgumentException.class, () -> new FastCdc(2048, 8192, 4096));
+    }
+
+    /**
+     * An edit only changes the chunks around it: all but a few chunks must be found unchanged
+     */
+    private static void assertMostlyShared(Set<String> original, Set<String> edited) {
+        Set<String> changed = new HashSet<>(edited);
+        changed.removeAll(original);
+        assertTrue(changed.size() <= 3, changed.size() + " of " + edited.size() + " chunks changed");
+    }
+
+    private List<byte[]> chunks(byte[] data) throws Exception {
+        List<byte[]> chunks = new ArrayList<>();
+        long total = cdc.chunk(new ByteArrayInputStream(data),
+            (buffer, offset, length) -> chunks.add(Arrays.copyOfRange(buffer, offset, offset + length)));
+        assertEquals(data.length, total);
+        return chunks;
+    }
+
+    private static Set<String> hashes(List<byte[]> chunks) {
+        Set<String> hashes = new HashSet<>();
+        for (byte[] chunk : chunks) {
+            hashes.add(HashUtil.calculateSha256Hash(chunk));
+        }
+        return hashes;
+    }
+
+    private static byte[] random(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,38 @@
+package com.pratham.backuputility.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RollingChecksumTest {
+
+    @Test
+    void rollMatchesChecksumOfEveryWindow() {
+        byte[] data = new byte[20000];
+        new Random(7).nextBytes(data);
+        for (int window : new int[] {1, 2, 16, 4096}) {
+            RollingChecksum checksum = new RollingChecksum(window);
+            checksum.reset(data, 0, window);
+            assertEquals(RollingChecksum.of(data, 0, window), checksum.value());
+            for (int offset = 1; offset + window <= data.length; offset++) {
+                checksum.roll(data[offset - 1], data[offset + window - 1]);
+                assertEquals(RollingChecksum.of(data, offset, window), checksum.value(),
+                    "window " + window + " at offset " + offset);
+            }
+        }
+    }
+
+    @Test
+    void bufferChecksumMatchesArrayChecksum() {
+        byte[] data = new byte[5000];
+        new Random(8).nextBytes(data);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        direct.position(100);
+        assertEquals(RollingChecksum.of(data, 100, data.length - 100), RollingChecksum.of(direct));
+        assertEquals(100, direct.position());
+        assertEquals(RollingChecksum.of(data, 100, 900), RollingChecksum.of(ByteBuffer.wrap(data, 100, 900)));
+    }
+}